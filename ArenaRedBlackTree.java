@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Red-black tree that takes its nodes from an arena instead of allocating one
+ * per insert. The arena is a list of chunks of nodes created in advance, which
+ * live as long as the tree and so are promoted once rather than churning the
+ * young generation. As in PrimitiveRedBlackTree, nodes freed by removals are
+ * chained into a free-list through their left link and are handed out again
+ * before unused nodes of the arena, and clear resets the arena in O(1).
+ *
+ * The arena does not shrink: a tree that once held n values keeps n nodes.
+ * clear does not visit the nodes, so they keep their old values reachable
+ * for a while; see clear. Loading a file or building from sorted values
+ * returns the nodes of the replaced tree to the free-list. Trees ordered by
+ * a long key keep the key in their nodes, and cannot use an arena. The set
+ * operations of RedBlackTree move nodes between trees, which would let two
+ * trees hand out the same node, so they throw an
+ * UnsupportedOperationException.
+ */
+public class ArenaRedBlackTree<T> extends RedBlackTree<T> {
+
+    private static final int CHUNK_NODES = 1 << 12;
+
+    private final List<Node<T>[]> chunks = new ArrayList<>();
+    private int nextNode = 0; // index, over all chunks, of the first node never handed out since clear
+    private int staleNodes = 0; // nodes from nextNode up to this index may still hold a value from before clear
+    private Node<T> freeNode; // head of the free-list of removed nodes
+    private long arenaAllocations = 0; // number of nodes allocated by the arena
+
+    /**
+     * Creates a tree of naturally ordered values whose arena has room for
+     * capacity values.
+     * @param capacity the number of values to allocate nodes for up front
+     * @return a new, empty tree
+     */
+    public static <T> ArenaRedBlackTree<T> withCapacity(int capacity) {
+        return withCapacity(capacity, null);
+    }
+
+    /**
+     * Creates a tree ordered by comparator whose arena has room for capacity
+     * values.
+     * @param capacity the number of values to allocate nodes for up front
+     * @param comparator the ordering of the values, or null for their
+     *      natural ordering
+     * @return a new, empty tree
+     */
+    public static <T> ArenaRedBlackTree<T> withCapacity(int capacity, Comparator<? super T> comparator) {
+        ArenaRedBlackTree<T> tree = new ArenaRedBlackTree<>();
+        tree.comparator = comparator;
+        tree.ensureCapacity(capacity);
+        return tree;
+    }
+
+    /**
+     * Grows the arena, if necessary, so that this tree can hold the provided
+     * number of values without allocating nodes.
+     * @param capacity the number of values to make room for
+     */
+    public void ensureCapacity(int capacity) {
+        while ((long) chunks.size() * CHUNK_NODES < capacity) addChunk();
+    }
+
+    /**
+     * @return the number of nodes the arena has allocated, over the whole
+     *      life of this tree
+     */
+    public long arenaAllocations() {
+        return arenaAllocations;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addChunk() {
+        Node<T>[] chunk = (Node<T>[]) new Node[CHUNK_NODES];
+        for (int i = 0; i < CHUNK_NODES; i++) chunk[i] = new Node<>(null);
+        chunks.add(chunk);
+        arenaAllocations += CHUNK_NODES;
+    }
+
+    @Override
+    protected Node<T> newNode(T data) {
+        Node<T> node = freeNode;
+        if (node != null) {
+            freeNode = node.leftChild;
+            node.leftChild = null;
+        } else {
+            if (nextNode == chunks.size() * CHUNK_NODES) addChunk();
+            node = arenaNode(nextNode++);
+            node.parent = node.leftChild = node.rightChild = null;
+            // drop one more value left behind by clear, from the other end
+            if (staleNodes > nextNode) arenaNode(--staleNodes).data = null;
+        }
+        node.data = data;
+        node.blackHeight = 0;
+        return node;
+    }
+
+    private Node<T> arenaNode(int index) {
+        return chunks.get(index / CHUNK_NODES)[index % CHUNK_NODES];
+    }
+
+    /**
+     * Unlinks node and puts it on the free-list, dropping its value.
+     */
+    @Override
+    protected void removeNode(Node<T> node) {
+        super.removeNode(node);
+        release(node);
+    }
+
+    /**
+     * Puts node, which is no longer in the tree, on the free-list and drops
+     * its value.
+     */
+    private void release(Node<T> node) {
+        node.data = null;
+        node.parent = node.rightChild = null;
+        node.leftChild = freeNode;
+        freeNode = node;
+    }
+
+    /**
+     * Removes all values in O(1), by handing out the nodes of the arena from
+     * the first one again. The nodes are not visited, so the removed values
+     * stay reachable from the arena until they are dropped: every node handed
+     * out after clear drops the value of the node it reuses and of one more
+     * node from the end of those in use before, so the old values are all
+     * released once the tree is refilled to half its former size.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        staleNodes = Math.max(staleNodes, nextNode);
+        nextNode = 0;
+        freeNode = null;
+    }
+
+    /**
+     * Builds the new tree from nodes of the arena, and then returns the nodes
+     * of the tree it replaced to the free-list. When the build fails, the
+     * tree is unchanged and the nodes it took are returned instead.
+     */
+    @Override
+    protected void buildFromSorted(Iterator<? extends T> sorted, int size) {
+        Node<T> replaced = root;
+        try {
+            super.buildFromSorted(sorted, size);
+        } catch (RuntimeException e) {
+            rebuildFreeList();
+            throw e;
+        }
+        Deque<Node<T>> pending = new ArrayDeque<>();
+        if (replaced != null) pending.push(replaced);
+        while (!pending.isEmpty()) {
+            Node<T> node = pending.pop();
+            if (node.leftChild != null) pending.push(node.leftChild);
+            if (node.rightChild != null) pending.push(node.rightChild);
+            release(node);
+        }
+    }
+
+    /**
+     * Chains every node handed out since clear that is not in the tree into
+     * a new free-list.
+     */
+    private void rebuildFreeList() {
+        Set<Node<T>> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node<T> node = firstNode(); node != null; node = successor(node)) live.add(node);
+        freeNode = null;
+        for (int i = nextNode - 1; i >= 0; i--) {
+            Node<T> node = arenaNode(i);
+            if (!live.contains(node)) release(node);
+        }
+    }
+
+    @Override
+    public void union(RedBlackTree<T> other) {
+        throw sharedNodes();
+    }
+
+    @Override
+    public void parallelUnion(RedBlackTree<T> other) {
+        throw sharedNodes();
+    }
+
+    @Override
+    public void intersection(RedBlackTree<T> other) {
+        throw sharedNodes();
+    }
+
+    @Override
+    public void difference(RedBlackTree<T> other) {
+        throw sharedNodes();
+    }
+
+    @Override
+    public RedBlackTree<T> split(T data) {
+        throw sharedNodes();
+    }
+
+    @Override
+    public void join(T data, RedBlackTree<T> right) {
+        throw sharedNodes();
+    }
+
+    private static UnsupportedOperationException sharedNodes() {
+        return new UnsupportedOperationException("The nodes of an ArenaRedBlackTree cannot move to another tree.");
+    }
+
+    @Test
+    public void test1() {
+        // random inserts and removes agree with TreeSet, and reuse the nodes of the arena
+        ArenaRedBlackTree<Integer> tree = ArenaRedBlackTree.withCapacity(1000);
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(2000);
+            if (random.nextBoolean()) assertEquals(expected.add(value), tree.insert(value));
+            else assertEquals(expected.remove(value), tree.remove(value));
+        }
+        tree.checkRedBlackProperties();
+        assertEquals(new ArrayList<>(expected), tree.stream().collect(java.util.stream.Collectors.toList()));
+        assertEquals(expected.first(), tree.pollFirst());
+        assertEquals(expected.last(), tree.pollLast());
+        assertEquals(CHUNK_NODES, tree.arenaAllocations()); // never more than 2000 values at once
+    }
+
+    @Test
+    public void test2() {
+        // clear hands out the same nodes again, without allocating
+        ArenaRedBlackTree<String> tree = ArenaRedBlackTree.withCapacity(10, Comparator.reverseOrder());
+        for (int i = 0; i < 100; i++) tree.insert("value " + i);
+        Node<String> first = tree.chunks.get(0)[0];
+        long allocations = tree.arenaAllocations();
+        tree.clear();
+        assertThrows(java.util.NoSuchElementException.class, tree::first);
+        for (int i = 0; i < 100; i++) tree.insert("other " + i);
+        assertSame(first, tree.findNode("other 0"));
+        assertEquals(allocations, tree.arenaAllocations());
+        assertEquals("other 99", tree.first());
+        tree.checkRedBlackProperties();
+        assertThrows(UnsupportedOperationException.class, () -> tree.split("other 5"));
+
+        // refilling to half the former size releases every value from before clear
+        tree.clear();
+        for (int i = 0; i < 50; i++) tree.insert("again " + i);
+        for (int i = 50; i < 100; i++) assertNull(tree.arenaNode(i).data);
+    }
+
+    @Test
+    public void test3() throws IOException {
+        // loading returns the replaced nodes to the arena, also when the load fails
+        Path file = Files.createTempFile("tree", ".rbt");
+        try {
+            RedBlackTree<Integer> source = new RedBlackTree<>();
+            for (int i = 0; i < 3000; i++) source.insert(i * 3);
+            source.save(file, KeyCodec.INTEGER, true);
+            ArenaRedBlackTree<Integer> tree = ArenaRedBlackTree.withCapacity(CHUNK_NODES);
+            for (int i = 0; i < 100; i++) tree.insert(-i);
+            for (int round = 0; round < 5; round++) {
+                tree.load(file, KeyCodec.INTEGER);
+                tree.checkRedBlackProperties();
+                assertEquals(source.toInOrderString(), tree.toInOrderString());
+            }
+            assertEquals(2 * CHUNK_NODES, tree.arenaAllocations()); // two trees at most during a load
+
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length / 2] ^= 1;
+            Files.write(file, bytes);
+            for (int round = 0; round < 5; round++) {
+                assertThrows(IOException.class, () -> tree.load(file, KeyCodec.INTEGER));
+            }
+            assertEquals(source.toInOrderString(), tree.toInOrderString());
+            assertEquals(2 * CHUNK_NODES, tree.arenaAllocations());
+            for (int i = 0; i < 3000; i++) tree.insert(i * 3 + 1);
+            tree.checkRedBlackProperties();
+            assertEquals(2 * CHUNK_NODES, tree.arenaAllocations());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
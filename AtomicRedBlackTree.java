@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Thread-safe red-black tree that publishes a PersistentRedBlackTree through
+ * an AtomicReference. A writer builds the next version from the current one
+ * by path copying and installs it with a compare-and-set, retrying when
+ * another writer got there first. Readers take no lock at all: they read the
+ * current version once and work on it, and since a version is never modified
+ * after it was published they cannot observe a half-done update. snapshot()
+ * hands out that version, which stays a consistent point-in-time view for as
+ * long as it is held, at no cost.
+ */
+public class AtomicRedBlackTree<T extends Comparable<T>> {
+
+    private final AtomicReference<PersistentRedBlackTree<T>> current =
+            new AtomicReference<>(PersistentRedBlackTree.empty());
+
+    /**
+     * Inserts the input data value, see PersistentRedBlackTree.insert.
+     * @return true if the value was inserted, false if it was already stored
+     */
+    public boolean insert(T data) {
+        while (true) {
+            PersistentRedBlackTree<T> version = current.get();
+            PersistentRedBlackTree<T> next = version.insert(data);
+            if (next == version) return false;
+            if (current.compareAndSet(version, next)) return true;
+        }
+    }
+
+    /**
+     * Removes the value *data*, see PersistentRedBlackTree.remove.
+     * @return true if the value was removed, false if it was not in the tree
+     */
+    public boolean remove(T data) {
+        while (true) {
+            PersistentRedBlackTree<T> version = current.get();
+            PersistentRedBlackTree<T> next = version.remove(data);
+            if (next == version) return false;
+            if (current.compareAndSet(version, next)) return true;
+        }
+    }
+
+    /**
+     * @return the current version of the tree; it never changes, whatever
+     *      writers do after this call
+     */
+    public PersistentRedBlackTree<T> snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Checks whether the current version contains the value *data*.
+     * @param data the data value to test for
+     * @return true if *data* is in the tree, false if it is not in the tree
+     */
+    public boolean contains(T data) {
+        return current.get().contains(data);
+    }
+
+    /**
+     * Looks up the stored value that is equal to *data*, see PersistentRedBlackTree.find.
+     * @return the stored value equal to *data*, or null if there is none
+     */
+    public T find(T data) {
+        return current.get().find(data);
+    }
+
+    /**
+     * Get the size of the tree (its number of nodes).
+     * @return the number of nodes in the current version
+     */
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * Method to check if the tree is empty (does not contain any node).
+     * @return true of this.size() return 0, false if this.size() > 0
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public String toString() {
+        return current.get().toString();
+    }
+
+    @Test
+    public void test1() throws InterruptedException {
+        // snapshots taken while writers run are consistent and never change
+        AtomicRedBlackTree<Integer> tree = new AtomicRedBlackTree<>();
+        for (int i = 0; i < 2000; i += 2) tree.insert(i);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            writers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!stop.get()) {
+                    int odd = random.nextInt(1000) * 2 + 1;
+                    if (random.nextBoolean()) tree.insert(odd);
+                    else tree.remove(odd);
+                }
+            }));
+        }
+        for (Thread writer : writers) writer.start();
+        try {
+            for (int round = 0; round < 200; round++) {
+                PersistentRedBlackTree<Integer> snapshot = tree.snapshot();
+                List<Integer> first = new ArrayList<>();
+                for (Integer value : snapshot) first.add(value);
+                assertEquals(snapshot.size(), first.size());
+                for (int even = 0; even < 2000; even += 2) assertTrue(tree.contains(even));
+                List<Integer> second = new ArrayList<>();
+                for (Integer value : snapshot) second.add(value);
+                assertEquals(first, second);
+                snapshot.checkRedBlackProperties();
+            }
+        } finally {
+            stop.set(true);
+            for (Thread writer : writers) writer.join();
+        }
+        tree.snapshot().checkRedBlackProperties();
+    }
+}
@@ -0,0 +1,542 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ordered set engine that keeps many sorted values per node, as a B-tree of
+ * minimum degree t: every node but the root holds between t - 1 and 2t - 1
+ * values in an array, searched by binary search, and an internal node with k
+ * values has k + 1 children. Where a RedBlackTree descends about log2(n)
+ * separately allocated nodes, this tree descends only log_t(n) of them, and
+ * the values compared within one node sit next to each other in one array.
+ * The values themselves are still objects, so every comparison follows a
+ * reference to its value; the saving is in the node hops.
+ *
+ * Insertion splits full nodes and removal tops up minimal nodes on the way
+ * down (as in Cormen et al., Introduction to Algorithms, chapter 18), so both
+ * finish in a single descent without going back up the tree.
+ */
+public class BTreeSet<T extends Comparable<T>> implements OrderedSet<T> {
+
+    /**
+     * Node of a BTreeSet. Leaves have no children array.
+     */
+    protected static class Node {
+        public final Object[] keys;
+        public final Node[] children; // null for leaves
+        public int count; // the number of keys in use
+        public Node(int minDegree, boolean leaf) {
+            keys = new Object[2 * minDegree - 1];
+            children = leaf ? null : new Node[2 * minDegree];
+        }
+        public boolean isLeaf() {
+            return children == null;
+        }
+    }
+
+    public static final int DEFAULT_MIN_DEGREE = 16; // nodes of 15 to 31 keys
+
+    private int minDegree = DEFAULT_MIN_DEGREE;
+    protected Node root = new Node(minDegree, true);
+    protected int size = 0;
+    protected int height = 1; // the number of nodes on a path from the root to a leaf
+    protected int modCount = 0;
+
+    /**
+     * Creates a set whose nodes hold between minDegree - 1 and
+     * 2 * minDegree - 1 values.
+     * @param minDegree the minimum degree, at least 2
+     * @return a new, empty set
+     */
+    public static <T extends Comparable<T>> BTreeSet<T> withMinDegree(int minDegree) {
+        if (minDegree < 2) throw new IllegalArgumentException("the minimum degree must be at least 2: " + minDegree);
+        BTreeSet<T> set = new BTreeSet<>();
+        set.minDegree = minDegree;
+        set.root = new Node(minDegree, true);
+        return set;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T key(Node node, int index) {
+        return (T) node.keys[index];
+    }
+
+    /**
+     * @return the index of data among the keys of node, or -(insertion point) - 1
+     */
+    private static int search(Node node, Object data) {
+        return Arrays.binarySearch(node.keys, 0, node.count, data);
+    }
+
+    private static void checkNotNull(Object data) {
+        if(data == null) throw new NullPointerException(
+                "This BTreeSet cannot store null references.");
+    }
+
+    public boolean insert(T data) throws NullPointerException {
+        checkNotNull(data);
+        if (root.count == 2 * minDegree - 1) {
+            Node newRoot = new Node(minDegree, false);
+            newRoot.children[0] = root;
+            splitChild(newRoot, 0);
+            root = newRoot;
+            height++;
+        }
+        Node node = root;
+        while (true) {
+            int i = search(node, data);
+            if (i >= 0) return false;
+            i = -i - 1;
+            if (node.isLeaf()) {
+                System.arraycopy(node.keys, i, node.keys, i + 1, node.count - i);
+                node.keys[i] = data;
+                node.count++;
+                size++;
+                modCount++;
+                return true;
+            }
+            if (node.children[i].count == 2 * minDegree - 1) {
+                splitChild(node, i);
+                int compare = data.compareTo(key(node, i));
+                if (compare == 0) return false;
+                if (compare > 0) i++;
+            }
+            node = node.children[i];
+        }
+    }
+
+    /**
+     * Splits the full child at index i of parent around its median key, which
+     * moves up into parent. parent must not be full.
+     */
+    private void splitChild(Node parent, int i) {
+        int t = minDegree;
+        Node full = parent.children[i];
+        Node right = new Node(t, full.isLeaf());
+        System.arraycopy(full.keys, t, right.keys, 0, t - 1);
+        if (!full.isLeaf()) {
+            System.arraycopy(full.children, t, right.children, 0, t);
+            Arrays.fill(full.children, t, 2 * t, null);
+        }
+        right.count = t - 1;
+        System.arraycopy(parent.children, i + 1, parent.children, i + 2, parent.count - i);
+        parent.children[i + 1] = right;
+        System.arraycopy(parent.keys, i, parent.keys, i + 1, parent.count - i);
+        parent.keys[i] = full.keys[t - 1];
+        parent.count++;
+        Arrays.fill(full.keys, t - 1, 2 * t - 1, null);
+        full.count = t - 1;
+        modCount++;
+    }
+
+    public boolean remove(T data) throws NullPointerException {
+        checkNotNull(data);
+        int t = minDegree;
+        Node node = root;
+        Object target = data;
+        boolean removed = false;
+        while (true) {
+            int i = search(node, target);
+            if (node.isLeaf()) {
+                // when data is absent, the restructuring on the way down still
+                // left a valid tree behind, there is only nothing to delete
+                if (i < 0) break;
+                System.arraycopy(node.keys, i + 1, node.keys, i, node.count - i - 1);
+                node.keys[--node.count] = null;
+                removed = true;
+                break;
+            }
+            if (i >= 0) {
+                Node before = node.children[i];
+                Node after = node.children[i + 1];
+                if (before.count >= t) {
+                    // replace the key by its predecessor, then remove that from before
+                    Node max = before;
+                    while (!max.isLeaf()) max = max.children[max.count];
+                    node.keys[i] = max.keys[max.count - 1];
+                    target = node.keys[i];
+                    node = before;
+                } else if (after.count >= t) {
+                    Node min = after;
+                    while (!min.isLeaf()) min = min.children[0];
+                    node.keys[i] = min.keys[0];
+                    target = node.keys[i];
+                    node = after;
+                } else {
+                    node = merge(node, i);
+                }
+                continue;
+            }
+            i = -i - 1;
+            Node child = node.children[i];
+            if (child.count == t - 1) {
+                if (i > 0 && node.children[i - 1].count >= t) {
+                    rotateRight(node, i - 1);
+                } else if (i < node.count && node.children[i + 1].count >= t) {
+                    rotateLeft(node, i);
+                } else {
+                    child = merge(node, i < node.count ? i : i - 1);
+                }
+                modCount++; // open iterators hold paths through the moved keys
+            }
+            node = child;
+        }
+        if (root.count == 0 && !root.isLeaf()) {
+            root = root.children[0];
+            height--;
+        }
+        if (!removed) return false;
+        size--;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Merges the children at index i and i + 1 of parent, together with the
+     * key between them, into the child at index i. Both children must hold
+     * t - 1 keys.
+     * @return the merged child
+     */
+    private Node merge(Node parent, int i) {
+        int t = minDegree;
+        Node left = parent.children[i];
+        Node right = parent.children[i + 1];
+        left.keys[t - 1] = parent.keys[i];
+        System.arraycopy(right.keys, 0, left.keys, t, t - 1);
+        if (!left.isLeaf()) System.arraycopy(right.children, 0, left.children, t, t);
+        left.count = 2 * t - 1;
+        System.arraycopy(parent.keys, i + 1, parent.keys, i, parent.count - i - 1);
+        System.arraycopy(parent.children, i + 2, parent.children, i + 1, parent.count - i - 1);
+        parent.count--;
+        parent.keys[parent.count] = null;
+        parent.children[parent.count + 1] = null;
+        return left;
+    }
+
+    /**
+     * Moves the last key of the child at index i through parent into the
+     * front of the child at index i + 1.
+     */
+    private static void rotateRight(Node parent, int i) {
+        Node left = parent.children[i];
+        Node right = parent.children[i + 1];
+        System.arraycopy(right.keys, 0, right.keys, 1, right.count);
+        right.keys[0] = parent.keys[i];
+        if (!right.isLeaf()) {
+            System.arraycopy(right.children, 0, right.children, 1, right.count + 1);
+            right.children[0] = left.children[left.count];
+            left.children[left.count] = null;
+        }
+        right.count++;
+        parent.keys[i] = left.keys[left.count - 1];
+        left.keys[--left.count] = null;
+    }
+
+    /**
+     * Moves the first key of the child at index i + 1 through parent onto the
+     * end of the child at index i.
+     */
+    private static void rotateLeft(Node parent, int i) {
+        Node left = parent.children[i];
+        Node right = parent.children[i + 1];
+        left.keys[left.count] = parent.keys[i];
+        if (!left.isLeaf()) {
+            left.children[left.count + 1] = right.children[0];
+            System.arraycopy(right.children, 1, right.children, 0, right.count);
+            right.children[right.count] = null;
+        }
+        left.count++;
+        parent.keys[i] = right.keys[0];
+        System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+        right.keys[--right.count] = null;
+    }
+
+    public boolean contains(T data) {
+        checkNotNull(data);
+        Node node = root;
+        while (true) {
+            int i = search(node, data);
+            if (i >= 0) return true;
+            if (node.isLeaf()) return false;
+            node = node.children[-i - 1];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public T first() throws NoSuchElementException {
+        if (size == 0) throw new NoSuchElementException("This BTreeSet is empty.");
+        Node node = root;
+        while (!node.isLeaf()) node = node.children[0];
+        return key(node, 0);
+    }
+
+    public T last() throws NoSuchElementException {
+        if (size == 0) throw new NoSuchElementException("This BTreeSet is empty.");
+        Node node = root;
+        while (!node.isLeaf()) node = node.children[node.count];
+        return key(node, node.count - 1);
+    }
+
+    public T floor(T data) {
+        return below(data, true);
+    }
+
+    public T lower(T data) {
+        return below(data, false);
+    }
+
+    public T ceiling(T data) {
+        return above(data, true);
+    }
+
+    public T higher(T data) {
+        return above(data, false);
+    }
+
+    /**
+     * @return the greatest value less than (or equal to) data, or null
+     */
+    private T below(T data, boolean inclusive) {
+        checkNotNull(data);
+        T best = null;
+        for (Node node = root; node != null; ) {
+            int i = search(node, data);
+            if (i >= 0 && inclusive) return key(node, i);
+            int child = i >= 0 ? i : -i - 1; // keys before index child are below data
+            if (child > 0) best = key(node, child - 1);
+            node = node.isLeaf() ? null : node.children[child];
+        }
+        return best;
+    }
+
+    /**
+     * @return the smallest value greater than (or equal to) data, or null
+     */
+    private T above(T data, boolean inclusive) {
+        checkNotNull(data);
+        T best = null;
+        for (Node node = root; node != null; ) {
+            int i = search(node, data);
+            if (i >= 0 && inclusive) return key(node, i);
+            int child = i >= 0 ? i + 1 : -i - 1; // keys from index child on are above data
+            if (child < node.count) best = key(node, child);
+            node = node.isLeaf() ? null : node.children[child];
+        }
+        return best;
+    }
+
+    public void forEachInRange(T from, T to, Consumer<? super T> action) {
+        checkNotNull(from);
+        checkNotNull(to);
+        int expectedModCount = modCount;
+        forEachInRange(root, from, to, action);
+        if (modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Recursive helper method that visits the values v of the subtree with
+     * from <= v < to, where a null from means no low end.
+     * @return false once a value not less than to was met
+     */
+    private boolean forEachInRange(Node node, T from, T to, Consumer<? super T> action) {
+        int start = 0;
+        boolean skipFirstChild = false;
+        if (from != null) {
+            int i = search(node, from);
+            start = i >= 0 ? i : -i - 1;
+            skipFirstChild = i >= 0; // it only holds values below from
+        }
+        for (int j = start; j <= node.count; j++) {
+            if (!node.isLeaf() && !(skipFirstChild && j == start)
+                    && !forEachInRange(node.children[j], j == start ? from : null, to, action)) return false;
+            if (j == node.count) break;
+            T value = key(node, j);
+            if (value.compareTo(to) >= 0) return false;
+            action.accept(value);
+        }
+        return true;
+    }
+
+    /**
+     * Returns an iterator over the values of this set in ascending order,
+     * which keeps the path from the root to its position in two arrays. It is
+     * fail-fast, and does not support remove.
+     * @return an iterator over the values of this set in in-order sequence
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final Node[] path = new Node[height];
+            private final int[] positions = new int[height]; // the next key index at each level
+            private int depth = -1;
+            private final int expectedModCount = modCount;
+            { if (size > 0) descend(root); }
+
+            private void descend(Node node) {
+                while (true) {
+                    path[++depth] = node;
+                    positions[depth] = 0;
+                    if (node.isLeaf()) return;
+                    node = node.children[0];
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return depth >= 0;
+            }
+
+            @Override
+            public T next() {
+                if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                if (depth < 0) throw new NoSuchElementException();
+                Node node = path[depth];
+                int position = positions[depth]++;
+                T value = key(node, position);
+                if (!node.isLeaf()) {
+                    descend(node.children[position + 1]);
+                } else {
+                    while (depth >= 0 && positions[depth] == path[depth].count) depth--;
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * @return string containing the ordered values of this set
+     */
+    public String toInOrderString() {
+        StringBuilder sb = new StringBuilder("[ ");
+        for (T value : this) sb.append(value).append(", ");
+        if (size > 0) sb.setLength(sb.length() - 2);
+        return sb.append(" ]").toString();
+    }
+
+    public String toString() {
+        return toInOrderString();
+    }
+
+    /**
+     * Verifies the ordering of the keys, the bounds on the number of keys per
+     * node, that all leaves are at the same depth and the recorded size and
+     * height.
+     * @throws IllegalStateException describing the first violation found
+     */
+    protected void checkBTreeProperties() throws IllegalStateException {
+        int[] count = new int[1];
+        int leafDepth = checkSubtree(root, null, null, count);
+        if (leafDepth != height)
+            throw new IllegalStateException("height is " + height + " but leaves are at depth " + leafDepth);
+        if (count[0] != size)
+            throw new IllegalStateException("size is " + size + " but the set holds " + count[0] + " keys");
+    }
+
+    private int checkSubtree(Node node, T low, T high, int[] count) {
+        if (node != root && (node.count < minDegree - 1 || node.count > 2 * minDegree - 1))
+            throw new IllegalStateException("node with " + node.count + " keys");
+        count[0] += node.count;
+        for (int i = 0; i < node.count; i++) {
+            T value = key(node, i);
+            T previous = i == 0 ? low : key(node, i - 1);
+            if ((previous != null && value.compareTo(previous) <= 0) || (high != null && value.compareTo(high) >= 0))
+                throw new IllegalStateException("ordering violated at " + value);
+        }
+        for (int i = node.count; i < node.keys.length; i++) {
+            if (node.keys[i] != null) throw new IllegalStateException("stale key after " + node.count + " keys");
+        }
+        if (node.isLeaf()) return 1;
+        int depth = -1;
+        for (int i = 0; i <= node.count; i++) {
+            int childDepth = checkSubtree(node.children[i], i == 0 ? low : key(node, i - 1),
+                    i == node.count ? high : key(node, i), count);
+            if (depth != -1 && childDepth != depth) throw new IllegalStateException("leaves at different depths");
+            depth = childDepth;
+        }
+        return depth + 1;
+    }
+
+    @Test
+    public void test1() {
+        // random inserts and removes agree with a TreeSet for several node sizes
+        for (int t : new int[] {2, 3, 16}) {
+            BTreeSet<Integer> set = withMinDegree(t);
+            TreeSet<Integer> expected = new TreeSet<>();
+            Random random = new Random(t);
+            for (int i = 0; i < 20000; i++) {
+                int value = random.nextInt(3000);
+                if (random.nextInt(5) < 2) assertEquals(expected.remove(value), set.remove(value));
+                else assertEquals(expected.add(value), set.insert(value));
+                if (i % 100 == 0) set.checkBTreeProperties();
+                assertEquals(expected.size(), set.size());
+            }
+            set.checkBTreeProperties();
+            // removing absent values may restructure, but leaves a valid tree of the same values
+            for (int value = 3000; value < 3100; value++) assertFalse(set.remove(value));
+            set.checkBTreeProperties();
+            assertEquals(expected.size(), set.size());
+            assertEquals(expected.toString().replace("[", "[ ").replace("]", " ]"), set.toInOrderString());
+            for (int value = -5; value < 3005; value += 3) {
+                assertEquals(expected.contains(value), set.contains(value));
+                assertEquals(expected.floor(value), set.floor(value));
+                assertEquals(expected.ceiling(value), set.ceiling(value));
+                assertEquals(expected.lower(value), set.lower(value));
+                assertEquals(expected.higher(value), set.higher(value));
+            }
+            assertEquals(expected.first(), set.first());
+            assertEquals(expected.last(), set.last());
+            for (Integer value : new TreeSet<>(expected)) assertTrue(set.remove(value));
+            set.checkBTreeProperties();
+            assertTrue(set.isEmpty());
+            assertFalse(set.iterator().hasNext());
+            assertThrows(NoSuchElementException.class, set::first);
+        }
+    }
+
+    @Test
+    public void test2() {
+        // range scans agree between the engines
+        BTreeSet<Integer> set = withMinDegree(4);
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 2000; i++) {
+            int value = random.nextInt(5000);
+            set.insert(value);
+            tree.insert(value);
+        }
+        TreeSet<Integer> all = new TreeSet<>();
+        tree.forEach(all::add);
+        for (OrderedSet<Integer> engine : List.<OrderedSet<Integer>>of(set, tree)) {
+            for (int from = -10; from < 5010; from += 97) {
+                for (int to = from; to < 5020; to += 311) {
+                    List<Integer> visited = new ArrayList<>();
+                    engine.forEachInRange(from, to, visited::add);
+                    assertEquals(new ArrayList<>(all.subSet(from, to)), visited);
+                }
+            }
+        }
+        Iterator<Integer> it = set.iterator();
+        it.next();
+        set.insert(-1);
+        assertThrows(ConcurrentModificationException.class, it::next);
+    }
+}
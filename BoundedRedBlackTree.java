@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Red-black tree that holds at most a maximum number of values, or only
+ * the values whose long key lies within a window below the largest key, such
+ * as the events of the last minute. Every operation that adds values evicts,
+ * one removal of O(log n) per evicted value, the values beyond the bound
+ * right away, so the tree never grows past it and needs no periodic rebuild.
+ * Evicted values can be handed to a listener in batches.
+ */
+public class BoundedRedBlackTree<T> extends RedBlackTree<T> {
+
+    private int maxSize = Integer.MAX_VALUE;
+    private boolean evictLargest; // evict from the high end instead of the low end
+    private long window = -1; // width of the key window, negative when there is none
+    private Consumer<? super List<T>> listener; // null when evicted values are dropped
+    private int batchSize;
+    private List<T> evicted = new ArrayList<>();
+
+    /**
+     * Creates a tree of naturally ordered values that, when an insert takes
+     * it past maxSize values, evicts its smallest value.
+     * @param maxSize the largest number of values the tree holds
+     * @return a new, empty tree
+     * @throws IllegalArgumentException when maxSize is not positive
+     */
+    public static <T> BoundedRedBlackTree<T> withMaxSize(int maxSize) throws IllegalArgumentException {
+        return withMaxSize(maxSize, null, false);
+    }
+
+    /**
+     * Creates a tree that, when an insert takes it past maxSize values,
+     * evicts its smallest or its largest value.
+     * @param maxSize the largest number of values the tree holds
+     * @param comparator the ordering of the values, or null for their
+     *      natural ordering
+     * @param evictLargest whether the largest rather than the smallest
+     *      values are evicted
+     * @return a new, empty tree
+     * @throws IllegalArgumentException when maxSize is not positive
+     */
+    public static <T> BoundedRedBlackTree<T> withMaxSize(int maxSize, Comparator<? super T> comparator,
+            boolean evictLargest) throws IllegalArgumentException {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        BoundedRedBlackTree<T> tree = new BoundedRedBlackTree<>();
+        tree.maxSize = maxSize;
+        tree.comparator = comparator;
+        tree.evictLargest = evictLargest;
+        return tree;
+    }
+
+    /**
+     * Creates a tree ordered by the long key of its values, as
+     * RedBlackTree.withLongKey, that evicts every value whose key is width
+     * or more below the largest key. With timestamps as keys, this keeps
+     * the values of the last width time units.
+     * @param keyExtractor takes the key from a value
+     * @param width the width of the window of keys
+     * @return a new, empty tree
+     * @throws IllegalArgumentException when width is not positive
+     */
+    public static <T> BoundedRedBlackTree<T> withWindow(ToLongFunction<? super T> keyExtractor, long width)
+            throws IllegalArgumentException {
+        if (width <= 0) throw new IllegalArgumentException("width must be positive: " + width);
+        if (keyExtractor == null) throw new NullPointerException("keyExtractor");
+        BoundedRedBlackTree<T> tree = new BoundedRedBlackTree<>();
+        tree.window = width;
+        tree.keyExtractor = keyExtractor;
+        tree.comparator = Comparator.comparingLong(keyExtractor);
+        return tree;
+    }
+
+    /**
+     * Hands the evicted values to listener, batchSize values at a time, in
+     * the order they were evicted. The list passed to listener is not used
+     * by this tree afterwards. Values evicted but not yet delivered are kept
+     * until a batch is full or flushEvictions is called.
+     * @param listener receives each batch of evicted values, or null to drop
+     *      evicted values, which is the default
+     * @param batchSize the number of values per batch
+     * @throws IllegalArgumentException when batchSize is not positive
+     */
+    public void onEviction(Consumer<? super List<T>> listener, int batchSize) throws IllegalArgumentException {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        flushEvictions();
+        this.listener = listener;
+        this.batchSize = batchSize;
+        evicted = new ArrayList<>(listener == null ? 0 : batchSize);
+    }
+
+    /**
+     * Hands the values evicted since the last batch to the listener, if
+     * there are any.
+     */
+    public void flushEvictions() {
+        if (listener == null || evicted.isEmpty()) return;
+        List<T> batch = evicted;
+        evicted = new ArrayList<>(batchSize);
+        listener.accept(batch);
+    }
+
+    /**
+     * Inserts data, and then evicts the values beyond the bound of this tree,
+     * which may include data itself.
+     * @return true if the value was inserted, even when it was then evicted
+     */
+    @Override
+    public boolean insert(T data) throws NullPointerException {
+        int oldSize = size;
+        insertNode(data);
+        if (size == oldSize) return false;
+        evict();
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> values) {
+        boolean changed = super.addAll(values);
+        evict();
+        return changed;
+    }
+
+    @Override
+    protected void buildFromSorted(Iterator<? extends T> sorted, int size) {
+        super.buildFromSorted(sorted, size);
+        evict();
+    }
+
+    @Override
+    public void union(RedBlackTree<T> other) {
+        super.union(other);
+        evict();
+    }
+
+    @Override
+    public void parallelUnion(RedBlackTree<T> other) {
+        super.parallelUnion(other);
+        evict();
+    }
+
+    @Override
+    public void join(T data, RedBlackTree<T> right) throws NullPointerException, IllegalArgumentException {
+        super.join(data, right);
+        evict();
+    }
+
+    @Override
+    protected RedBlackTree<T> newEmptyTree() {
+        BoundedRedBlackTree<T> tree = new BoundedRedBlackTree<>();
+        tree.maxSize = maxSize;
+        tree.evictLargest = evictLargest;
+        tree.window = window;
+        tree.comparator = comparator;
+        tree.keyExtractor = keyExtractor;
+        return tree;
+    }
+
+    /**
+     * Removes the values beyond the maximum size and outside the window.
+     */
+    private void evict() {
+        while (size > maxSize) evicted(evictLargest ? pollLast() : pollFirst());
+        if (window < 0 || root == null) return;
+        long largest = ((KeyedNode<T>) lastNode()).key;
+        long limit = largest - window;
+        if (limit > largest) return; // underflow, no key is that far below
+        while (true) {
+            Node<T> first = firstNode();
+            if (((KeyedNode<T>) first).key > limit) return;
+            removeNode(first);
+            evicted(first.data);
+        }
+    }
+
+    private void evicted(T value) {
+        if (listener == null) return;
+        evicted.add(value);
+        if (evicted.size() >= batchSize) flushEvictions();
+    }
+
+    @Test
+    public void test1() {
+        // the largest 100 of random values are kept, the others delivered in batches of 32
+        BoundedRedBlackTree<Integer> tree = BoundedRedBlackTree.withMaxSize(100);
+        List<List<Integer>> batches = new ArrayList<>();
+        tree.onEviction(batches::add, 32);
+        List<Integer> values = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) values.add(random.nextInt());
+        for (Integer value : values) {
+            assertTrue(tree.insert(value));
+            assertTrue(tree.size() <= 100);
+        }
+        tree.checkRedBlackProperties();
+        tree.flushEvictions();
+        Collections.sort(values);
+        assertEquals(values.subList(900, 1000), tree.stream().collect(java.util.stream.Collectors.toList()));
+        List<Integer> all = new ArrayList<>(values.subList(900, 1000));
+        for (List<Integer> batch : batches) {
+            assertTrue(batch.size() <= 32);
+            all.addAll(batch);
+        }
+        Collections.sort(all);
+        assertEquals(values, all);
+        assertEquals(29, batches.size()); // 28 full batches and a flushed one of 4
+
+        // evicting the largest values keeps the smallest
+        BoundedRedBlackTree<Integer> smallest = BoundedRedBlackTree.withMaxSize(10, null, true);
+        smallest.addAll(values);
+        assertEquals(values.subList(0, 10), smallest.stream().collect(java.util.stream.Collectors.toList()));
+        assertThrows(IllegalArgumentException.class, () -> BoundedRedBlackTree.withMaxSize(0));
+    }
+
+    @Test
+    public void test2() {
+        // a window of 1000 time units over events arriving slightly out of order
+        BoundedRedBlackTree<long[]> events = BoundedRedBlackTree.withWindow(event -> event[0], 1000);
+        List<long[]> evicted = new ArrayList<>();
+        events.onEviction(batch -> {
+            // the largest key is the watermark the value was evicted under
+            long limit = events.last()[0] - 1000;
+            for (long[] event : batch) assertTrue(event[0] <= limit, event[0] + " is within the window");
+            evicted.addAll(batch);
+        }, 1);
+        Random random = new Random(2);
+        long latest = 0;
+        int inserted = 0;
+        for (long time = 0; time < 100_000; time += 7) {
+            long stamp = time - random.nextInt(50);
+            if (events.insert(new long[] {stamp})) inserted++;
+            latest = Math.max(latest, stamp);
+            assertTrue(events.first()[0] > latest - 1000);
+        }
+        events.checkRedBlackProperties();
+        assertEquals(inserted, evicted.size() + events.size());
+        assertTrue(events.size() <= 1000 / 7 + 1);
+
+        // a jump in time empties all but the newest event
+        events.insert(new long[] {1_000_000});
+        assertEquals(1, events.size());
+        RedBlackTree<long[]> tail = events.split(new long[] {0});
+        assertTrue(tail instanceof BoundedRedBlackTree);
+    }
+}
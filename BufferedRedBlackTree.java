@@ -0,0 +1,288 @@
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ordered set that puts a write buffer in front of a RedBlackTree. Adding a
+ * value only appends it to the buffer, in O(1), and a full buffer is sorted
+ * and merged into the tree as one ascending run by RedBlackTree.addAll,
+ * which links a large batch into the tree in one linear merge and inserts a
+ * small one value by value. A burst of inserts thereby pays for its descents
+ * and fix-ups once per batch instead of once per value.
+ *
+ * contains and find look in the tree and then in the buffer, which they sort
+ * the first time it is searched after an add. Every other read, and
+ * remove, first merges the buffer, so it sees all values. Whether an added
+ * value was already stored is only found out by the merge, which drops it,
+ * so add cannot report it. That is why this class is not an OrderedSet,
+ * whose insert does: finding out up front would cost a descent of the tree
+ * and a search of the buffer for every value, which is what the buffer is
+ * there to save. The other methods behave as their namesakes in OrderedSet.
+ */
+public class BufferedRedBlackTree<T> implements Iterable<T> {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 13;
+
+    private RedBlackTree<T> tree = new RedBlackTree<>();
+    private Comparator<T> order = tree::compare;
+    private T[] buffer = newBuffer(DEFAULT_BUFFER_SIZE);
+    private int buffered = 0; // number of values in the buffer
+    private int sorted = 0; // length of the prefix of the buffer that is sorted and free of duplicates
+
+    /**
+     * Creates a buffer of the provided size in front of tree.
+     * @param tree the tree the buffered values are merged into; it must
+     *      not be used other than through the returned set
+     * @param bufferSize the number of inserts the buffer absorbs before
+     *      they are merged into the tree
+     * @return a new set holding the values of tree
+     * @throws IllegalArgumentException when bufferSize is not positive
+     */
+    public static <T> BufferedRedBlackTree<T> withBufferSize(RedBlackTree<T> tree, int bufferSize)
+            throws IllegalArgumentException {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        if (tree == null) throw new NullPointerException("tree");
+        BufferedRedBlackTree<T> set = new BufferedRedBlackTree<>();
+        set.tree = tree;
+        set.order = tree::compare;
+        set.buffer = newBuffer(bufferSize);
+        return set;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] newBuffer(int size) {
+        return (T[]) new Object[size];
+    }
+
+    /**
+     * Adds data to the buffer, and merges the buffer into the tree when it
+     * is full. A value that is already stored is dropped by the merge.
+     * @param data the value to add
+     * @throws NullPointerException when the provided data argument is null
+     */
+    public void add(T data) throws NullPointerException {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        buffer[buffered++] = data;
+        if (buffered == buffer.length) flush();
+    }
+
+    /**
+     * Merges the values of the buffer into the tree and empties the buffer.
+     */
+    public void flush() {
+        if (buffered == 0) return;
+        int count = sortBuffer();
+        tree.addAll(Arrays.asList(buffer).subList(0, count));
+        Arrays.fill(buffer, 0, count, null);
+        buffered = sorted = 0;
+    }
+
+    /**
+     * Sorts the buffer and removes the duplicates within it.
+     * @return the number of distinct values in the buffer
+     */
+    private int sortBuffer() {
+        if (sorted == buffered) return buffered;
+        Arrays.sort(buffer, 0, buffered, order); // a sorted prefix makes this a single merge
+        int count = 1;
+        for (int i = 1; i < buffered; i++) {
+            if (order.compare(buffer[count - 1], buffer[i]) != 0) buffer[count++] = buffer[i];
+        }
+        Arrays.fill(buffer, count, buffered, null);
+        return buffered = sorted = count;
+    }
+
+    /**
+     * @return the number of values waiting in the buffer, which may include
+     *      values that are already stored in the tree
+     */
+    public int buffered() {
+        return buffered;
+    }
+
+    public boolean contains(T data) {
+        return find(data) != null;
+    }
+
+    /**
+     * Looks up the stored value that is equal to *data*, in the tree and
+     * then in the buffer.
+     * @return the stored value equal to *data*, or null if there is none
+     */
+    public T find(T data) {
+        T found = tree.find(data);
+        if (found != null || buffered == 0) return found;
+        int index = Arrays.binarySearch(buffer, 0, sortBuffer(), data, order);
+        return index < 0 ? null : buffer[index];
+    }
+
+    public boolean remove(T data) throws NullPointerException {
+        flush();
+        return tree.remove(data);
+    }
+
+    /**
+     * Removes the smallest value from this set.
+     * @return the smallest value, or null if the set is empty
+     */
+    public T pollFirst() {
+        flush();
+        return tree.pollFirst();
+    }
+
+    /**
+     * Removes the largest value from this set.
+     * @return the largest value, or null if the set is empty
+     */
+    public T pollLast() {
+        flush();
+        return tree.pollLast();
+    }
+
+    public int size() {
+        flush();
+        return tree.size();
+    }
+
+    public boolean isEmpty() {
+        return buffered == 0 && tree.isEmpty();
+    }
+
+    /**
+     * Removes all values from this set, including the buffered ones.
+     */
+    public void clear() {
+        Arrays.fill(buffer, 0, buffered, null);
+        buffered = sorted = 0;
+        tree.clear();
+    }
+
+    public T first() throws NoSuchElementException {
+        flush();
+        return tree.first();
+    }
+
+    public T last() throws NoSuchElementException {
+        flush();
+        return tree.last();
+    }
+
+    public T floor(T data) {
+        flush();
+        return tree.floor(data);
+    }
+
+    public T ceiling(T data) {
+        flush();
+        return tree.ceiling(data);
+    }
+
+    public T lower(T data) {
+        flush();
+        return tree.lower(data);
+    }
+
+    public T higher(T data) {
+        flush();
+        return tree.higher(data);
+    }
+
+    public void forEachInRange(T from, T to, Consumer<? super T> action) {
+        flush();
+        tree.forEachInRange(from, to, action);
+    }
+
+    /**
+     * Merges the buffer and iterates over the values of the tree, see
+     * RedBlackTree.iterator. Values added during the iteration stay in
+     * the buffer until it is full.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        flush();
+        return tree.iterator();
+    }
+
+    /**
+     * @return a string containing the ordered values of this set
+     */
+    public String toInOrderString() {
+        flush();
+        return tree.toInOrderString();
+    }
+
+    @Test
+    public void test1() {
+        // random inserts, removes and lookups agree with a TreeSet, across many merges
+        BufferedRedBlackTree<Integer> set = BufferedRedBlackTree.withBufferSize(new RedBlackTree<>(), 64);
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(3000);
+            int roll = random.nextInt(10);
+            if (roll == 0) assertEquals(expected.remove(value), set.remove(value));
+            else if (roll < 3) assertEquals(expected.contains(value), set.contains(value));
+            else if (roll == 3) assertEquals(expected.ceiling(value), set.ceiling(value));
+            else {
+                set.add(value);
+                expected.add(value);
+            }
+        }
+        assertEquals(new ArrayList<>(expected), toList(set));
+        assertEquals(expected.size(), set.size());
+        set.tree.checkRedBlackProperties();
+    }
+
+    @Test
+    public void test2() {
+        // values wait in the buffer until it is full or a read needs them
+        RedBlackTree<String> tree = RedBlackTree.withComparator(Comparator.reverseOrder());
+        BufferedRedBlackTree<String> set = BufferedRedBlackTree.withBufferSize(tree, 4);
+        assertTrue(set.isEmpty());
+        set.add("b");
+        set.add("d");
+        set.add("b");
+        assertEquals(0, tree.size());
+        assertFalse(set.isEmpty());
+        assertTrue(set.contains("d"));
+        assertEquals("b", set.find("b"));
+        assertNull(set.find("c"));
+        assertEquals(2, set.buffered()); // searching sorted the buffer and dropped the duplicate
+        set.add("a");
+        assertEquals(3, set.buffered());
+        set.add("c");
+        assertEquals(0, set.buffered()); // the fourth value filled the buffer
+        assertEquals(4, tree.size());
+        set.add("d");
+        assertEquals(1, set.buffered());
+        assertEquals(List.of("d", "c", "b", "a"), toList(set));
+        set.add("e");
+        assertEquals("e", set.first());
+        assertEquals(0, set.buffered());
+        set.add("f");
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertThrows(NullPointerException.class, () -> set.add(null));
+        assertThrows(IllegalArgumentException.class, () -> BufferedRedBlackTree.withBufferSize(tree, 0));
+    }
+
+    private static <T> List<T> toList(Iterable<T> values) {
+        List<T> list = new ArrayList<>();
+        for (T value : values) list.add(value);
+        return list;
+    }
+}
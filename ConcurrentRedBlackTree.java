@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Thread-safe red-black tree for read-mostly workloads. Writers serialize on
+ * the write lock of a StampedLock, while lookups first walk the tree without
+ * any lock under an optimistic stamp and only fall back to the read lock when
+ * a writer ran concurrently. Uncontended reads therefore never block each
+ * other nor a writer, and never write to shared memory.
+ *
+ * An optimistic walk may observe a tree in the middle of a rotation, so it
+ * guards itself against everything a torn read can produce: a null value, a
+ * cycle in the links (bounded by the maximum height of a red-black tree) or an
+ * exception from compareTo. In each of those cases, as when the stamp does not
+ * validate, the lookup is simply repeated under the read lock.
+ */
+public class ConcurrentRedBlackTree<T extends Comparable<T>> {
+
+    // no red-black tree of at most 2^31 nodes is higher than 2 * 31 levels
+    private static final int MAX_OPTIMISTIC_STEPS = 64;
+
+    private final RedBlackTree<T> tree = new RedBlackTree<>();
+    private final StampedLock lock = new StampedLock();
+    private final RedBlackTree.Node<T> aborted = new RedBlackTree.Node<>(null); // marker for torn reads
+
+    /**
+     * Inserts the input data value, see RedBlackTree.insert.
+     * @return true if the value was inserted, false if it was already stored
+     */
+    public boolean insert(T data) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.insert(data);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the value *data*, see RedBlackTree.remove.
+     * @return true if the value was removed, false if it was not in the tree
+     */
+    public boolean remove(T data) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.remove(data);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the smallest value from this tree.
+     * @return the smallest value, or null if the tree is empty
+     */
+    public T pollFirst() {
+        long stamp = lock.writeLock();
+        try {
+            return tree.pollFirst();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the largest value from this tree.
+     * @return the largest value, or null if the tree is empty
+     */
+    public T pollLast() {
+        long stamp = lock.writeLock();
+        try {
+            return tree.pollLast();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Checks whether the tree contains the value *data*.
+     * @param data the data value to test for
+     * @return true if *data* is in the tree, false if it is not in the tree
+     */
+    public boolean contains(T data) {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            RedBlackTree.Node<T> node = optimisticDescent(data);
+            if (node != aborted && lock.validate(stamp)) return node != null;
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.contains(data);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks up the stored value that is equal to *data*, see RedBlackTree.find.
+     * @return the stored value equal to *data*, or null if there is none
+     */
+    public T find(T data) {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            RedBlackTree.Node<T> node = optimisticDescent(data);
+            if (node != aborted) {
+                T found = node == null ? null : node.data;
+                if (lock.validate(stamp)) return found;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.find(data);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Get the size of the tree (its number of nodes).
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = tree.size;
+        if (lock.validate(stamp)) return size;
+        stamp = lock.readLock();
+        try {
+            return tree.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Method to check if the tree is empty (does not contain any node).
+     * @return true of this.size() return 0, false if this.size() > 0
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return a string containing the ordered values of this tree, taken
+     *      under the read lock
+     */
+    public String toInOrderString() {
+        long stamp = lock.readLock();
+        try {
+            return tree.toInOrderString();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Writes the ordered values of this tree to out under the read lock, see
+     * RedBlackTree.writeInOrder. Writers wait until the output is complete.
+     * @param out the destination, for example a Writer
+     * @throws IOException when out throws one
+     */
+    public void writeInOrder(Appendable out) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            tree.writeInOrder(out);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Walks the tree without a lock. The result is only meaningful when the
+     * optimistic stamp taken before the walk still validates after it.
+     * @param data the data value to look for
+     * @return the node holding *data*, null when there is none, or the
+     *      aborted marker when the walk observed a state that can only come
+     *      from a concurrent write
+     */
+    private RedBlackTree.Node<T> optimisticDescent(T data) {
+        RedBlackTree.Node<T> node = tree.root;
+        try {
+            for (int steps = 0; node != null; steps++) {
+                T value = node.data;
+                if (value == null || steps > MAX_OPTIMISTIC_STEPS) return aborted;
+                int compare = data.compareTo(value);
+                if (compare < 0) node = node.leftChild;
+                else if (compare > 0) node = node.rightChild;
+                else return node;
+            }
+        } catch (RuntimeException tornRead) {
+            return aborted;
+        }
+        return null;
+    }
+
+    @Test
+    public void test1() {
+        ConcurrentRedBlackTree<Integer> tree = new ConcurrentRedBlackTree<>();
+        for (int i = 0; i < 100; i++) assertTrue(tree.insert(i));
+        assertFalse(tree.insert(50));
+        assertTrue(tree.contains(99));
+        assertFalse(tree.contains(100));
+        assertEquals(Integer.valueOf(7), tree.find(7));
+        assertTrue(tree.remove(7));
+        assertEquals(null, tree.find(7));
+        assertEquals(Integer.valueOf(0), tree.pollFirst());
+        assertEquals(Integer.valueOf(99), tree.pollLast());
+        assertEquals(97, tree.size());
+    }
+
+    @Test
+    public void test2() throws InterruptedException {
+        // readers never miss the even keys while writers churn the odd ones
+        ConcurrentRedBlackTree<Integer> tree = new ConcurrentRedBlackTree<>();
+        for (int i = 0; i < 2000; i += 2) tree.insert(i);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicBoolean missed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!stop.get()) {
+                    int odd = random.nextInt(1000) * 2 + 1;
+                    if (random.nextBoolean()) tree.insert(odd);
+                    else tree.remove(odd);
+                }
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!stop.get()) {
+                    int even = random.nextInt(1000) * 2;
+                    if (!tree.contains(even) || tree.find(even) == null) missed.set(true);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        Thread.sleep(300);
+        stop.set(true);
+        for (Thread thread : threads) thread.join();
+        assertFalse(missed.get());
+        assertTrue(tree.size() >= 1000);
+    }
+}
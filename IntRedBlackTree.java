@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Red-black tree of int values. Keys are stored in an int array next to the
+ * link and colour arrays of PrimitiveRedBlackTree, so a value costs about 17
+ * bytes of array space instead of an Integer and a Node object, and comparisons
+ * are plain primitive comparisons.
+ */
+public class IntRedBlackTree extends PrimitiveRedBlackTree {
+
+    protected int[] keys;
+
+    public IntRedBlackTree() {
+        keys = new int[leftChild.length];
+    }
+
+    @Override
+    protected void growKeys(int slots) {
+        keys = Arrays.copyOf(keys, slots);
+    }
+
+    @Override
+    protected int compareSlots(int a, int b) {
+        return Integer.compare(keys[a], keys[b]);
+    }
+
+    /**
+     * Inserts the input value into this tree. This tree will not hold
+     * duplicate values.
+     * @param data to be added into this tree
+     * @return true if the value was inserted, false if it is already stored
+     */
+    public boolean insert(int data) {
+        int parentSlot = NIL;
+        int node = root;
+        boolean left = false;
+        while (node != NIL) {
+            int key = keys[node];
+            if (data < key) {
+                left = true;
+            } else if (data > key) {
+                left = false;
+            } else {
+                return false;
+            }
+            parentSlot = node;
+            node = left ? leftChild[node] : rightChild[node];
+        }
+        int slot = allocateSlot();
+        keys[slot] = data;
+        linkSlot(slot, parentSlot, left);
+        return true;
+    }
+
+    /**
+     * Checks whether the tree contains the value *data*.
+     * @param data the data value to test for
+     * @return true if *data* is in the tree, false if it is not in the tree
+     */
+    public boolean contains(int data) {
+        return findSlot(data) != NIL;
+    }
+
+    /**
+     * Removes the value *data* from this tree.
+     * @param data the data value to remove
+     * @return true if the value was removed, false if it was not in the tree
+     */
+    public boolean remove(int data) {
+        int slot = findSlot(data);
+        if (slot == NIL) return false;
+        unlinkSlot(slot);
+        return true;
+    }
+
+    private int findSlot(int data) {
+        int node = root;
+        while (node != NIL) {
+            int key = keys[node];
+            if (data < key) node = leftChild[node];
+            else if (data > key) node = rightChild[node];
+            else return node;
+        }
+        return NIL;
+    }
+
+    /**
+     * @return the smallest value in this tree
+     * @throws NoSuchElementException when the tree is empty
+     */
+    public int first() {
+        if (root == NIL) throw new NoSuchElementException("tree is empty");
+        return keys[firstSlot()];
+    }
+
+    /**
+     * @return the largest value in this tree
+     * @throws NoSuchElementException when the tree is empty
+     */
+    public int last() {
+        if (root == NIL) throw new NoSuchElementException("tree is empty");
+        return keys[lastSlot()];
+    }
+
+    /**
+     * Passes every value of this tree to the action, in ascending order.
+     * @param action is called once per value
+     */
+    public void forEachInOrder(IntConsumer action) {
+        for (int node = firstSlot(); node != NIL; node = successor(node)) action.accept(keys[node]);
+    }
+
+    /**
+     * @return the values of this tree in ascending order
+     */
+    public int[] toArray() {
+        int[] values = new int[size];
+        int i = 0;
+        for (int node = firstSlot(); node != NIL; node = successor(node)) values[i++] = keys[node];
+        return values;
+    }
+
+    /**
+     * @return string containing the ordered values of this tree (in-order traversal)
+     */
+    public String toInOrderString() {
+        StringBuilder sb = new StringBuilder("[ ");
+        for (int node = firstSlot(); node != NIL; node = successor(node)) {
+            sb.append(keys[node]).append(", ");
+        }
+        if (root != NIL) sb.setLength(sb.length() - 2);
+        return sb.append(" ]").toString();
+    }
+
+    /**
+     * @return string containing the values of this tree in level order
+     */
+    public String toLevelOrderString() {
+        StringBuilder sb = new StringBuilder("[ ");
+        if (root != NIL) {
+            int[] queue = new int[size];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = root;
+            while (head < tail) {
+                int next = queue[head++];
+                if (leftChild[next] != NIL) queue[tail++] = leftChild[next];
+                if (rightChild[next] != NIL) queue[tail++] = rightChild[next];
+                sb.append(keys[next]);
+                if (head < tail) sb.append(", ");
+            }
+        }
+        return sb.append(" ]").toString();
+    }
+
+    public String toString() {
+        return "level order: " + this.toLevelOrderString() +
+                "\nin order: " + this.toInOrderString();
+    }
+
+    @Test
+    public void test1() {
+        // randomized inserts and removes, checked against TreeSet after every operation
+        IntRedBlackTree tree = new IntRedBlackTree();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            int value = random.nextInt(400) - 200;
+            if (random.nextInt(3) == 0) assertEquals(expected.remove(value), tree.remove(value));
+            else assertEquals(expected.add(value), tree.insert(value));
+            tree.checkRedBlackProperties();
+        }
+        assertEquals(expected.size(), tree.size());
+        assertEquals(expected.first().intValue(), tree.first());
+        assertEquals(expected.last().intValue(), tree.last());
+        assertEquals(Arrays.toString(expected.stream().mapToInt(Integer::intValue).toArray()),
+                Arrays.toString(tree.toArray()));
+    }
+
+    @Test
+    public void test2() {
+        IntRedBlackTree tree = new IntRedBlackTree();
+        tree.ensureCapacity(100);
+        assertEquals(101, tree.keys.length);
+        for (int i = 0; i < 100; i++) tree.insert(i * 10);
+        for (int i = 0; i < 100; i++) assertTrue(tree.remove(i * 10));
+        for (int i = 0; i < 100; i++) tree.insert(Integer.MAX_VALUE - i);
+        // freed slots are handed out again before the arrays grow
+        assertEquals(101, tree.keys.length);
+        assertFalse(tree.contains(0));
+        assertEquals(100, tree.size());
+        assertEquals(Integer.MAX_VALUE - 99, tree.first());
+        assertEquals(Integer.MAX_VALUE, tree.last());
+        tree.checkRedBlackProperties();
+    }
+}
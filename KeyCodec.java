@@ -0,0 +1,65 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts the values of a tree to and from bytes for RedBlackTree.save and
+ * RedBlackTree.load. A codec writes at the position of the buffer it is
+ * given, and when the value does not fit it may simply fail with the
+ * BufferOverflowException or BufferUnderflowException of the buffer: the
+ * caller then restores the position, makes room and calls it again. A codec
+ * therefore must not keep state between calls, nor use the buffer's mark.
+ */
+public interface KeyCodec<T> {
+
+    /**
+     * Writes value at the position of out and advances it.
+     * @param value the value to encode, never null
+     * @param out the buffer to write to
+     * @throws java.nio.BufferOverflowException when out has too little room left
+     */
+    void encode(T value, ByteBuffer out);
+
+    /**
+     * Reads one value from the position of in and advances it.
+     * @param in the buffer to read from
+     * @return the decoded value
+     * @throws BufferUnderflowException when in holds only part of the value
+     */
+    T decode(ByteBuffer in);
+
+    /**
+     * Encodes each Integer as 4 bytes.
+     */
+    KeyCodec<Integer> INTEGER = new KeyCodec<Integer>() {
+        public void encode(Integer value, ByteBuffer out) { out.putInt(value); }
+        public Integer decode(ByteBuffer in) { return in.getInt(); }
+    };
+
+    /**
+     * Encodes each Long as 8 bytes.
+     */
+    KeyCodec<Long> LONG = new KeyCodec<Long>() {
+        public void encode(Long value, ByteBuffer out) { out.putLong(value); }
+        public Long decode(ByteBuffer in) { return in.getLong(); }
+    };
+
+    /**
+     * Encodes each String as its UTF-8 byte count in 4 bytes, followed by
+     * those bytes.
+     */
+    KeyCodec<String> STRING = new KeyCodec<String>() {
+        public void encode(String value, ByteBuffer out) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.putInt(bytes.length).put(bytes);
+        }
+        public String decode(ByteBuffer in) {
+            int length = in.getInt();
+            if (length < 0) throw new IllegalArgumentException("negative string length " + length);
+            if (in.remaining() < length) throw new BufferUnderflowException();
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+}
@@ -0,0 +1,772 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.LongConsumer;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Red-black tree of long values whose nodes live in a memory-mapped file
+ * instead of on the Java heap. Every node is a fixed-size record holding its
+ * key, the slot numbers of its left child, right child and parent, and its
+ * colour, so a tree written by one JVM can be reopened by the next one without
+ * rebuilding it: opening only maps the file and reads the header. The heap
+ * footprint is a handful of fields however many values the tree holds.
+ *
+ * The algorithms mirror PrimitiveRedBlackTree, with the link arrays replaced
+ * by reads and writes of the mapped records. Slot 0 is the black sentinel used
+ * for null children, and removed slots are reused through a free-list.
+ *
+ * Every record also has a live flag, which an insert sets only after the key
+ * is written and a remove clears before it touches any link. The key of a
+ * live record never changes, as removals relink the successor record instead
+ * of copying its key. close() writes the header and marks it clean once the
+ * records are on disk; while the tree is open the header on disk is marked
+ * dirty. open() trusts the header of a clean file. A file left behind by a
+ * process that was killed, or by an OS crash, is dirty, and open() rebuilds
+ * it from the live records in O(n log n): their links may be in the middle of
+ * a rotation, but each record on disk is a state of that record at or after
+ * the last force(). So every value stored at the last force() and not removed
+ * since is recovered, and values inserted or removed after it may be. Records
+ * are 32 bytes and aligned, so none straddles a disk sector. A single mapping
+ * is limited to 2 GB, which caps a tree at about 67 million values.
+ */
+public class MappedLongRedBlackTree implements Closeable {
+
+    protected static final int NIL = 0; // sentinel slot, used for every null child
+
+    private static final long MAGIC = 0x524254524545314cL;
+    private static final int VERSION = 2;
+    private static final int INITIAL_SLOTS = 1024;
+
+    // header layout
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int RECORD_SIZE_OFFSET = 12;
+    private static final int ROOT_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+    private static final int NEXT_SLOT_OFFSET = 24;
+    private static final int FREE_SLOT_OFFSET = 28;
+    private static final int CLEAN_OFFSET = 32;
+
+    // record layout
+    private static final int RECORD_SIZE = 32;
+    private static final int KEY = 0;
+    private static final int LEFT = 8;
+    private static final int RIGHT = 12;
+    private static final int PARENT = 16;
+    private static final int COLOUR = 20; // 1 for black nodes, 0 for red nodes
+    private static final int LIVE = 21; // 1 while the record holds a value of the tree
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int slots; // number of records the current mapping holds
+    private int root; // slot of the root node, NIL when empty
+    private int size; // the number of values in the tree
+    private int nextSlot; // lowest slot that has never been used
+    private int freeSlot; // head of the free-list of released slots
+
+    /**
+     * Creates a tree that is backed by no file, which only open() sets. JUnit
+     * needs this single no-arg constructor to run the tests of this class.
+     */
+    MappedLongRedBlackTree() {
+    }
+
+    /**
+     * Opens the tree stored in the provided file, or creates an empty tree
+     * when the file does not exist or is empty.
+     * @param file the file backing the tree
+     * @return the opened tree, to be closed by the caller
+     * @throws IOException when the file cannot be mapped or is not a tree
+     *      file of this version
+     */
+    public static MappedLongRedBlackTree open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedLongRedBlackTree tree = new MappedLongRedBlackTree();
+        tree.channel = channel;
+        try {
+            long length = channel.size();
+            if (length == 0) {
+                tree.map(INITIAL_SLOTS);
+                tree.buffer.putLong(MAGIC_OFFSET, MAGIC);
+                tree.buffer.putInt(VERSION_OFFSET, VERSION);
+                tree.buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+                tree.setColour(NIL, 1);
+                tree.root = NIL;
+                tree.size = 0;
+                tree.nextSlot = 1;
+                tree.freeSlot = NIL;
+            } else {
+                if (length < HEADER_SIZE + RECORD_SIZE || (length - HEADER_SIZE) % RECORD_SIZE != 0)
+                    throw new IOException(file + " is not a tree file");
+                tree.map((int) ((length - HEADER_SIZE) / RECORD_SIZE));
+                if (tree.buffer.getLong(MAGIC_OFFSET) != MAGIC)
+                    throw new IOException(file + " is not a tree file");
+                if (tree.buffer.getInt(VERSION_OFFSET) != VERSION
+                        || tree.buffer.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE)
+                    throw new IOException(file + " has an unsupported version");
+                if (tree.buffer.get(CLEAN_OFFSET) == 1) {
+                    tree.root = tree.buffer.getInt(ROOT_OFFSET);
+                    tree.size = tree.buffer.getInt(SIZE_OFFSET);
+                    tree.nextSlot = tree.buffer.getInt(NEXT_SLOT_OFFSET);
+                    tree.freeSlot = tree.buffer.getInt(FREE_SLOT_OFFSET);
+                } else {
+                    tree.recover();
+                }
+            }
+            // the file is inconsistent while records and header are out of sync
+            tree.buffer.put(CLEAN_OFFSET, (byte) 0);
+            tree.buffer.force();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return tree;
+    }
+
+    /**
+     * Maps the header and the provided number of records, extending the file
+     * when it is shorter.
+     */
+    private void map(int slots) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * RECORD_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.slots = slots;
+    }
+
+    /**
+     * Flushes all changes of the mapping to the file. The header stays dirty,
+     * so after a crash open() recovers at least the values stored at the time
+     * of this call from the records.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Writes the header, flushes the mapping and closes the file. The header
+     * is marked clean only once the records and the header are on disk, so a
+     * crash during close leaves a file that is recovered rather than trusted.
+     * The mapping itself is released by the garbage collector.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+        writeHeader();
+        buffer.force();
+        buffer.put(CLEAN_OFFSET, (byte) 1);
+        buffer.force(); // only the header page is dirty at this point
+        channel.close();
+    }
+
+    private void writeHeader() {
+        buffer.putInt(ROOT_OFFSET, root);
+        buffer.putInt(SIZE_OFFSET, size);
+        buffer.putInt(NEXT_SLOT_OFFSET, nextSlot);
+        buffer.putInt(FREE_SLOT_OFFSET, freeSlot);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private long key(int slot) { return buffer.getLong(offset(slot) + KEY); }
+    private int left(int slot) { return buffer.getInt(offset(slot) + LEFT); }
+    private int right(int slot) { return buffer.getInt(offset(slot) + RIGHT); }
+    private int parent(int slot) { return buffer.getInt(offset(slot) + PARENT); }
+    private int colour(int slot) { return buffer.get(offset(slot) + COLOUR); }
+    private boolean live(int slot) { return buffer.get(offset(slot) + LIVE) != 0; }
+    private void setKey(int slot, long key) { buffer.putLong(offset(slot) + KEY, key); }
+    private void setLeft(int slot, int child) { buffer.putInt(offset(slot) + LEFT, child); }
+    private void setRight(int slot, int child) { buffer.putInt(offset(slot) + RIGHT, child); }
+    private void setParent(int slot, int parent) { buffer.putInt(offset(slot) + PARENT, parent); }
+    private void setColour(int slot, int colour) { buffer.put(offset(slot) + COLOUR, (byte) colour); }
+    private void setLive(int slot, boolean live) { buffer.put(offset(slot) + LIVE, (byte) (live ? 1 : 0)); }
+
+    /**
+     * Rebuilds the tree of a dirty file from its live records. The live slots
+     * are sorted by key and linked in place into a balanced tree, and the other
+     * slots below the highest live one make up the free-list. When a key is
+     * live in two slots, an insert reached the disk but the remove of the same
+     * value from another slot did not, and one of them is released. Keys are
+     * not moved, so a crash during recovery only means it runs again.
+     */
+    private void recover() {
+        int count = 0;
+        for (int slot = 1; slot < slots; slot++) if (live(slot)) count++;
+        int[] sorted = new int[count];
+        long[] keys = new long[count];
+        count = 0;
+        for (int slot = 1; slot < slots; slot++) {
+            if (!live(slot)) continue;
+            sorted[count] = slot;
+            keys[count++] = key(slot);
+        }
+        sortByKey(keys, sorted, new long[count], new int[count], 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct > 0 && keys[i] == keys[distinct - 1]) {
+                setLive(sorted[i], false);
+            } else {
+                keys[distinct] = keys[i];
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        setColour(NIL, 1);
+        setParent(NIL, NIL);
+        int redLevel = 31 - Integer.numberOfLeadingZeros(distinct + 1);
+        root = distinct == 0 ? NIL : linkSorted(sorted, 0, 0, distinct - 1, redLevel);
+        setParent(root, NIL);
+        size = distinct;
+        nextSlot = 1;
+        for (int i = 0; i < distinct; i++) nextSlot = Math.max(nextSlot, sorted[i] + 1);
+        freeSlot = NIL;
+        for (int slot = nextSlot - 1; slot > 0; slot--) {
+            if (live(slot)) continue;
+            setLeft(slot, freeSlot);
+            freeSlot = slot;
+        }
+    }
+
+    /**
+     * Sorts keys from index from to index to, moving the slots along with
+     * them. Merge sort, as the slots have to follow the keys.
+     */
+    private static void sortByKey(long[] keys, int[] slots, long[] keyBuffer, int[] slotBuffer, int from, int to) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        sortByKey(keys, slots, keyBuffer, slotBuffer, from, mid);
+        sortByKey(keys, slots, keyBuffer, slotBuffer, mid, to);
+        if (keys[mid - 1] <= keys[mid]) return;
+        System.arraycopy(keys, from, keyBuffer, from, to - from);
+        System.arraycopy(slots, from, slotBuffer, from, to - from);
+        for (int i = from, l = from, r = mid; i < to; i++) {
+            if (r == to || (l < mid && keyBuffer[l] <= keyBuffer[r])) {
+                keys[i] = keyBuffer[l];
+                slots[i] = slotBuffer[l++];
+            } else {
+                keys[i] = keyBuffer[r];
+                slots[i] = slotBuffer[r++];
+            }
+        }
+    }
+
+    /**
+     * Links the slots at positions lo to hi into a balanced subtree whose root
+     * sits at the provided level, as RedBlackTree.linkSorted does. Only the
+     * slots at redLevel are red.
+     * @return the root of the subtree
+     */
+    private int linkSorted(int[] sorted, int level, int lo, int hi, int redLevel) {
+        int mid = (lo + hi) >>> 1;
+        int node = sorted[mid];
+        int left = lo < mid ? linkSorted(sorted, level + 1, lo, mid - 1, redLevel) : NIL;
+        int right = mid < hi ? linkSorted(sorted, level + 1, mid + 1, hi, redLevel) : NIL;
+        setLeft(node, left);
+        if (left != NIL) setParent(left, node);
+        setRight(node, right);
+        if (right != NIL) setParent(right, node);
+        setColour(node, level == redLevel ? 0 : 1);
+        return node;
+    }
+
+    /**
+     * Get the size of the tree (its number of nodes).
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to check if the tree is empty (does not contain any node).
+     * @return true of this.size() return 0, false if this.size() > 0
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Inserts the input value into this tree. This tree will not hold
+     * duplicate values.
+     * @param data to be added into this tree
+     * @return true if the value was inserted, false if it is already stored
+     * @throws IOException when the file cannot be extended for the new node
+     */
+    public boolean insert(long data) throws IOException {
+        int parentSlot = NIL;
+        int node = root;
+        boolean goLeft = false;
+        while (node != NIL) {
+            long key = key(node);
+            if (data < key) goLeft = true;
+            else if (data > key) goLeft = false;
+            else return false;
+            parentSlot = node;
+            node = goLeft ? left(node) : right(node);
+        }
+        int slot = allocateSlot();
+        setKey(slot, data);
+        setLeft(slot, NIL);
+        setRight(slot, NIL);
+        setParent(slot, parentSlot);
+        setColour(slot, 0);
+        VarHandle.storeStoreFence(); // the key is in memory before the flag
+        setLive(slot, true);
+        if (parentSlot == NIL) root = slot;
+        else if (goLeft) setLeft(parentSlot, slot);
+        else setRight(parentSlot, slot);
+        enforceRBTreePropertiesAfterInsert(slot);
+        size++;
+        return true;
+    }
+
+    /**
+     * Checks whether the tree contains the value *data*.
+     * @param data the data value to test for
+     * @return true if *data* is in the tree, false if it is not in the tree
+     */
+    public boolean contains(long data) {
+        return findSlot(data) != NIL;
+    }
+
+    /**
+     * Removes the value *data* from this tree.
+     * @param data the data value to remove
+     * @return true if the value was removed, false if it was not in the tree
+     */
+    public boolean remove(long data) {
+        int slot = findSlot(data);
+        if (slot == NIL) return false;
+        unlinkSlot(slot);
+        return true;
+    }
+
+    private int findSlot(long data) {
+        int node = root;
+        while (node != NIL) {
+            long key = key(node);
+            if (data < key) node = left(node);
+            else if (data > key) node = right(node);
+            else return node;
+        }
+        return NIL;
+    }
+
+    /**
+     * @return the smallest value in this tree
+     * @throws NoSuchElementException when the tree is empty
+     */
+    public long first() {
+        if (root == NIL) throw new NoSuchElementException("tree is empty");
+        int node = root;
+        while (left(node) != NIL) node = left(node);
+        return key(node);
+    }
+
+    /**
+     * @return the largest value in this tree
+     * @throws NoSuchElementException when the tree is empty
+     */
+    public long last() {
+        if (root == NIL) throw new NoSuchElementException("tree is empty");
+        int node = root;
+        while (right(node) != NIL) node = right(node);
+        return key(node);
+    }
+
+    /**
+     * Passes every value of this tree to the action, in ascending order.
+     * @param action is called once per value
+     */
+    public void forEachInOrder(LongConsumer action) {
+        int node = root;
+        if (node == NIL) return;
+        while (left(node) != NIL) node = left(node);
+        while (node != NIL) {
+            action.accept(key(node));
+            if (right(node) != NIL) {
+                node = right(node);
+                while (left(node) != NIL) node = left(node);
+            } else {
+                int p = parent(node);
+                while (p != NIL && node == right(p)) {
+                    node = p;
+                    p = parent(p);
+                }
+                node = p;
+            }
+        }
+    }
+
+    /**
+     * @return the values of this tree in ascending order
+     */
+    public long[] toArray() {
+        long[] values = new long[size];
+        int[] i = new int[1];
+        forEachInOrder(value -> values[i[0]++] = value);
+        return values;
+    }
+
+    private int allocateSlot() throws IOException {
+        if (freeSlot != NIL) {
+            int slot = freeSlot;
+            freeSlot = left(slot);
+            return slot;
+        }
+        if (nextSlot == slots) {
+            long grown = Math.min((long) slots * 2, (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE);
+            if (grown <= slots) throw new IOException("tree file is full");
+            map((int) grown);
+        }
+        return nextSlot++;
+    }
+
+    /**
+     * Resolve any red node with red parent property violations that are
+     * introduced by linking the provided red slot.
+     */
+    private void enforceRBTreePropertiesAfterInsert(int node) {
+        while (colour(parent(node)) == 0) {
+            int p = parent(node);
+            int grandParent = parent(p);
+            if (p == left(grandParent)) {
+                int uncle = right(grandParent);
+                if (colour(uncle) == 0) {
+                    setColour(p, 1);
+                    setColour(uncle, 1);
+                    setColour(grandParent, 0);
+                    node = grandParent;
+                } else {
+                    if (node == right(p)) {
+                        node = p;
+                        rotateLeft(node);
+                        p = parent(node);
+                    }
+                    setColour(p, 1);
+                    setColour(grandParent, 0);
+                    rotateRight(grandParent);
+                }
+            } else {
+                int uncle = left(grandParent);
+                if (colour(uncle) == 0) {
+                    setColour(p, 1);
+                    setColour(uncle, 1);
+                    setColour(grandParent, 0);
+                    node = grandParent;
+                } else {
+                    if (node == left(p)) {
+                        node = p;
+                        rotateRight(node);
+                        p = parent(node);
+                    }
+                    setColour(p, 1);
+                    setColour(grandParent, 0);
+                    rotateLeft(grandParent);
+                }
+            }
+        }
+        // make sure root is always black
+        setColour(root, 1);
+    }
+
+    private void unlinkSlot(int node) {
+        setLive(node, false);
+        VarHandle.storeStoreFence(); // the flag is cleared before the slot is reused
+        int child;
+        int removedColour = colour(node);
+        if (left(node) == NIL) {
+            child = right(node);
+            replaceInParent(node, child);
+        } else if (right(node) == NIL) {
+            child = left(node);
+            replaceInParent(node, child);
+        } else {
+            int successor = right(node);
+            while (left(successor) != NIL) successor = left(successor);
+            removedColour = colour(successor);
+            child = right(successor);
+            if (parent(successor) == node) {
+                setParent(child, successor); // may set the sentinel's parent
+            } else {
+                replaceInParent(successor, child);
+                setRight(successor, right(node));
+                setParent(right(successor), successor);
+            }
+            replaceInParent(node, successor);
+            setLeft(successor, left(node));
+            setParent(left(successor), successor);
+            setColour(successor, colour(node));
+        }
+        if (removedColour == 1) enforceRBTreePropertiesAfterRemove(child);
+        setParent(NIL, NIL);
+        setLeft(node, freeSlot);
+        freeSlot = node;
+        size--;
+    }
+
+    private void replaceInParent(int node, int replacement) {
+        int p = parent(node);
+        if (p == NIL) root = replacement;
+        else if (node == left(p)) setLeft(p, replacement);
+        else setRight(p, replacement);
+        setParent(replacement, p);
+    }
+
+    /**
+     * Resolve the missing black on the path through the provided slot that is
+     * introduced by removing a black node.
+     */
+    private void enforceRBTreePropertiesAfterRemove(int node) {
+        while (node != root && colour(node) == 1) {
+            int p = parent(node);
+            if (node == left(p)) {
+                int sibling = right(p);
+                if (colour(sibling) == 0) {
+                    setColour(sibling, 1);
+                    setColour(p, 0);
+                    rotateLeft(p);
+                    sibling = right(p);
+                }
+                if (colour(left(sibling)) == 1 && colour(right(sibling)) == 1) {
+                    setColour(sibling, 0);
+                    node = p;
+                } else {
+                    if (colour(right(sibling)) == 1) {
+                        setColour(left(sibling), 1);
+                        setColour(sibling, 0);
+                        rotateRight(sibling);
+                        sibling = right(p);
+                    }
+                    setColour(sibling, colour(p));
+                    setColour(p, 1);
+                    setColour(right(sibling), 1);
+                    rotateLeft(p);
+                    node = root;
+                }
+            } else {
+                int sibling = left(p);
+                if (colour(sibling) == 0) {
+                    setColour(sibling, 1);
+                    setColour(p, 0);
+                    rotateRight(p);
+                    sibling = left(p);
+                }
+                if (colour(left(sibling)) == 1 && colour(right(sibling)) == 1) {
+                    setColour(sibling, 0);
+                    node = p;
+                } else {
+                    if (colour(left(sibling)) == 1) {
+                        setColour(right(sibling), 1);
+                        setColour(sibling, 0);
+                        rotateLeft(sibling);
+                        sibling = left(p);
+                    }
+                    setColour(sibling, colour(p));
+                    setColour(p, 1);
+                    setColour(left(sibling), 1);
+                    rotateRight(p);
+                    node = root;
+                }
+            }
+        }
+        setColour(node, 1);
+    }
+
+    private void rotateLeft(int node) {
+        int child = right(node);
+        setRight(node, left(child));
+        if (left(child) != NIL) setParent(left(child), node);
+        replaceInParent(node, child);
+        setLeft(child, node);
+        setParent(node, child);
+    }
+
+    private void rotateRight(int node) {
+        int child = left(node);
+        setLeft(node, right(child));
+        if (right(child) != NIL) setParent(right(child), node);
+        replaceInParent(node, child);
+        setRight(child, node);
+        setParent(node, child);
+    }
+
+    /**
+     * Checks the red-black properties, the order of the keys, the size, and
+     * that exactly the slots of the tree are live and the others below
+     * nextSlot are on the free-list.
+     * @throws IllegalStateException when one of them does not hold
+     */
+    protected void checkRedBlackProperties() throws IllegalStateException {
+        if (colour(NIL) != 1) throw new IllegalStateException("sentinel is red");
+        if (root != NIL && (parent(root) != NIL || colour(root) != 1))
+            throw new IllegalStateException("root has a parent or is red");
+        int[] count = new int[1];
+        long[] previous = new long[1];
+        forEachInOrder(value -> {
+            if (count[0]++ > 0 && previous[0] >= value)
+                throw new IllegalStateException("ordering violated at " + value);
+            previous[0] = value;
+        });
+        if (count[0] != size)
+            throw new IllegalStateException("size is " + size + " but tree holds " + count[0] + " nodes");
+        checkSubtree(root);
+        int live = 0;
+        for (int slot = 1; slot < slots; slot++) {
+            if (!live(slot)) continue;
+            if (slot >= nextSlot) throw new IllegalStateException("slot " + slot + " is live past nextSlot");
+            live++;
+        }
+        if (live != size) throw new IllegalStateException(live + " live slots for " + size + " nodes");
+        int free = 0;
+        for (int slot = freeSlot; slot != NIL; slot = left(slot), free++) {
+            if (live(slot)) throw new IllegalStateException("free slot " + slot + " is live");
+        }
+        if (free != nextSlot - 1 - size)
+            throw new IllegalStateException(free + " free slots, expected " + (nextSlot - 1 - size));
+    }
+
+    private int checkSubtree(int node) {
+        if (node == NIL) return 1;
+        if (!live(node)) throw new IllegalStateException("slot " + node + " is in the tree but not live");
+        int left = left(node);
+        int right = right(node);
+        if ((left != NIL && parent(left) != node) || (right != NIL && parent(right) != node))
+            throw new IllegalStateException("bad parent reference below slot " + node);
+        if (colour(node) == 0 && (colour(left) == 0 || colour(right) == 0))
+            throw new IllegalStateException("red slot " + node + " has a red child");
+        int leftHeight = checkSubtree(left);
+        if (leftHeight != checkSubtree(right))
+            throw new IllegalStateException("black heights differ below slot " + node);
+        return leftHeight + colour(node);
+    }
+
+    @Test
+    public void test1() throws IOException {
+        // the memory-mapped tree agrees with a TreeSet and survives reopening
+        Path file = Files.createTempFile("tree", ".rbt");
+        Files.delete(file);
+        try {
+            TreeSet<Long> expected = new TreeSet<>();
+            Random random = new Random(5);
+            try (MappedLongRedBlackTree tree = MappedLongRedBlackTree.open(file)) {
+                for (int i = 0; i < 5000; i++) {
+                    long value = random.nextInt(3000);
+                    if (random.nextInt(4) == 0) assertEquals(expected.remove(value), tree.remove(value));
+                    else assertEquals(expected.add(value), tree.insert(value));
+                }
+                tree.checkRedBlackProperties();
+            }
+            try (MappedLongRedBlackTree tree = MappedLongRedBlackTree.open(file)) {
+                tree.checkRedBlackProperties();
+                assertEquals(expected.size(), tree.size());
+                assertEquals(expected.toString(), Arrays.toString(tree.toArray()));
+                assertEquals(expected.first().longValue(), tree.first());
+                assertEquals(expected.last().longValue(), tree.last());
+                assertTrue(tree.insert(-1));
+                assertFalse(tree.insert(-1));
+                assertFalse(tree.contains(-2));
+                assertFalse(tree.remove(-2));
+            }
+            Files.write(file, new byte[HEADER_SIZE + RECORD_SIZE + 1]);
+            assertThrows(IOException.class, () -> MappedLongRedBlackTree.open(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void test2() throws IOException {
+        // a file that was forced but never closed is rebuilt from its live records
+        Path file = Files.createTempFile("tree", ".rbt");
+        Path crashed = Files.createTempFile("crashed", ".rbt");
+        Files.delete(file);
+        try (MappedLongRedBlackTree tree = MappedLongRedBlackTree.open(file)) {
+            TreeSet<Long> forced = new TreeSet<>();
+            Random random = new Random(6);
+            for (int i = 0; i < 30_000; i++) {
+                long value = random.nextLong();
+                assertEquals(forced.add(value), tree.insert(value));
+            }
+            for (int i = 0; i < 5000; i++) {
+                Long value = forced.ceiling(random.nextLong());
+                if (value != null) assertEquals(forced.remove(value), tree.remove(value));
+            }
+            tree.force();
+            // a crash right after force(), with the header never written
+            Files.copy(file, crashed, StandardCopyOption.REPLACE_EXISTING);
+            byte[] checkpoint = Files.readAllBytes(crashed);
+            assertEquals(0, checkpoint[CLEAN_OFFSET]);
+            try (MappedLongRedBlackTree recovered = MappedLongRedBlackTree.open(crashed)) {
+                recovered.checkRedBlackProperties();
+                assertEquals(forced.toString(), Arrays.toString(recovered.toArray()));
+                assertTrue(recovered.insert(Long.MIN_VALUE));
+                assertTrue(recovered.remove(forced.first()));
+                recovered.checkRedBlackProperties();
+            }
+            try (MappedLongRedBlackTree reopened = MappedLongRedBlackTree.open(crashed)) {
+                reopened.checkRedBlackProperties();
+                assertEquals(forced.size(), reopened.size());
+            }
+
+            // changes after force(), which reach the disk for some pages only
+            TreeSet<Long> untouched = new TreeSet<>(forced);
+            TreeSet<Long> everStored = new TreeSet<>(forced);
+            TreeSet<Long> stored = new TreeSet<>(forced);
+            for (int i = 0; i < 10_000; i++) {
+                Long old = stored.ceiling(random.nextLong());
+                if (old != null && random.nextBoolean()) {
+                    assertTrue(tree.remove(old));
+                    untouched.remove(old);
+                    if (random.nextInt(4) == 0) assertTrue(tree.insert(old)); // may leave it live in two slots
+                    else stored.remove(old);
+                } else {
+                    long value = random.nextLong();
+                    assertTrue(tree.insert(value));
+                    everStored.add(value);
+                    stored.add(value);
+                }
+            }
+            tree.checkRedBlackProperties();
+            byte[] later = Files.readAllBytes(file);
+            for (int round = 0; round < 5; round++) {
+                byte[] torn = later.clone();
+                for (int page = 0; page * 4096 < checkpoint.length; page++) {
+                    if (random.nextBoolean()) continue;
+                    int from = page * 4096;
+                    System.arraycopy(checkpoint, from, torn, from, Math.min(4096, checkpoint.length - from));
+                }
+                Files.write(crashed, torn);
+                try (MappedLongRedBlackTree recovered = MappedLongRedBlackTree.open(crashed)) {
+                    recovered.checkRedBlackProperties();
+                    TreeSet<Long> values = new TreeSet<>();
+                    recovered.forEachInOrder(values::add);
+                    assertTrue(values.containsAll(untouched));
+                    assertTrue(everStored.containsAll(values));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(crashed);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Order statistic tree that stores each distinct value once, together with
+ * the number of times it occurs. Inserting a value that is already stored
+ * increments the count of its node in place, which allocates nothing and
+ * needs no rebalancing, only the walk up to the root that keeps the subtree
+ * sizes. rank, select, countInRange and percentile count every occurrence.
+ *
+ * size() and iteration see the distinct values; totalCount() is the number
+ * of occurrences. remove, pollFirst and pollLast take a value out with all
+ * of its occurrences, and removeOne takes out one. union, intersection and
+ * difference of RedBlackTree keep one of two equal nodes, which would lose
+ * counts, so they throw an UnsupportedOperationException; split and join
+ * move nodes with their counts. save writes the count of every value, and
+ * load restores it.
+ */
+public class MultisetRedBlackTree<T extends Comparable<T>> extends OrderStatisticTree<T> {
+
+    /**
+     * Node of a MultisetRedBlackTree, holding the number of occurrences of
+     * its value.
+     */
+    protected static class CountedNode<T> extends SizedNode<T> {
+        public int count = 1;
+        public CountedNode(T data) { super(data); }
+    }
+
+    @Override
+    protected Node<T> newNode(T data) {
+        return new CountedNode<>(data);
+    }
+
+    @Override
+    protected boolean storesCounts() {
+        return true;
+    }
+
+    @Override
+    protected int countOf(Node<T> node) {
+        return ((CountedNode<T>) node).count;
+    }
+
+    @Override
+    protected void setCount(Node<T> node, int count) {
+        ((CountedNode<T>) node).count = count;
+    }
+
+    @Override
+    protected RedBlackTree<T> newEmptyTree() {
+        MultisetRedBlackTree<T> tree = new MultisetRedBlackTree<>();
+        tree.comparator = comparator;
+        return tree;
+    }
+
+    /**
+     * Adds one occurrence of data to this tree.
+     * @param data the value to add
+     * @return true, as an occurrence is always added
+     * @throws NullPointerException when the provided data argument is null
+     * @throws ArithmeticException when the tree already holds
+     *      Integer.MAX_VALUE occurrences
+     */
+    @Override
+    public boolean insert(T data) throws NullPointerException, ArithmeticException {
+        add(data, 1);
+        return true;
+    }
+
+    /**
+     * Adds one occurrence of each of the provided values, so that values
+     * repeated in the collection are counted as often as they appear.
+     * @return true if values was not empty
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> values) {
+        for (T value : values) add(value, 1);
+        return !values.isEmpty();
+    }
+
+    /**
+     * Adds occurrences occurrences of data to this tree, in a single descent.
+     * @param data the value to add
+     * @param occurrences the number of occurrences to add, may be 0
+     * @return the number of occurrences of data before the call
+     * @throws NullPointerException when the provided data argument is null
+     * @throws IllegalArgumentException when occurrences is negative
+     * @throws ArithmeticException when the tree would hold more than
+     *      Integer.MAX_VALUE occurrences
+     */
+    public int add(T data, int occurrences)
+            throws NullPointerException, IllegalArgumentException, ArithmeticException {
+        if (occurrences < 0) throw new IllegalArgumentException("occurrences must not be negative: " + occurrences);
+        if (occurrences == 0) return count(data);
+        Math.addExact(totalCount(), occurrences);
+        int oldSize = size;
+        Node<T> node = insertNode(data);
+        if (size != oldSize) {
+            addCount(node, occurrences - 1); // the new node already counts once
+            return 0;
+        }
+        int before = countOf(node);
+        addCount(node, occurrences);
+        return before;
+    }
+
+    /**
+     * Adds delta to the count of node and to the subtree sizes of node and
+     * its ancestors.
+     */
+    private void addCount(Node<T> node, int delta) {
+        if (delta == 0) return;
+        ((CountedNode<T>) node).count += delta;
+        for (Node<T> p = node; p != null; p = p.parent) ((SizedNode<T>) p).subtreeSize += delta;
+    }
+
+    /**
+     * @param data the value to look for
+     * @return the number of occurrences of data in this tree, 0 if it is
+     *      not stored
+     * @throws NullPointerException when the provided data argument is null
+     */
+    public int count(T data) throws NullPointerException {
+        Node<T> node = findNode(data);
+        return node == null ? 0 : countOf(node);
+    }
+
+    /**
+     * Removes one occurrence of data from this tree. Only the removal of the
+     * last occurrence unlinks its node.
+     * @param data the value to remove
+     * @return true if an occurrence was removed, false if data was not stored
+     * @throws NullPointerException when the provided data argument is null
+     */
+    public boolean removeOne(T data) throws NullPointerException {
+        Node<T> node = findNode(data);
+        if (node == null) return false;
+        if (countOf(node) > 1) addCount(node, -1);
+        else removeNode(node);
+        return true;
+    }
+
+    /**
+     * @return the number of occurrences of all values in this tree, which
+     *      is at least size()
+     */
+    public int totalCount() {
+        return sizeOf(root);
+    }
+
+    @Override
+    public void union(RedBlackTree<T> other) {
+        throw countsLost();
+    }
+
+    @Override
+    public void parallelUnion(RedBlackTree<T> other) {
+        throw countsLost();
+    }
+
+    @Override
+    public void intersection(RedBlackTree<T> other) {
+        throw countsLost();
+    }
+
+    @Override
+    public void difference(RedBlackTree<T> other) {
+        throw countsLost();
+    }
+
+    private static UnsupportedOperationException countsLost() {
+        return new UnsupportedOperationException("The set operations would lose the counts of a MultisetRedBlackTree.");
+    }
+
+    @Test
+    public void test1() {
+        // counts, rank, select and range counts agree with a TreeMap of counts under random updates
+        MultisetRedBlackTree<Integer> tree = new MultisetRedBlackTree<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        Random random = new Random(4);
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(100);
+            int roll = random.nextInt(4);
+            if (roll == 0) {
+                assertEquals(expected.containsKey(value), tree.removeOne(value));
+                expected.computeIfPresent(value, (k, c) -> c == 1 ? null : c - 1);
+            } else if (roll == 1) {
+                int occurrences = random.nextInt(4);
+                assertEquals(expected.getOrDefault(value, 0).intValue(), tree.add(value, occurrences));
+                if (occurrences > 0) expected.merge(value, occurrences, Integer::sum);
+            } else {
+                assertTrue(tree.insert(value));
+                expected.merge(value, 1, Integer::sum);
+            }
+            tree.checkRedBlackProperties();
+        }
+        assertEquals(expected.size(), tree.size());
+        int k = 0;
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), tree.count(entry.getKey()));
+            assertEquals(k, tree.rank(entry.getKey()));
+            for (int c = 0; c < entry.getValue(); c++) assertEquals(entry.getKey(), tree.select(k++));
+        }
+        assertEquals(k, tree.totalCount());
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.select(tree.totalCount()));
+        for (int low = -3; low < 105; low += 7) {
+            for (int high = low; high < 105; high += 11) {
+                int count = expected.subMap(low, true, high, true).values().stream().mapToInt(Integer::intValue).sum();
+                assertEquals(count, tree.countInRange(low, high));
+            }
+        }
+        assertEquals(0, tree.count(1000));
+    }
+
+    @Test
+    public void test2() {
+        // repeated inserts reuse the node; percentiles, split and join respect the counts
+        MultisetRedBlackTree<String> tree = new MultisetRedBlackTree<>();
+        tree.insert("b");
+        Node<String> node = tree.findNode("b");
+        for (int i = 0; i < 9; i++) tree.insert("b");
+        assertSame(node, tree.findNode("b"));
+        tree.addAll(List.of("a", "c", "c", "a", "c"));
+        assertEquals(3, tree.size());
+        assertEquals(15, tree.totalCount());
+        assertEquals("a", tree.percentile(10));
+        assertEquals("b", tree.percentile(50));
+        assertEquals("c", tree.percentile(90));
+        assertEquals(2, tree.rank("b"));
+        assertEquals(12, tree.rank("c"));
+
+        MultisetRedBlackTree<String> tail = (MultisetRedBlackTree<String>) tree.split("c");
+        tree.checkRedBlackProperties();
+        tail.checkRedBlackProperties();
+        assertEquals(12, tree.totalCount());
+        assertEquals(3, tail.count("c"));
+        MultisetRedBlackTree<String> right = new MultisetRedBlackTree<>();
+        right.add("z", 5);
+        tail.join("d", right);
+        tail.checkRedBlackProperties();
+        assertEquals(9, tail.totalCount());
+        assertEquals("z", tail.select(4));
+
+        assertTrue(tree.remove("b")); // all occurrences
+        assertEquals(2, tree.totalCount());
+        assertFalse(tree.removeOne("b"));
+        assertThrows(IllegalArgumentException.class, () -> tree.add("a", -1));
+        assertThrows(ArithmeticException.class, () -> tree.add("a", Integer.MAX_VALUE));
+        assertEquals(2, tree.count("a"));
+        assertThrows(NullPointerException.class, () -> tree.count(null));
+        assertThrows(UnsupportedOperationException.class, () -> tree.union(right));
+    }
+
+    @Test
+    public void test3() {
+        // save and load keep the counts, and a plain tree refuses a file with counts
+        try {
+            saveAndLoad(Files.createTempFile("multiset", ".rbt"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void saveAndLoad(Path file) throws IOException {
+        try {
+            MultisetRedBlackTree<Integer> tree = new MultisetRedBlackTree<>();
+            Random random = new Random(3);
+            for (int i = 0; i < 20_000; i++) tree.add(random.nextInt(5000), 1 + random.nextInt(3));
+            for (boolean checksum : new boolean[] {false, true}) {
+                tree.save(file, KeyCodec.INTEGER, checksum);
+                MultisetRedBlackTree<Integer> loaded = new MultisetRedBlackTree<>();
+                loaded.load(file, KeyCodec.INTEGER);
+                loaded.checkRedBlackProperties();
+                assertEquals(tree.size(), loaded.size());
+                assertEquals(tree.totalCount(), loaded.totalCount());
+                for (Integer value : tree) assertEquals(tree.count(value), loaded.count(value));
+                for (int k = 0; k < tree.totalCount(); k += 97) assertEquals(tree.select(k), loaded.select(k));
+                assertEquals(tree.rank(2500), loaded.rank(2500));
+            }
+            OrderStatisticTree<Integer> plain = new OrderStatisticTree<>();
+            assertThrows(IOException.class, () -> plain.load(file, KeyCodec.INTEGER));
+            assertTrue(plain.isEmpty());
+
+            // a file without counts loads with one occurrence per value
+            plain.insert(7);
+            plain.insert(9);
+            plain.save(file, KeyCodec.INTEGER, false);
+            tree.load(file, KeyCodec.INTEGER);
+            assertEquals(2, tree.totalCount());
+            assertEquals(1, tree.count(9));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
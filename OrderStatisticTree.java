@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Red-black tree whose nodes also record the size of their subtree. The sizes
+ * are kept up to date by the afterLink, afterUnlink and afterRotate hooks of
+ * RedBlackTree, which adds an int per node and a walk up to the root per
+ * insert and remove. In return the position of a value within the sorted
+ * order, and the value at a position, can be found in a single descent.
+ */
+public class OrderStatisticTree<T extends Comparable<T>> extends RedBlackTree<T> {
+
+    /**
+     * Node of an OrderStatisticTree, holding the number of values in the
+     * subtree rooted at it.
+     */
+    protected static class SizedNode<T> extends Node<T> {
+        public int subtreeSize = 1;
+        public SizedNode(T data) { super(data); }
+    }
+
+    @Override
+    protected Node<T> newNode(T data) {
+        return new SizedNode<>(data);
+    }
+
+    /**
+     * @param node a node of this tree, or null
+     * @return the number of values in the subtree rooted at node
+     */
+    protected static int sizeOf(Node<?> node) {
+        return node == null ? 0 : ((SizedNode<?>) node).subtreeSize;
+    }
+
+    /**
+     * Recomputes the subtree size of node from the sizes of its children.
+     */
+    private void updateSize(Node<T> node) {
+        ((SizedNode<T>) node).subtreeSize = sizeOf(node.leftChild) + sizeOf(node.rightChild) + countOf(node);
+    }
+
+    @Override
+    protected void afterLink(Node<T> node) {
+        for (Node<T> p = node.parent; p != null; p = p.parent) ((SizedNode<T>) p).subtreeSize++;
+    }
+
+    @Override
+    protected void afterUnlink(Node<T> node) {
+        for (; node != null; node = node.parent) updateSize(node);
+    }
+
+    @Override
+    protected void afterRotate(Node<T> child, Node<T> parent) {
+        updateSize(parent);
+        updateSize(child);
+    }
+
+    @Override
+    protected void afterBuild(Node<T> node) {
+        updateSize(node);
+    }
+
+    @Override
+    protected RedBlackTree<T> newEmptyTree() {
+        OrderStatisticTree<T> tree = new OrderStatisticTree<>();
+        tree.comparator = comparator;
+        return tree;
+    }
+
+    /**
+     * @param data the data value to compare against
+     * @return the number of values in this tree that are strictly less than
+     *      *data*, which is also the index *data* has or would have in the
+     *      sorted order
+     */
+    public int rank(T data) {
+        return countBelow(data, false);
+    }
+
+    /**
+     * @param data the data value to compare against
+     * @param inclusive whether a value equal to *data* is counted
+     * @return the number of values less than (or equal to) *data*
+     */
+    private int countBelow(T data, boolean inclusive) {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        long key = keyOf(data);
+        int count = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int compare = compare(data, key, node);
+            if (compare < 0) {
+                node = node.leftChild;
+            } else if (compare > 0) {
+                count += sizeOf(node.leftChild) + countOf(node);
+                node = node.rightChild;
+            } else {
+                return count + sizeOf(node.leftChild) + (inclusive ? countOf(node) : 0);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param k the index of the value within the sorted order, starting at 0
+     * @return the k-th smallest value in this tree
+     * @throws IndexOutOfBoundsException when k is negative or not less than size()
+     */
+    public T select(int k) throws IndexOutOfBoundsException {
+        int total = sizeOf(root);
+        if (k < 0 || k >= total) throw new IndexOutOfBoundsException(
+                "Index " + k + " out of bounds for size " + total);
+        Node<T> node = root;
+        while (true) {
+            int leftSize = sizeOf(node.leftChild);
+            if (k < leftSize) {
+                node = node.leftChild;
+            } else if (k >= leftSize + countOf(node)) {
+                k -= leftSize + countOf(node);
+                node = node.rightChild;
+            } else {
+                return node.data;
+            }
+        }
+    }
+
+    /**
+     * @param low the low end of the range, inclusive
+     * @param high the high end of the range, inclusive
+     * @return the number of values v in this tree with low <= v <= high
+     */
+    public int countInRange(T low, T high) {
+        if (compare(low, high) > 0) return 0;
+        return countBelow(high, true) - countBelow(low, false);
+    }
+
+    /**
+     * Returns the value at the provided percentile using the nearest-rank
+     * method: the smallest value such that at least p percent of the values
+     * are less than or equal to it.
+     * @param p the percentile, between 0 and 100
+     * @return the value at the percentile
+     * @throws NoSuchElementException when the tree is empty
+     * @throws IllegalArgumentException when p is not between 0 and 100
+     */
+    public T percentile(double p) throws NoSuchElementException, IllegalArgumentException {
+        if (!(p >= 0 && p <= 100)) throw new IllegalArgumentException("percentile must be between 0 and 100: " + p);
+        int total = sizeOf(root);
+        if (total == 0) throw new NoSuchElementException("This RedBlackTree is empty.");
+        int k = (int) Math.ceil(p / 100 * total) - 1;
+        return select(Math.max(0, Math.min(total - 1, k)));
+    }
+
+    @Override
+    protected void checkRedBlackProperties() throws IllegalStateException {
+        super.checkRedBlackProperties();
+        checkSizes(root);
+    }
+
+    private int checkSizes(Node<T> node) {
+        if (node == null) return 0;
+        int size = checkSizes(node.leftChild) + checkSizes(node.rightChild) + countOf(node);
+        if (sizeOf(node) != size)
+            throw new IllegalStateException("subtree size of " + node.data + " is " + sizeOf(node) + ", not " + size);
+        return size;
+    }
+
+    @Test
+    public void test1() {
+        // rank, select and range counts agree with a sorted TreeSet under random updates
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(300);
+            if (random.nextInt(3) == 0) assertEquals(expected.remove(value), tree.remove(value));
+            else assertEquals(expected.add(value), tree.insert(value));
+            tree.checkRedBlackProperties();
+        }
+        Integer[] sorted = expected.toArray(new Integer[0]);
+        for (int k = 0; k < sorted.length; k++) {
+            assertEquals(sorted[k], tree.select(k));
+            assertEquals(k, tree.rank(sorted[k]));
+        }
+        for (int low = -5; low < 310; low += 7) {
+            assertEquals(expected.headSet(low).size(), tree.rank(low));
+            for (int high = low; high < 310; high += 13) {
+                assertEquals(expected.subSet(low, true, high, true).size(), tree.countInRange(low, high));
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> tree.select(sorted.length));
+    }
+
+    @Test
+    public void test2() {
+        // nearest-rank percentiles over 1..100
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>();
+        for (int i = 100; i >= 1; i--) tree.insert(i);
+        assertEquals(Integer.valueOf(1), tree.percentile(0));
+        assertEquals(Integer.valueOf(50), tree.percentile(50));
+        assertEquals(Integer.valueOf(99), tree.percentile(99));
+        assertEquals(Integer.valueOf(100), tree.percentile(99.5));
+        assertEquals(Integer.valueOf(100), tree.percentile(100));
+        assertThrows(IllegalArgumentException.class, () -> tree.percentile(101));
+        assertThrows(NoSuchElementException.class, () -> new OrderStatisticTree<Integer>().percentile(50));
+    }
+
+    @Test
+    public void test3() {
+        // sizes are set up by bulk building and merging
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>();
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 500; i++) values.add(i * 2);
+        tree.addAll(values);
+        tree.checkRedBlackProperties();
+        values.clear();
+        for (int i = 0; i < 500; i++) values.add(i * 2 + 1);
+        tree.addAll(values);
+        tree.checkRedBlackProperties();
+        assertEquals(Integer.valueOf(777), tree.select(777));
+        assertEquals(1000, tree.size());
+    }
+
+    @Test
+    public void test4() {
+        // sizes are kept up by split, join and the set operations
+        OrderStatisticTree<Integer> tree = new OrderStatisticTree<>();
+        OrderStatisticTree<Integer> other = new OrderStatisticTree<>();
+        for (int i = 0; i < 1000; i++) tree.insert(i * 3);
+        for (int i = 0; i < 300; i++) other.insert(i * 5);
+        tree.union(other);
+        tree.checkRedBlackProperties();
+        assertEquals(1000 + 300 - 100, tree.size());
+        OrderStatisticTree<Integer> tail = (OrderStatisticTree<Integer>) tree.split(1500);
+        tree.checkRedBlackProperties();
+        tail.checkRedBlackProperties();
+        assertEquals(Integer.valueOf(1500), tail.select(0));
+        assertEquals(tree.size(), tree.rank(1500));
+        OrderStatisticTree<Integer> head = new OrderStatisticTree<>();
+        for (int i = -100; i < -1; i++) head.insert(i);
+        head.join(-1, tree);
+        head.checkRedBlackProperties();
+        assertEquals(100, head.rank(0));
+        OrderStatisticTree<Integer> threes = new OrderStatisticTree<>();
+        for (int i = 0; i < 500; i++) threes.insert(i * 3);
+        head.difference(threes);
+        head.checkRedBlackProperties();
+        assertEquals(Integer.valueOf(1495), head.select(head.size() - 1));
+        assertEquals(100 + 200, head.size()); // 100 negatives, the multiples of 5 that are not of 3
+
+        // rank and range counts follow a comparator, also in the trees split off
+        OrderStatisticTree<Integer> reversed = new OrderStatisticTree<>();
+        reversed.comparator = Comparator.reverseOrder();
+        for (int i = 0; i < 100; i++) reversed.insert(i);
+        assertEquals(0, reversed.rank(99));
+        assertEquals(Integer.valueOf(90), reversed.select(9));
+        assertEquals(11, reversed.countInRange(20, 10));
+        assertEquals(0, reversed.countInRange(10, 20));
+        OrderStatisticTree<Integer> low = (OrderStatisticTree<Integer>) reversed.split(49);
+        assertEquals(50, low.size());
+        assertEquals(40, low.rank(9));
+        assertEquals(10, low.countInRange(9, 0));
+    }
+}
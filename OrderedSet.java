@@ -0,0 +1,86 @@
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Ordered set of distinct, non-null values, as provided by the interchangeable
+ * engines RedBlackTree, with one value per node, and BTreeSet, which packs
+ * many values per node. Code written against this interface can pick the
+ * engine that suits its data size and access pattern. The values are in
+ * their natural ordering unless the engine was created with another one.
+ */
+public interface OrderedSet<T> extends Iterable<T> {
+
+    /**
+     * Adds *data* to this set.
+     * @param data the value to add
+     * @return true if the value was added, false if an equal value is
+     *      already stored in this set
+     * @throws NullPointerException when data is null
+     */
+    boolean insert(T data) throws NullPointerException;
+
+    /**
+     * Removes the value *data* from this set.
+     * @param data the value to remove
+     * @return true if the value was removed, false if it was not in the set
+     * @throws NullPointerException when data is null
+     */
+    boolean remove(T data) throws NullPointerException;
+
+    /**
+     * @param data the data value to test for
+     * @return true if *data* is in the set, false if it is not in the set
+     */
+    boolean contains(T data);
+
+    /**
+     * @return the number of values in this set
+     */
+    int size();
+
+    /**
+     * @return true when this set holds no values
+     */
+    boolean isEmpty();
+
+    /**
+     * @return the smallest value in this set
+     * @throws NoSuchElementException when the set is empty
+     */
+    T first() throws NoSuchElementException;
+
+    /**
+     * @return the largest value in this set
+     * @throws NoSuchElementException when the set is empty
+     */
+    T last() throws NoSuchElementException;
+
+    /**
+     * @return the greatest value less than or equal to *data*, or null
+     */
+    T floor(T data);
+
+    /**
+     * @return the smallest value greater than or equal to *data*, or null
+     */
+    T ceiling(T data);
+
+    /**
+     * @return the greatest value strictly less than *data*, or null
+     */
+    T lower(T data);
+
+    /**
+     * @return the smallest value strictly greater than *data*, or null
+     */
+    T higher(T data);
+
+    /**
+     * Performs action, in ascending order, for every value v of this set with
+     * from <= v < to.
+     * @param from the low end of the range, inclusive
+     * @param to the high end of the range, exclusive
+     * @param action the action to perform on each value in the range
+     */
+    void forEachInRange(T from, T to, Consumer<? super T> action);
+}
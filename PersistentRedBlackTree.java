@@ -0,0 +1,494 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Immutable red-black tree. insert and remove leave this tree untouched and
+ * return a new tree that shares every subtree off the modified path with it,
+ * so an update copies O(log n) nodes and any tree value can be kept as a
+ * snapshot for free. The nodes have no parent references, which is what
+ * makes the sharing possible; the rebalancing is therefore done on the way
+ * back up the recursion, following Okasaki for insertion and Kahrs for
+ * removal.
+ */
+public class PersistentRedBlackTree<T extends Comparable<T>> implements Iterable<T> {
+
+    /**
+     * Immutable node of a PersistentRedBlackTree.
+     */
+    protected static final class Node<T> {
+        public final int blackHeight; // 1 for black nodes, 0 for red nodes
+        public final T data;
+        public final Node<T> leftChild;
+        public final Node<T> rightChild;
+        public Node(int blackHeight, T data, Node<T> leftChild, Node<T> rightChild) {
+            this.blackHeight = blackHeight;
+            this.data = data;
+            this.leftChild = leftChild;
+            this.rightChild = rightChild;
+        }
+    }
+
+    private static final int RED = 0;
+    private static final int BLACK = 1;
+    @SuppressWarnings("rawtypes")
+    private static final PersistentRedBlackTree EMPTY = new PersistentRedBlackTree<>();
+
+    // set only by of, before the tree is handed out; the single constructor is what JUnit needs
+    protected Node<T> root; // null when empty
+    protected int size;
+
+    /**
+     * Creates an empty tree. empty() returns a shared one instead.
+     */
+    public PersistentRedBlackTree() {
+    }
+
+    private static <T extends Comparable<T>> PersistentRedBlackTree<T> of(Node<T> root, int size) {
+        PersistentRedBlackTree<T> tree = new PersistentRedBlackTree<>();
+        tree.root = root;
+        tree.size = size;
+        return tree;
+    }
+
+    /**
+     * @return the empty tree
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Comparable<T>> PersistentRedBlackTree<T> empty() {
+        return (PersistentRedBlackTree<T>) EMPTY;
+    }
+
+    /**
+     * Returns a tree holding the values of this tree and *data*.
+     * @param data the value to add
+     * @return the new tree, or this tree when it already holds a value equal
+     *      to *data*
+     * @throws NullPointerException when data is null
+     */
+    public PersistentRedBlackTree<T> insert(T data) throws NullPointerException {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        Node<T> inserted = insert(root, data);
+        if (inserted == root) return this;
+        return of(blacken(inserted), size + 1);
+    }
+
+    /**
+     * Recursive helper method that returns the subtree node with *data*
+     * added, or node itself when *data* is already in it. The returned
+     * subtree may have a red root with a red child, which the caller resolves.
+     */
+    private static <T extends Comparable<T>> Node<T> insert(Node<T> node, T data) {
+        if (node == null) return new Node<>(RED, data, null, null);
+        int compare = data.compareTo(node.data);
+        if (compare < 0) {
+            Node<T> left = insert(node.leftChild, data);
+            return left == node.leftChild ? node : balanceLeft(node.blackHeight, node.data, left, node.rightChild);
+        } else if (compare > 0) {
+            Node<T> right = insert(node.rightChild, data);
+            return right == node.rightChild ? node : balanceRight(node.blackHeight, node.data, node.leftChild, right);
+        }
+        return node;
+    }
+
+    /**
+     * Builds a node whose left subtree may have a red root with a red child,
+     * turning that red-red pair and the new node into a red node with two
+     * black children.
+     */
+    private static <T> Node<T> balanceLeft(int blackHeight, T data, Node<T> left, Node<T> right) {
+        if (isRed(left) && isRed(left.leftChild)) {
+            return new Node<>(RED, left.data, blacken(left.leftChild),
+                    new Node<>(BLACK, data, left.rightChild, right));
+        } else if (isRed(left) && isRed(left.rightChild)) {
+            return new Node<>(RED, left.rightChild.data,
+                    new Node<>(BLACK, left.data, left.leftChild, left.rightChild.leftChild),
+                    new Node<>(BLACK, data, left.rightChild.rightChild, right));
+        }
+        return new Node<>(blackHeight, data, left, right);
+    }
+
+    /**
+     * Mirror image of balanceLeft for the right subtree.
+     */
+    private static <T> Node<T> balanceRight(int blackHeight, T data, Node<T> left, Node<T> right) {
+        if (isRed(right) && isRed(right.leftChild)) {
+            return new Node<>(RED, right.leftChild.data,
+                    new Node<>(BLACK, data, left, right.leftChild.leftChild),
+                    new Node<>(BLACK, right.data, right.leftChild.rightChild, right.rightChild));
+        } else if (isRed(right) && isRed(right.rightChild)) {
+            return new Node<>(RED, right.data, new Node<>(BLACK, data, left, right.leftChild),
+                    blacken(right.rightChild));
+        }
+        return new Node<>(blackHeight, data, left, right);
+    }
+
+    /**
+     * Returns a tree holding the values of this tree except *data*.
+     * @param data the value to remove
+     * @return the new tree, or this tree when it holds no value equal to *data*
+     * @throws NullPointerException when data is null
+     */
+    public PersistentRedBlackTree<T> remove(T data) throws NullPointerException {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        Node<T> removed = remove(root, data);
+        if (removed == root) return this;
+        if (size == 1) return empty();
+        return of(blacken(removed), size - 1);
+    }
+
+    /**
+     * Recursive helper method that returns the subtree node without *data*,
+     * or node itself when *data* is not in it. When *data* was removed and
+     * node is black, the result has a black height one less than node.
+     */
+    private static <T extends Comparable<T>> Node<T> remove(Node<T> node, T data) {
+        if (node == null) return null;
+        int compare = data.compareTo(node.data);
+        if (compare < 0) {
+            Node<T> left = remove(node.leftChild, data);
+            if (left == node.leftChild) return node;
+            return isBlack(node.leftChild) ? balanceLeftShrunk(node.data, left, node.rightChild)
+                    : new Node<>(RED, node.data, left, node.rightChild);
+        } else if (compare > 0) {
+            Node<T> right = remove(node.rightChild, data);
+            if (right == node.rightChild) return node;
+            return isBlack(node.rightChild) ? balanceRightShrunk(node.data, node.leftChild, right)
+                    : new Node<>(RED, node.data, node.leftChild, right);
+        }
+        return join(node.leftChild, node.rightChild);
+    }
+
+    /**
+     * Builds a node from a left subtree whose black height is one less than
+     * that of the right subtree.
+     */
+    private static <T> Node<T> balanceLeftShrunk(T data, Node<T> left, Node<T> right) {
+        if (isRed(left)) {
+            return new Node<>(RED, data, blacken(left), right);
+        } else if (isBlack(right)) {
+            return balance(data, left, redden(right));
+        } else if (isRed(right) && isBlack(right.leftChild)) {
+            return new Node<>(RED, right.leftChild.data,
+                    new Node<>(BLACK, data, left, right.leftChild.leftChild),
+                    balance(right.data, right.leftChild.rightChild, redden(right.rightChild)));
+        }
+        throw new IllegalStateException("black heights differ below " + data);
+    }
+
+    /**
+     * Mirror image of balanceLeftShrunk for a right subtree whose black height
+     * is one less than that of the left subtree.
+     */
+    private static <T> Node<T> balanceRightShrunk(T data, Node<T> left, Node<T> right) {
+        if (isRed(right)) {
+            return new Node<>(RED, data, left, blacken(right));
+        } else if (isBlack(left)) {
+            return balance(data, redden(left), right);
+        } else if (isRed(left) && isBlack(left.rightChild)) {
+            return new Node<>(RED, left.rightChild.data,
+                    balance(left.data, redden(left.leftChild), left.rightChild.leftChild),
+                    new Node<>(BLACK, data, left.rightChild.rightChild, right));
+        }
+        throw new IllegalStateException("black heights differ below " + data);
+    }
+
+    /**
+     * Builds a black node from two subtrees of equal black height, resolving a
+     * red child with a red child of its own.
+     */
+    private static <T> Node<T> balance(T data, Node<T> left, Node<T> right) {
+        if (isRed(left)) {
+            if (isRed(right)) {
+                return new Node<>(RED, data, blacken(left), blacken(right));
+            } else if (isRed(left.leftChild)) {
+                return new Node<>(RED, left.data, blacken(left.leftChild),
+                        new Node<>(BLACK, data, left.rightChild, right));
+            } else if (isRed(left.rightChild)) {
+                return new Node<>(RED, left.rightChild.data,
+                        new Node<>(BLACK, left.data, left.leftChild, left.rightChild.leftChild),
+                        new Node<>(BLACK, data, left.rightChild.rightChild, right));
+            }
+        } else if (isRed(right)) {
+            if (isRed(right.rightChild)) {
+                return new Node<>(RED, right.data, new Node<>(BLACK, data, left, right.leftChild),
+                        blacken(right.rightChild));
+            } else if (isRed(right.leftChild)) {
+                return new Node<>(RED, right.leftChild.data,
+                        new Node<>(BLACK, data, left, right.leftChild.leftChild),
+                        new Node<>(BLACK, right.data, right.leftChild.rightChild, right.rightChild));
+            }
+        }
+        return new Node<>(BLACK, data, left, right);
+    }
+
+    /**
+     * Joins two subtrees of equal black height, where every value of left is
+     * less than every value of right, into a single subtree. This takes the
+     * place of a removed node with children left and right.
+     */
+    private static <T> Node<T> join(Node<T> left, Node<T> right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (isRed(left) && isRed(right)) {
+            Node<T> middle = join(left.rightChild, right.leftChild);
+            if (isRed(middle)) {
+                return new Node<>(RED, middle.data,
+                        new Node<>(RED, left.data, left.leftChild, middle.leftChild),
+                        new Node<>(RED, right.data, middle.rightChild, right.rightChild));
+            }
+            return new Node<>(RED, left.data, left.leftChild,
+                    new Node<>(RED, right.data, middle, right.rightChild));
+        } else if (isBlack(left) && isBlack(right)) {
+            Node<T> middle = join(left.rightChild, right.leftChild);
+            if (isRed(middle)) {
+                return new Node<>(RED, middle.data,
+                        new Node<>(BLACK, left.data, left.leftChild, middle.leftChild),
+                        new Node<>(BLACK, right.data, middle.rightChild, right.rightChild));
+            }
+            return balanceLeftShrunk(left.data, left.leftChild,
+                    new Node<>(BLACK, right.data, middle, right.rightChild));
+        } else if (isRed(right)) {
+            return new Node<>(RED, right.data, join(left, right.leftChild), right.rightChild);
+        }
+        return new Node<>(RED, left.data, left.leftChild, join(left.rightChild, right));
+    }
+
+    private static boolean isRed(Node<?> node) {
+        return node != null && node.blackHeight == RED;
+    }
+
+    private static boolean isBlack(Node<?> node) {
+        return node != null && node.blackHeight == BLACK;
+    }
+
+    private static <T> Node<T> blacken(Node<T> node) {
+        return isRed(node) ? new Node<>(BLACK, node.data, node.leftChild, node.rightChild) : node;
+    }
+
+    private static <T> Node<T> redden(Node<T> node) {
+        return new Node<>(RED, node.data, node.leftChild, node.rightChild);
+    }
+
+    /**
+     * Checks whether the tree contains the value *data*.
+     * @param data the data value to test for
+     * @return true if *data* is in the tree, false if it is not in the tree
+     */
+    public boolean contains(T data) {
+        return findNode(data) != null;
+    }
+
+    /**
+     * Looks up the value stored within this tree that is equal to *data*.
+     * @param data the data value to look for
+     * @return the stored value that is equal to *data*, or null if there is none
+     */
+    public T find(T data) {
+        Node<T> node = findNode(data);
+        return node == null ? null : node.data;
+    }
+
+    private Node<T> findNode(T data) {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        Node<T> node = root;
+        while (node != null) {
+            int compare = data.compareTo(node.data);
+            if (compare < 0) node = node.leftChild;
+            else if (compare > 0) node = node.rightChild;
+            else return node;
+        }
+        return null;
+    }
+
+    /**
+     * @return the smallest value in this tree
+     * @throws NoSuchElementException when the tree is empty
+     */
+    public T first() throws NoSuchElementException {
+        if (root == null) throw new NoSuchElementException("This RedBlackTree is empty.");
+        Node<T> node = root;
+        while (node.leftChild != null) node = node.leftChild;
+        return node.data;
+    }
+
+    /**
+     * @return the largest value in this tree
+     * @throws NoSuchElementException when the tree is empty
+     */
+    public T last() throws NoSuchElementException {
+        if (root == null) throw new NoSuchElementException("This RedBlackTree is empty.");
+        Node<T> node = root;
+        while (node.rightChild != null) node = node.rightChild;
+        return node.data;
+    }
+
+    /**
+     * Get the size of the tree (its number of nodes).
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to check if the tree is empty (does not contain any node).
+     * @return true of this.size() return 0, false if this.size() > 0
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns an iterator over the values of this tree in ascending order.
+     * Since the tree never changes, the iterator needs no modification checks.
+     * @return an iterator over the values of this tree in in-order sequence
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            // the nodes whose left subtree has been visited, but not they themselves
+            private final ArrayDeque<Node<T>> pending = new ArrayDeque<>();
+            { pushLeftPath(root); }
+
+            private void pushLeftPath(Node<T> node) {
+                for (; node != null; node = node.leftChild) pending.push(node);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (pending.isEmpty()) throw new NoSuchElementException();
+                Node<T> node = pending.pop();
+                pushLeftPath(node.rightChild);
+                return node.data;
+            }
+        };
+    }
+
+    /**
+     * @return string containing the ordered values of this tree (in-order traversal)
+     */
+    public String toInOrderString() {
+        StringBuilder sb = new StringBuilder("[ ");
+        for (T value : this) sb.append(value).append(", ");
+        if (root != null) sb.setLength(sb.length() - 2);
+        return sb.append(" ]").toString();
+    }
+
+    public String toString() {
+        return toInOrderString();
+    }
+
+    /**
+     * Verifies the binary search tree ordering, that no red node has a red
+     * child, that every path has the same number of black nodes, that the
+     * root is black and that size matches the number of nodes.
+     * @throws IllegalStateException describing the first violation found
+     */
+    protected void checkRedBlackProperties() throws IllegalStateException {
+        if (isRed(root)) throw new IllegalStateException("the root is red");
+        int[] count = new int[1];
+        checkSubtree(root, null, null, count);
+        if (count[0] != size)
+            throw new IllegalStateException("size is " + size + " but the tree holds " + count[0] + " nodes");
+    }
+
+    private int checkSubtree(Node<T> node, T low, T high, int[] count) {
+        if (node == null) return 1;
+        count[0]++;
+        if ((low != null && node.data.compareTo(low) <= 0) || (high != null && node.data.compareTo(high) >= 0))
+            throw new IllegalStateException("ordering violated at " + node.data);
+        if (isRed(node) && (isRed(node.leftChild) || isRed(node.rightChild)))
+            throw new IllegalStateException("red node " + node.data + " has a red child");
+        int left = checkSubtree(node.leftChild, low, node.data, count);
+        int right = checkSubtree(node.rightChild, node.data, high, count);
+        if (left != right)
+            throw new IllegalStateException("black heights differ below " + node.data);
+        return left + node.blackHeight;
+    }
+
+    @Test
+    public void test1() {
+        // every persistent version agrees with a TreeSet copy taken when it was made
+        PersistentRedBlackTree<Integer> tree = PersistentRedBlackTree.empty();
+        TreeSet<Integer> expected = new TreeSet<>();
+        List<PersistentRedBlackTree<Integer>> versions = new ArrayList<>();
+        List<List<Integer>> contents = new ArrayList<>();
+        Random random = new Random(10);
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(500);
+            PersistentRedBlackTree<Integer> next;
+            if (random.nextInt(3) == 0) {
+                next = tree.remove(value);
+                assertEquals(expected.remove(value), next != tree);
+            } else {
+                next = tree.insert(value);
+                assertEquals(expected.add(value), next != tree);
+            }
+            tree = next;
+            tree.checkRedBlackProperties();
+            if (i % 250 == 0) {
+                versions.add(tree);
+                contents.add(new ArrayList<>(expected));
+            }
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            List<Integer> values = new ArrayList<>();
+            for (Integer value : versions.get(v)) values.add(value);
+            assertEquals(contents.get(v), values);
+        }
+        assertEquals(expected.first(), tree.first());
+        assertEquals(expected.last(), tree.last());
+        assertThrows(NoSuchElementException.class, () -> PersistentRedBlackTree.<Integer>empty().first());
+    }
+
+    @Test
+    public void test2() {
+        // an update copies only the nodes on one path and shares the rest
+        PersistentRedBlackTree<Integer> tree = PersistentRedBlackTree.empty();
+        for (int i = 0; i < 1024; i++) tree = tree.insert(i * 2);
+        Map<Node<Integer>, Boolean> before = new IdentityHashMap<>();
+        collect(tree.root, before);
+        for (PersistentRedBlackTree<Integer> next : List.of(tree.insert(1001), tree.remove(1000))) {
+            Map<Node<Integer>, Boolean> after = new IdentityHashMap<>();
+            collect(next.root, after);
+            int copied = 0;
+            for (Node<Integer> node : after.keySet()) if (!before.containsKey(node)) copied++;
+            assertTrue(copied <= 2 * 2 * 11, "copied " + copied + " nodes");
+        }
+        assertSame(tree, tree.insert(2));
+        assertSame(tree, tree.remove(1));
+        assertFalse(tree.remove(1000).contains(1000));
+        assertTrue(tree.contains(1000));
+        assertEquals(1024, tree.size());
+    }
+
+    private static void collect(Node<Integer> node,
+                                Map<Node<Integer>, Boolean> nodes) {
+        if (node == null) return;
+        nodes.put(node, true);
+        collect(node.leftChild, nodes);
+        collect(node.rightChild, nodes);
+    }
+}
@@ -0,0 +1,391 @@
+import java.util.Arrays;
+
+/**
+ * Shared structure of the red-black trees that store primitive keys. Instead
+ * of one Node object per value, nodes are slots: an int index into parallel
+ * arrays holding the left, right and parent links and the colour of every
+ * node, while subclasses keep the keys in a primitive array indexed by the
+ * same slot. Slot 0 is a black sentinel standing in for every null child, so
+ * the rotations and fix-ups never have to test for missing children. Slots
+ * freed by removals are chained into a free-list through their left link and
+ * are handed out again before the arrays grow.
+ *
+ * Subclasses implement the descent for their key type and call linkSlot and
+ * unlinkSlot to change the structure.
+ */
+public abstract class PrimitiveRedBlackTree {
+
+    protected static final int NIL = 0; // sentinel slot, used for every null child
+    private static final int INITIAL_SLOTS = 17;
+
+    protected int[] leftChild;
+    protected int[] rightChild;
+    protected int[] parent;
+    protected byte[] blackHeight; // 1 for black nodes, 0 for red nodes
+    protected int root = NIL; // slot of the root node, NIL when empty
+    protected int size = 0; // the number of values in the tree
+    private int nextSlot = 1; // lowest slot that has never been used
+    private int freeSlot = NIL; // head of the free-list of released slots
+
+    protected PrimitiveRedBlackTree() {
+        leftChild = new int[INITIAL_SLOTS];
+        rightChild = new int[INITIAL_SLOTS];
+        parent = new int[INITIAL_SLOTS];
+        blackHeight = new byte[INITIAL_SLOTS];
+        blackHeight[NIL] = 1;
+    }
+
+    /**
+     * Resizes the key array of the subclass to the provided number of slots.
+     * @param slots the new length of the key array
+     */
+    protected abstract void growKeys(int slots);
+
+    /**
+     * Compares the keys stored in two slots, used by checkRedBlackProperties.
+     * @return a negative value, zero, or a positive value as the key in slot a
+     *      is less than, equal to, or greater than the key in slot b
+     */
+    protected abstract int compareSlots(int a, int b);
+
+    /**
+     * Get the size of the tree (its number of nodes).
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to check if the tree is empty (does not contain any node).
+     * @return true of this.size() return 0, false if this.size() > 0
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values. The arrays keep their current capacity.
+     */
+    public void clear() {
+        root = NIL;
+        size = 0;
+        nextSlot = 1;
+        freeSlot = NIL;
+    }
+
+    /**
+     * Grows the arrays of this tree, if necessary, so that it can hold the
+     * provided number of values without growing again.
+     * @param capacity the number of values to make room for
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity >= leftChild.length) grow(capacity + 1);
+    }
+
+    /**
+     * Takes a slot from the free-list, or the next unused slot, growing the
+     * arrays when all slots are in use. The key of the returned slot is to be
+     * set by the caller before linking it.
+     * @return a slot that is not part of the tree
+     */
+    protected int allocateSlot() {
+        if (freeSlot != NIL) {
+            int slot = freeSlot;
+            freeSlot = leftChild[slot];
+            return slot;
+        }
+        if (nextSlot == leftChild.length) {
+            int slots = leftChild.length + (leftChild.length >> 1) + 1;
+            if (slots < 0) throw new IllegalStateException("tree is too large");
+            grow(slots);
+        }
+        return nextSlot++;
+    }
+
+    private void grow(int slots) {
+        leftChild = Arrays.copyOf(leftChild, slots);
+        rightChild = Arrays.copyOf(rightChild, slots);
+        parent = Arrays.copyOf(parent, slots);
+        blackHeight = Arrays.copyOf(blackHeight, slots);
+        growKeys(slots);
+    }
+
+    /**
+     * Links a slot, whose key is already set, as a new red leaf below the
+     * provided parent and restores the red-black tree properties.
+     * @param slot is the slot being added
+     * @param parentSlot the slot to attach it to, NIL for an empty tree
+     * @param left true to attach it as the left child of parentSlot
+     */
+    protected void linkSlot(int slot, int parentSlot, boolean left) {
+        leftChild[slot] = NIL;
+        rightChild[slot] = NIL;
+        parent[slot] = parentSlot;
+        blackHeight[slot] = 0;
+        if (parentSlot == NIL) root = slot;
+        else if (left) leftChild[parentSlot] = slot;
+        else rightChild[parentSlot] = slot;
+        enforceRBTreePropertiesAfterInsert(slot);
+        size++;
+    }
+
+    /**
+     * Resolve any red node with red parent property violations that are
+     * introduced by linking the provided red slot.
+     * @param node is the slot that was just linked
+     */
+    private void enforceRBTreePropertiesAfterInsert(int node) {
+        while (blackHeight[parent[node]] == 0) {
+            int p = parent[node];
+            int grandParent = parent[p];
+            if (p == leftChild[grandParent]) {
+                int uncle = rightChild[grandParent];
+                if (blackHeight[uncle] == 0) {
+                    blackHeight[p] = 1;
+                    blackHeight[uncle] = 1;
+                    blackHeight[grandParent] = 0;
+                    node = grandParent;
+                } else {
+                    if (node == rightChild[p]) {
+                        node = p;
+                        rotateLeft(node);
+                        p = parent[node];
+                    }
+                    blackHeight[p] = 1;
+                    blackHeight[grandParent] = 0;
+                    rotateRight(grandParent);
+                }
+            } else {
+                int uncle = leftChild[grandParent];
+                if (blackHeight[uncle] == 0) {
+                    blackHeight[p] = 1;
+                    blackHeight[uncle] = 1;
+                    blackHeight[grandParent] = 0;
+                    node = grandParent;
+                } else {
+                    if (node == leftChild[p]) {
+                        node = p;
+                        rotateRight(node);
+                        p = parent[node];
+                    }
+                    blackHeight[p] = 1;
+                    blackHeight[grandParent] = 0;
+                    rotateLeft(grandParent);
+                }
+            }
+        }
+        // make sure root is always black
+        blackHeight[root] = 1;
+    }
+
+    /**
+     * Unlinks the provided slot from the tree, restores the red-black tree
+     * properties and puts the slot on the free-list.
+     * @param node is a slot that is part of the tree
+     */
+    protected void unlinkSlot(int node) {
+        int child;
+        int removedColor = blackHeight[node];
+        if (leftChild[node] == NIL) {
+            child = rightChild[node];
+            replaceInParent(node, child);
+        } else if (rightChild[node] == NIL) {
+            child = leftChild[node];
+            replaceInParent(node, child);
+        } else {
+            int successor = rightChild[node];
+            while (leftChild[successor] != NIL) successor = leftChild[successor];
+            removedColor = blackHeight[successor];
+            child = rightChild[successor];
+            if (parent[successor] == node) {
+                parent[child] = successor; // may set the sentinel's parent
+            } else {
+                replaceInParent(successor, child);
+                rightChild[successor] = rightChild[node];
+                parent[rightChild[successor]] = successor;
+            }
+            replaceInParent(node, successor);
+            leftChild[successor] = leftChild[node];
+            parent[leftChild[successor]] = successor;
+            blackHeight[successor] = blackHeight[node];
+        }
+        if (removedColor == 1) enforceRBTreePropertiesAfterRemove(child);
+        parent[NIL] = NIL;
+        leftChild[node] = freeSlot;
+        freeSlot = node;
+        size--;
+    }
+
+    /**
+     * Puts replacement into the position of node within node's parent. The
+     * parent of replacement is set even when it is the sentinel, so the
+     * remove fix-up can walk up from an empty position.
+     */
+    private void replaceInParent(int node, int replacement) {
+        int p = parent[node];
+        if (p == NIL) root = replacement;
+        else if (node == leftChild[p]) leftChild[p] = replacement;
+        else rightChild[p] = replacement;
+        parent[replacement] = p;
+    }
+
+    /**
+     * Resolve the missing black on the path through the provided slot that is
+     * introduced by removing a black node.
+     * @param node is the slot short of one black, possibly the sentinel
+     */
+    private void enforceRBTreePropertiesAfterRemove(int node) {
+        while (node != root && blackHeight[node] == 1) {
+            int p = parent[node];
+            if (node == leftChild[p]) {
+                int sibling = rightChild[p];
+                if (blackHeight[sibling] == 0) {
+                    blackHeight[sibling] = 1;
+                    blackHeight[p] = 0;
+                    rotateLeft(p);
+                    sibling = rightChild[p];
+                }
+                if (blackHeight[leftChild[sibling]] == 1 && blackHeight[rightChild[sibling]] == 1) {
+                    blackHeight[sibling] = 0;
+                    node = p;
+                } else {
+                    if (blackHeight[rightChild[sibling]] == 1) {
+                        blackHeight[leftChild[sibling]] = 1;
+                        blackHeight[sibling] = 0;
+                        rotateRight(sibling);
+                        sibling = rightChild[p];
+                    }
+                    blackHeight[sibling] = blackHeight[p];
+                    blackHeight[p] = 1;
+                    blackHeight[rightChild[sibling]] = 1;
+                    rotateLeft(p);
+                    node = root;
+                }
+            } else {
+                int sibling = leftChild[p];
+                if (blackHeight[sibling] == 0) {
+                    blackHeight[sibling] = 1;
+                    blackHeight[p] = 0;
+                    rotateRight(p);
+                    sibling = leftChild[p];
+                }
+                if (blackHeight[leftChild[sibling]] == 1 && blackHeight[rightChild[sibling]] == 1) {
+                    blackHeight[sibling] = 0;
+                    node = p;
+                } else {
+                    if (blackHeight[leftChild[sibling]] == 1) {
+                        blackHeight[rightChild[sibling]] = 1;
+                        blackHeight[sibling] = 0;
+                        rotateLeft(sibling);
+                        sibling = leftChild[p];
+                    }
+                    blackHeight[sibling] = blackHeight[p];
+                    blackHeight[p] = 1;
+                    blackHeight[leftChild[sibling]] = 1;
+                    rotateRight(p);
+                    node = root;
+                }
+            }
+        }
+        blackHeight[node] = 1;
+    }
+
+    /**
+     * Rotates the right child of the provided slot into its position.
+     */
+    private void rotateLeft(int node) {
+        int child = rightChild[node];
+        rightChild[node] = leftChild[child];
+        if (leftChild[child] != NIL) parent[leftChild[child]] = node;
+        replaceInParent(node, child);
+        leftChild[child] = node;
+        parent[node] = child;
+    }
+
+    /**
+     * Rotates the left child of the provided slot into its position.
+     */
+    private void rotateRight(int node) {
+        int child = leftChild[node];
+        leftChild[node] = rightChild[child];
+        if (rightChild[child] != NIL) parent[rightChild[child]] = node;
+        replaceInParent(node, child);
+        rightChild[child] = node;
+        parent[node] = child;
+    }
+
+    /**
+     * @return the slot holding the smallest key, or NIL when empty
+     */
+    protected int firstSlot() {
+        int node = root;
+        if (node != NIL) while (leftChild[node] != NIL) node = leftChild[node];
+        return node;
+    }
+
+    /**
+     * @return the slot holding the largest key, or NIL when empty
+     */
+    protected int lastSlot() {
+        int node = root;
+        if (node != NIL) while (rightChild[node] != NIL) node = rightChild[node];
+        return node;
+    }
+
+    /**
+     * @param node a slot of the tree
+     * @return the slot that follows node in-order, or NIL for the last one
+     */
+    protected int successor(int node) {
+        if (rightChild[node] != NIL) {
+            node = rightChild[node];
+            while (leftChild[node] != NIL) node = leftChild[node];
+            return node;
+        }
+        int p = parent[node];
+        while (p != NIL && node == rightChild[p]) {
+            node = p;
+            p = parent[p];
+        }
+        return p;
+    }
+
+    /**
+     * Verifies the ordering, parent links, size and red-black tree properties
+     * of this tree. This walks the whole tree and is intended for tests.
+     * @throws IllegalStateException describing the first violation found
+     */
+    protected void checkRedBlackProperties() throws IllegalStateException {
+        if (blackHeight[NIL] != 1) throw new IllegalStateException("sentinel is red");
+        if (root == NIL) {
+            if (size != 0) throw new IllegalStateException("empty tree with size " + size);
+            return;
+        }
+        if (parent[root] != NIL) throw new IllegalStateException("root has a parent");
+        if (blackHeight[root] != 1) throw new IllegalStateException("root is red");
+        int count = 0;
+        for (int node = firstSlot(), previous = NIL; node != NIL; previous = node, node = successor(node)) {
+            count++;
+            if (previous != NIL && compareSlots(previous, node) >= 0)
+                throw new IllegalStateException("ordering violated at slot " + node);
+        }
+        if (count != size)
+            throw new IllegalStateException("size is " + size + " but tree holds " + count + " nodes");
+        checkSubtree(root);
+    }
+
+    private int checkSubtree(int node) {
+        if (node == NIL) return 1;
+        int left = leftChild[node];
+        int right = rightChild[node];
+        if ((left != NIL && parent[left] != node) || (right != NIL && parent[right] != node))
+            throw new IllegalStateException("bad parent reference below slot " + node);
+        if (blackHeight[node] == 0 && (blackHeight[left] == 0 || blackHeight[right] == 0))
+            throw new IllegalStateException("red slot " + node + " has a red child");
+        int leftHeight = checkSubtree(left);
+        if (leftHeight != checkSubtree(right))
+            throw new IllegalStateException("black heights differ below slot " + node);
+        return leftHeight + blackHeight[node];
+    }
+}
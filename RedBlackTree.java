@@ -1,6 +1,3 @@
-//never mind, just for test
-import java.util.LinkedList;
-
 /*** JUnit imports ***/
 // We will use the BeforeEach and Test annotation types to mark methods in
 // our test class.
@@ -9,13 +6,53 @@ import org.junit.jupiter.api.Test;
 // The Assertions class that we import from here includes assertion methods like assertEquals()
 // which we will used in test1000Inserts().
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 // More details on each of the imported elements can be found here:
 // https://junit.org/junit5/docs/current/api/org.junit.jupiter.api/org/junit/jupiter/api/package-summary.html
 /*** JUnit imports end  ***/
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Random;
+import java.util.Spliterator;
 import java.util.Stack;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32C;
 
 /**
  * Red-Black Tree implementation with a Node inner class for representing
@@ -26,7 +63,7 @@ import java.util.Stack;
  * a regular binary search tree, and its toString method to display a level-order
  * traversal of the tree.
  */
-public class RedBlackTree<T extends Comparable<T>> {
+public class RedBlackTree<T> implements OrderedSet<T> {
 
     /**
      * This class represents a node holding a single value within a binary tree
@@ -49,82 +86,248 @@ public class RedBlackTree<T extends Comparable<T>> {
 
     }
 
+    /**
+     * Node of a tree ordered by a long key, which caches the key of its
+     * value so that descents compare longs instead of calling the key
+     * extractor on every node they pass.
+     */
+    protected static class KeyedNode<T> extends Node<T> {
+        public final long key;
+        public KeyedNode(T data, long key) { super(data); this.key = key; }
+    }
+
     protected Node<T> root; // reference to root node of tree, null when empty
     protected int size = 0; // the number of values in the tree
+    protected int modCount = 0; // number of structural changes, for fail-fast iteration
+    protected TreeMetrics metrics; // operation counts, null unless enabled
+    protected Comparator<? super T> comparator; // null for natural ordering
+    protected ToLongFunction<? super T> keyExtractor; // null unless ordered by a long key
+
+    /**
+     * Creates a tree whose values are ordered by comparator instead of by
+     * their natural ordering, so they need not implement Comparable. Values
+     * that comparator considers equal are duplicates.
+     * @param comparator the ordering of the values
+     * @return a new, empty tree
+     */
+    public static <T> RedBlackTree<T> withComparator(Comparator<? super T> comparator) {
+        if (comparator == null) throw new NullPointerException("comparator");
+        RedBlackTree<T> tree = new RedBlackTree<>();
+        tree.comparator = comparator;
+        return tree;
+    }
+
+    /**
+     * Creates a tree whose values are ordered by the long that keyExtractor
+     * takes from each of them. The key is taken once per value and kept in
+     * its node, so descents compare primitive keys without calling back into
+     * the values. Values with equal keys are duplicates, and the key of a
+     * value must not change while it is in the tree.
+     * @param keyExtractor takes the key from a value
+     * @return a new, empty tree
+     */
+    public static <T> RedBlackTree<T> withLongKey(ToLongFunction<? super T> keyExtractor) {
+        if (keyExtractor == null) throw new NullPointerException("keyExtractor");
+        RedBlackTree<T> tree = new RedBlackTree<>();
+        tree.keyExtractor = keyExtractor;
+        tree.comparator = Comparator.comparingLong(keyExtractor);
+        return tree;
+    }
+
+    /**
+     * @return the comparator ordering the values of this tree, or null when
+     *      they are in their natural ordering
+     */
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    /**
+     * @param data a value
+     * @return the key of data when this tree is ordered by a long key,
+     *      otherwise 0
+     */
+    protected final long keyOf(T data) {
+        return keyExtractor == null ? 0 : keyExtractor.applyAsLong(data);
+    }
+
+    /**
+     * Compares data with the value of node, in the order of this tree. The
+     * key is passed in so that a descent takes it from data only once.
+     * @param data the value to compare
+     * @param key keyOf(data)
+     * @param node the node to compare with
+     * @return a negative number, zero or a positive number as data is less
+     *      than, equal to or greater than the value of node
+     */
+    @SuppressWarnings("unchecked")
+    protected final int compare(T data, long key, Node<T> node) {
+        if (keyExtractor != null) return Long.compare(key, ((KeyedNode<T>) node).key);
+        if (comparator != null) return comparator.compare(data, node.data);
+        return ((Comparable<? super T>) data).compareTo(node.data);
+    }
+
+    /**
+     * Compares two values in the order of this tree.
+     * @return a negative number, zero or a positive number as a is less
+     *      than, equal to or greater than b
+     */
+    @SuppressWarnings("unchecked")
+    protected final int compare(T a, T b) {
+        if (comparator != null) return comparator.compare(a, b);
+        return ((Comparable<? super T>) a).compareTo(b);
+    }
 
 
 
     /**
-     * Performs a naive insertion into a binary search tree: adding the input
-     * data value to a new node in a leaf position within the tree. After
-     * this insertion, no attempt is made to restructure or balance the tree.
+     * Inserts the input data value into a new node in a leaf position within
+     * the tree and then restores the red-black tree properties. The leaf
+     * position is found by an iterative descent from the root, and the new
+     * node is only allocated once that position is known, so a rejected
+     * duplicate costs neither a Node nor an exception.
      * This tree will not hold null references, nor duplicate data values.
      * @param data to be added into this binary search tree
-     * @return true if the value was inserted, false if not
+     * @return true if the value was inserted, false if an equal value is
+     *      already stored in this tree
+     * @throws NullPointerException when the provided data argument is null
+     */
+    public boolean insert(T data) throws NullPointerException {
+        int oldSize = size;
+        insertNode(data);
+        return size != oldSize;
+    }
+
+    /**
+     * Iterative helper method that descends from the root to the null child
+     * reference where data belongs, and then extends this tree by a new node
+     * in that position. When a node with equal data is met along the way, the
+     * descent stops and the tree is left untouched.
+     * @param data is the value that is being added to this tree
+     * @return the node holding data after the call: the newly linked node
+     *      when the size of the tree grew, otherwise the node that already
+     *      held an equal value
      * @throws NullPointerException when the provided data argument is null
-     * @throws IllegalArgumentException when the newNode and subtree contain
-     *      equal data references
      */
-    public boolean insert(T data) throws NullPointerException, IllegalArgumentException {
+    protected Node<T> insertNode(T data) throws NullPointerException {
         // null references cannot be stored within this tree
         if(data == null) throw new NullPointerException(
                 "This RedBlackTree cannot store null references.");
 
-        Node<T> newNode = new Node<>(data);
-        if(root == null) {
-            root = newNode;
-            size++;
-            root.blackHeight = 1;
-            return true;
-        } // add first node to an empty tree
-        else{
-            boolean returnValue = insertHelper(newNode,root); // recursively insert into subtree
-            if (returnValue) {size++; }
-            else throw new IllegalArgumentException(
-                    "This RedBlackTree already contains that value.");
+        if(root == null) { // add first node to an empty tree
+            root = newNode(data);
             root.blackHeight = 1;
-            return returnValue;
+            size++;
+            modCount++;
+            if (metrics != null) metrics.recordInsert(1, 0);
+            return root;
+        }
+        Node<T> parent = root;
+        long key = keyOf(data);
+        int compare;
+        int depth = 0;
+        while (true) {
+            depth++;
+            compare = compare(data, key, parent);
+            if (compare < 0) {
+                if (parent.leftChild == null) break; // left subtree empty, add here
+                parent = parent.leftChild;
+            } else if (compare > 0) {
+                if (parent.rightChild == null) break; // right subtree empty, add here
+                parent = parent.rightChild;
+            } else {
+                // do not allow duplicate values to be stored within this tree
+                if (metrics != null) metrics.recordDuplicate(depth);
+                return parent;
+            }
         }
+        Node<T> newNode = newNode(data);
+        newNode.parent = parent;
+        if (compare < 0) parent.leftChild = newNode;
+        else parent.rightChild = newNode;
+        afterLink(newNode);
+        int iterations = enforceRBTreePropertiesAfterInsert(newNode);
+        size++;
+        modCount++;
+        if (metrics != null) metrics.recordInsert(depth + 1, iterations);
+        return newNode;
     }
 
     /**
-     * Recursive helper method to find the subtree with a null reference in the
-     * position that the newNode should be inserted, and then extend this tree
-     * by the newNode in that position.
-     * @param newNode is the new node that is being added to this tree
-     * @param subtree is the reference to a node within this tree which the
-     *      newNode should be inserted as a descenedent beneath
-     * @return true is the value was inserted in subtree, false if not
+     * Creates the node that will hold a value added to this tree. Subclasses
+     * that keep additional state in their nodes override this.
+     * @param data the value for the new node
+     * @return a new, unlinked red node holding data
      */
-    private boolean insertHelper(Node<T> newNode, Node<T> subtree) {
-        int compare = newNode.data.compareTo(subtree.data);
-        // do not allow duplicate values to be stored within this tree
-        if (compare == 0)
-            return false;
+    protected Node<T> newNode(T data) {
+        if (keyExtractor != null) return new KeyedNode<>(data, keyExtractor.applyAsLong(data));
+        return new Node<>(data);
+    }
 
-            // store newNode within left subtree of subtree
-        else if (compare < 0) {
-            if (subtree.leftChild == null) { // left subtree empty, add here
-                subtree.leftChild = newNode;
-                newNode.parent = subtree;
-                enforceRBTreePropertiesAfterInsert(newNode);
-                return true;
-                // otherwise continue recursive search for location to insert
-            } else
-                return insertHelper(newNode, subtree.leftChild);
-        }
+    /**
+     * @return whether the nodes of this tree store a number of occurrences
+     *      of their value, which save writes and load restores; false unless
+     *      a subclass stores several occurrences per node
+     */
+    protected boolean storesCounts() {
+        return false;
+    }
 
-        // store newNode within the right subtree of subtree
-        else {
-            if (subtree.rightChild == null) { // right subtree empty, add here
-                subtree.rightChild = newNode;
-                newNode.parent = subtree;
-                enforceRBTreePropertiesAfterInsert(newNode);
-                return true;
-                // otherwise continue recursive search for location to insert
-            } else
-                return insertHelper(newNode, subtree.rightChild);
-        }
+    /**
+     * @param node a node of this tree
+     * @return the number of occurrences of its value node stands for, which
+     *      is 1 unless a subclass stores several occurrences per node
+     */
+    protected int countOf(Node<T> node) {
+        return 1;
+    }
+
+    /**
+     * Sets the number of occurrences of a node that load has just created,
+     * before it is linked. Only called when storesCounts returns true.
+     * @param node the new node
+     * @param count the number of occurrences, at least 1
+     */
+    protected void setCount(Node<T> node, int count) {
+        throw new UnsupportedOperationException("This RedBlackTree does not store counts.");
+    }
+
+    /**
+     * Called after a new node has been linked into a leaf position, before
+     * the red-black tree properties are restored. Subclasses that keep
+     * per-subtree state in their nodes override this and the other after*
+     * methods to maintain it; this implementation does nothing.
+     * @param node the node that was just linked
+     */
+    protected void afterLink(Node<T> node) {
+    }
+
+    /**
+     * Called after a node has been unlinked by removeNode, before the
+     * red-black tree properties are restored. This implementation does nothing.
+     * @param node the lowest node whose subtree changed; every node whose
+     *      subtree changed lies on the path from node up to the root
+     */
+    protected void afterUnlink(Node<T> node) {
+    }
+
+    /**
+     * Called after rotate has moved child into the position of parent. This
+     * implementation does nothing.
+     * @param child the node that was rotated up, now the parent of parent
+     * @param parent the node that was rotated down
+     */
+    protected void afterRotate(Node<T> child, Node<T> parent) {
+    }
+
+    /**
+     * Called by the bulk builders for every node after both of its subtrees
+     * have been linked, and by the set operations for every node whose
+     * subtree they changed, children before parents. This implementation
+     * does nothing.
+     * @param node the root of the subtree that was just linked
+     */
+    protected void afterBuild(Node<T> node) {
     }
 
         /**
@@ -133,27 +336,30 @@ public class RedBlackTree<T extends Comparable<T>> {
          * preserved.
          *
          * @param newNode inputNode
+         * @return the number of iterations of the recolouring loop
          */
-        protected void enforceRBTreePropertiesAfterInsert(Node<T> newNode) {
+        protected int enforceRBTreePropertiesAfterInsert(Node<T> newNode) {
         if (newNode == root) {
             root.blackHeight = 1;
-            return;
+            return 0;
         }
         // if newNode 's parent is root just return
         if (newNode.parent == root) {
             root.blackHeight = 1;
-            return;
+            return 0;
         }
         boolean testDirection;
+        int iterations = 0;
 
         Node<T> grandParent;
         Node<T> uncle;
 
         while (newNode.parent.blackHeight == 0) {
+            iterations++;
 
             if (newNode.parent == root) {
                 newNode.parent.blackHeight = 1;
-                return;
+                return iterations;
             }
 
             testDirection = newNode.parent.isLeftChild();
@@ -169,6 +375,7 @@ public class RedBlackTree<T extends Comparable<T>> {
                     newNode.parent.blackHeight = 1;
                     uncle.blackHeight = 1;
                     newNode = grandParent;
+                    if (metrics != null) metrics.recolourings.increment();
                 }
 
                 else {
@@ -196,6 +403,7 @@ public class RedBlackTree<T extends Comparable<T>> {
                     newNode.parent.blackHeight = 1;
                     uncle.blackHeight = 1;
                     newNode = grandParent;
+                    if (metrics != null) metrics.recolourings.increment();
                 }
 
                 else {
@@ -214,7 +422,7 @@ public class RedBlackTree<T extends Comparable<T>> {
 
             if (newNode == root) {
                 root.blackHeight = 1;
-                return;
+                return iterations;
             }
             // if (newNode.parent.blackHeight == 0) {
             // enforceRBTreePropertiesAfterInsert(newNode);
@@ -222,7 +430,7 @@ public class RedBlackTree<T extends Comparable<T>> {
         }
         // make sure root is always black
         root.blackHeight = 1;
-
+        return iterations;
     }
 
 
@@ -253,7 +461,7 @@ public class RedBlackTree<T extends Comparable<T>> {
                 test = true;
             }
             if (child.isLeftChild()) {
-                // left rotation
+                // right rotation
                 Node<T> tempNode = child.rightChild;
                 child.rightChild = parent;
                 parent.leftChild = tempNode;
@@ -269,9 +477,11 @@ public class RedBlackTree<T extends Comparable<T>> {
                 if (parent.leftChild != null) {
                     parent.leftChild.parent = parent;
                 }
+                if (metrics != null) metrics.rightRotations.increment();
+                afterRotate(child, parent);
                 return;
             } else if (!child.isLeftChild()) {
-                // right rotation
+                // left rotation
                 Node<T> tempNode = child.leftChild;
                 child.parent = parent.parent;
                 child.leftChild = parent;
@@ -286,6 +496,8 @@ public class RedBlackTree<T extends Comparable<T>> {
                 parent.parent = child;
                 if (parent.rightChild != null)
                     parent.rightChild.parent = parent;
+                if (metrics != null) metrics.leftRotations.increment();
+                afterRotate(child, parent);
             }
             return;
         }
@@ -293,230 +505,2066 @@ public class RedBlackTree<T extends Comparable<T>> {
 
 
     /**
-     * Get the size of the tree (its number of nodes).
-     * @return the number of nodes in the tree
+     * Removes the value *data* from this tree and restores the red-black tree
+     * properties. The removed node is unlinked from the tree rather than
+     * having its data overwritten by its successor, so nodes keep holding the
+     * value they were created for.
+     * @param data the data value to remove
+     * @return true if the value was removed, false if it was not in the tree
+     * @throws NullPointerException when the provided data argument is null
      */
-    public int size() {
-        return size;
+    public boolean remove(T data) throws NullPointerException {
+        Node<T> node = findNode(data);
+        if (node == null) return false;
+        removeNode(node);
+        return true;
     }
 
     /**
-     * Method to check if the tree is empty (does not contain any node).
-     * @return true of this.size() return 0, false if this.size() > 0
+     * Removes the smallest value from this tree.
+     * @return the smallest value, or null if the tree is empty
      */
-    public boolean isEmpty() {
-        return this.size() == 0;
+    public T pollFirst() {
+        if (root == null) return null;
+        Node<T> node = root;
+        while (node.leftChild != null) node = node.leftChild;
+        T data = node.data;
+        removeNode(node);
+        return data;
     }
 
     /**
-     * Checks whether the tree contains the value *data*.
-     * @param data the data value to test for
-     * @return true if *data* is in the tree, false if it is not in the tree
+     * Removes the largest value from this tree.
+     * @return the largest value, or null if the tree is empty
      */
-    public boolean contains(T data) {
-        // null references will not be stored within this tree
-        if(data == null) throw new NullPointerException(
-                "This RedBlackTree cannot store null references.");
-        return this.containsHelper(data, root);
+    public T pollLast() {
+        if (root == null) return null;
+        Node<T> node = root;
+        while (node.rightChild != null) node = node.rightChild;
+        T data = node.data;
+        removeNode(node);
+        return data;
     }
 
     /**
-     * Recursive helper method that recurses through the tree and looks
-     * for the value *data*.
-     * @param data the data value to look for
-     * @param subtree the subtree to search through
-     * @return true of the value is in the subtree, false if not
+     * Unlinks the provided node from this tree. A node with two children is
+     * replaced by its in-order successor, which is moved into its position and
+     * takes over its colour. When a black node leaves its position, the
+     * missing black is then pushed up or resolved by
+     * enforceRBTreePropertiesAfterRemove.
+     * @param node is a node of this tree that is to be removed
      */
-    private boolean containsHelper(T data, Node<T> subtree) {
-        if (subtree == null) {
-            // we are at a null child, value is not in tree
-            return false;
+    protected void removeNode(Node<T> node) {
+        Node<T> child; // node that moves into the position that lost a node, may be null
+        Node<T> childParent; // parent of that position after the unlink
+        int removedColor = node.blackHeight;
+        if (metrics != null) metrics.removes.increment();
+        if (node.leftChild == null) {
+            child = node.rightChild;
+            childParent = node.parent;
+            replaceInParent(node, child);
+        } else if (node.rightChild == null) {
+            child = node.leftChild;
+            childParent = node.parent;
+            replaceInParent(node, child);
         } else {
-            int compare = data.compareTo(subtree.data);
-            if (compare < 0) {
-                // go left in the tree
-                return containsHelper(data, subtree.leftChild);
-            } else if (compare > 0) {
-                // go right in the tree
-                return containsHelper(data, subtree.rightChild);
+            Node<T> successor = node.rightChild;
+            while (successor.leftChild != null) successor = successor.leftChild;
+            removedColor = successor.blackHeight;
+            child = successor.rightChild;
+            if (successor.parent == node) {
+                childParent = successor;
             } else {
-                // we found it :)
-                return true;
+                childParent = successor.parent;
+                replaceInParent(successor, child);
+                successor.rightChild = node.rightChild;
+                successor.rightChild.parent = successor;
             }
+            replaceInParent(node, successor);
+            successor.leftChild = node.leftChild;
+            successor.leftChild.parent = successor;
+            successor.blackHeight = node.blackHeight;
         }
+        node.parent = null;
+        node.leftChild = null;
+        node.rightChild = null;
+        size--;
+        modCount++;
+        if (childParent != null) afterUnlink(childParent);
+        if (removedColor == 1) enforceRBTreePropertiesAfterRemove(child, childParent);
     }
 
+    /**
+     * Puts replacement into the position of node within node's parent (or at
+     * the root), without touching node's own references.
+     * @param node is the node whose position is taken over
+     * @param replacement is the node taking over that position, may be null
+     */
+    private void replaceInParent(Node<T> node, Node<T> replacement) {
+        if (node.parent == null) root = replacement;
+        else if (node.isLeftChild()) node.parent.leftChild = replacement;
+        else node.parent.rightChild = replacement;
+        if (replacement != null) replacement.parent = node.parent;
+    }
 
     /**
-     * This method performs an inorder traversal of the tree. The string
-     * representations of each data value within this tree are assembled into a
-     * comma separated string within brackets (similar to many implementations
-     * of java.util.Collection, like java.util.ArrayList, LinkedList, etc).
-     * Note that this RedBlackTree class implementation of toString generates an
-     * inorder traversal. The toString of the Node class class above
-     * produces a level order traversal of the nodes / values of the tree.
-     * @return string containing the ordered values of this tree (in-order traversal)
+     * Resolve the missing black on the path through the provided position
+     * that is introduced by removing a black node from a red-black tree. While
+     * doing so, all other red-black tree properties must also be preserved.
+     * The position is described by its parent because it may be empty.
+     *
+     * @param node is the node in the position short of one black, may be null
+     * @param parent is the parent of that position, null when it is the root
      */
-    public String toInOrderString() {
-        // generate a string of all values of the tree in (ordered) in-order
-        // traversal sequence
-        StringBuffer sb = new StringBuffer();
-        sb.append("[ ");
-        sb.append(toInOrderStringHelper("", this.root));
-        if (this.root != null) {
-            sb.setLength(sb.length() - 2);
+    protected void enforceRBTreePropertiesAfterRemove(Node<T> node, Node<T> parent) {
+        Node<T> sibling;
+        while (node != root && isBlack(node)) {
+            if (node == parent.leftChild) {
+                sibling = parent.rightChild;
+                if (sibling.blackHeight == 0) {
+                    // red sibling: rotate it above parent to get a black sibling
+                    sibling.blackHeight = 1;
+                    parent.blackHeight = 0;
+                    rotate(sibling, parent);
+                    sibling = parent.rightChild;
+                }
+                if (isBlack(sibling.leftChild) && isBlack(sibling.rightChild)) {
+                    // push the missing black up to parent
+                    sibling.blackHeight = 0;
+                    node = parent;
+                    parent = node.parent;
+                } else {
+                    if (isBlack(sibling.rightChild)) {
+                        sibling.leftChild.blackHeight = 1;
+                        sibling.blackHeight = 0;
+                        rotate(sibling.leftChild, sibling);
+                        sibling = parent.rightChild;
+                    }
+                    sibling.blackHeight = parent.blackHeight;
+                    parent.blackHeight = 1;
+                    sibling.rightChild.blackHeight = 1;
+                    rotate(sibling, parent);
+                    node = root;
+                }
+            }
+            else {
+                sibling = parent.leftChild;
+                if (sibling.blackHeight == 0) {
+                    sibling.blackHeight = 1;
+                    parent.blackHeight = 0;
+                    rotate(sibling, parent);
+                    sibling = parent.leftChild;
+                }
+                if (isBlack(sibling.leftChild) && isBlack(sibling.rightChild)) {
+                    sibling.blackHeight = 0;
+                    node = parent;
+                    parent = node.parent;
+                } else {
+                    if (isBlack(sibling.leftChild)) {
+                        sibling.rightChild.blackHeight = 1;
+                        sibling.blackHeight = 0;
+                        rotate(sibling.rightChild, sibling);
+                        sibling = parent.leftChild;
+                    }
+                    sibling.blackHeight = parent.blackHeight;
+                    parent.blackHeight = 1;
+                    sibling.leftChild.blackHeight = 1;
+                    rotate(sibling, parent);
+                    node = root;
+                }
+            }
         }
-        sb.append(" ]");
-        return sb.toString();
+        // a red node in the position absorbs the missing black
+        if (node != null) node.blackHeight = 1;
     }
 
-    private String toInOrderStringHelper(String str, Node<T> node){
-        if (node == null) {
-            return str;
-        }
-        str = toInOrderStringHelper(str, node.leftChild);
-        str += (node.data.toString() + ", ");
-        str = toInOrderStringHelper(str, node.rightChild);
-        return str;
+    /**
+     * @param node a node of this tree, or null for an empty child position
+     * @return true when node is black, null children count as black
+     */
+    private static boolean isBlack(Node<?> node) {
+        return node == null || node.blackHeight == 1;
     }
 
+
     /**
-     * This method performs a level order traversal of the tree rooted
-     * at the current node. The string representations of each data value
-     * within this tree are assembled into a comma separated string within
-     * brackets (similar to many implementations of java.util.Collection).
-     * Note that the Node's implementation of toString generates a level
-     * order traversal. The toString of the RedBlackTree class below
-     * produces an inorder traversal of the nodes / values of the tree.
-     * This method will be helpful as a helper for the debugging and testing
-     * of your rotation implementation.
-     * @return string containing the values of this tree in level order
+     * Builds a tree holding the provided values, which must be in strictly
+     * ascending order. The tree is linked directly into a balanced shape in
+     * O(n) time: every level is complete except possibly the deepest one,
+     * whose nodes are coloured red, so no insert fix-up or rotation is needed.
+     * @param sorted the values in strictly ascending order
+     * @return a new tree holding the values
+     * @throws NullPointerException when one of the values is null
+     * @throws IllegalArgumentException when the values are not strictly ascending
      */
-    public String toLevelOrderString() {
-        String output = "[ ";
-        if (this.root != null) {
-            LinkedList<Node<T>> q = new LinkedList<>();
-            q.add(this.root);
-            while(!q.isEmpty()) {
-                Node<T> next = q.removeFirst();
-                if(next.leftChild != null) q.add(next.leftChild);
-                if(next.rightChild != null) q.add(next.rightChild);
-                output += next.data.toString();
-                if(!q.isEmpty()) output += ", ";
-            }
-        }
-        return output + " ]";
+    public static <T extends Comparable<T>> RedBlackTree<T> fromSorted(T[] sorted) {
+        return fromSorted(Arrays.asList(sorted).iterator(), sorted.length);
     }
 
-    public String toString() {
-        return "level order: " + this.toLevelOrderString() +
-                "\nin order: " + this.toInOrderString();
+    /**
+     * Builds a tree holding the first size values of the iterator, which must
+     * be in strictly ascending order, in O(n) time, see fromSorted(T[]).
+     * @param sorted yields the values in strictly ascending order
+     * @param size the number of values to take from the iterator
+     * @return a new tree holding the values
+     * @throws NullPointerException when one of the values is null
+     * @throws IllegalArgumentException when the values are not strictly ascending
+     * @throws NoSuchElementException when the iterator yields fewer values
+     */
+    public static <T extends Comparable<T>> RedBlackTree<T> fromSorted(Iterator<? extends T> sorted, int size) {
+        RedBlackTree<T> tree = new RedBlackTree<>();
+        tree.buildFromSorted(sorted, size);
+        return tree;
     }
 
+    /**
+     * Replaces the contents of this tree with the first size values of the
+     * iterator, see fromSorted(T[]). The tree is left unchanged when the
+     * values turn out not to be strictly ascending.
+     * @param sorted yields the values in strictly ascending order
+     * @param size the number of values to take from the iterator
+     */
+    protected void buildFromSorted(Iterator<? extends T> sorted, int size) {
+        linkSorted(new Iterator<Node<T>>() {
+            private T previous;
 
-    // Implement at least 3 boolean test methods by using the method signatures below,
-    // removing the comments around them and addind your testing code to them. You can
-    // use your notes from lecture for ideas on concrete examples of rotation to test for.
-    // Make sure to include rotations within and at the root of a tree in your test cases.
-    // If you are adding additional tests, then name the method similar to the ones given below.
-    // Eg: public static boolean test4() {}
-    // Do not change the method name or return type of the existing tests.
-    // You can run your tests by commenting in the calls to the test methods
+            @Override
+            public boolean hasNext() {
+                return sorted.hasNext();
+            }
 
-//
-//    public static boolean test1() {
-//        try {
-//            RedBlackTree<String> testTree = new RedBlackTree<String>();
-//            Node<String> node4 = new Node<String>("4");//4
-//            Node<String> node5 = new Node<String>("5");//5
-//            Node<String> node6 = new Node<String>("6");//6
-//            Node<String> node3 = new Node<String>("3");//3
-//            Node<String> node2 = new Node<String>("2");//2
-//            Node<String> node1 = new Node<String>("1");//1
-//            Node<String> node7 = new Node<String>("7");//7
-//            testTree.size = 7;
-//            testTree.root = node4;
-//            node4.leftChild = node5;
-//            node4.rightChild = node6;
-//            node5.parent = node4;
-//            node5.leftChild = node3;
-//            node5.rightChild = node2;
-//            node6.parent = node4;
-//            node6.leftChild = node1;
-//            node6.rightChild = node7;
-//            node3.parent = node5;
-//            node2.parent = node5;
-//            node1.parent = node6;
-//            node7.parent = node6;
-//            //System.out.println(testTree.toLevelOrderString());
-//            testTree.rotate(node2, node5);
-//            if (!testTree.toLevelOrderString().equals("[ 4, 2, 6, 5, 1, 7, 3 ]")) {
-//                return false;
-//            }
-//            if (!testTree.toInOrderString().equals("[ 3, 5, 2, 4, 1, 6, 7 ]")) {
-//                return false;
-//            }
-//        } catch (Exception e) {
-//            e.printStackTrace();
-//            return false;
-//        }
-//        return true;
-//
-//    }
-//
-//
-//
-//    public static boolean test2() {
-//        try {
-//            RedBlackTree<String> testTree = new RedBlackTree<String>();
-//            testTree.insert("3");
-//            testTree.insert("2");
-//            testTree.insert("1");
-////            System.out.println(testTree.toString());
-//            if (!testTree.toInOrderString().equals("[ 1, 2, 3 ]")) {
-//                return false;
-//            }
-//        } catch (Exception e) {
-//            e.printStackTrace();
-//            return false;
-//        }
-//        return true;
-//    }
-//
-//
-//
-//    public static boolean test3() {
-//        try {
-//            RedBlackTree<String> tree = new RedBlackTree<String>();
-//            tree.insert("29");
-//            tree.insert("19");
-//            tree.insert("99");
-//            tree.insert("69");
-//            tree.insert("39");
-////            System.out.println(tree.toString());
-//
-//            if (!tree.toInOrderString().equals("[ 19, 29, 39, 69, 99 ]")) {
-//                return false;
-//            }
-//        } catch (Exception e) {
-//            e.printStackTrace();
-//            return false;
-//        }
-//        return true;
-//    }
-    protected RedBlackTree<String> tree = null;
-    @BeforeEach
-    public void createInstane() {
-        RedBlackTree<String> tree = new RedBlackTree<String>();
+            @Override
+            public Node<T> next() {
+                T data = sorted.next();
+                if(data == null) throw new NullPointerException(
+                        "This RedBlackTree cannot store null references.");
+                if (previous != null && compare(previous, data) >= 0) throw new IllegalArgumentException(
+                        "The values are not in strictly ascending order: " + previous + ", " + data);
+                previous = data;
+                Node<T> node = newNode(data);
+                if (sorted instanceof KeyReader && ((KeyReader<?>) sorted).count != 1)
+                    setCount(node, ((KeyReader<?>) sorted).count);
+                return node;
+            }
+        }, size);
     }
 
+    /**
+     * Adds all the provided values to this tree. The values are split into
+     * their strictly ascending runs, and every run is either inserted value
+     * by value or, when that is cheaper, merged with the whole tree: the
+     * existing nodes and new nodes for the run are combined in one linear
+     * pass and relinked by linkSorted. Sorted input of any size thereby costs
+     * O(n + m) instead of O(m log(n + m)).
+     * @param values the values to add, none of which may be null
+     * @return true if this tree changed
+     * @throws NullPointerException when one of the values is null
+     */
+    @SuppressWarnings("unchecked")
+    public boolean addAll(Collection<? extends T> values) {
+        int oldSize = size;
+        T[] array = (T[]) values.toArray();
+        for (T value : array) if(value == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        int start = 0;
+        while (start < array.length) {
+            int end = start + 1;
+            while (end < array.length && compare(array[end - 1], array[end]) < 0) end++;
+            addSortedRun(array, start, end);
+            start = end;
+        }
+        return size != oldSize;
+    }
 
-    @Test
-    public void test4() {
-
-            Node<String> node7 = new Node<String>("7");
-            Node<String> node14 = new Node<String>("14");
-            Node<String> node18 = new Node<String>("18");
+    /**
+     * Adds the strictly ascending values run[from] to run[to - 1].
+     */
+    private void addSortedRun(T[] run, int from, int to) {
+        int length = to - from;
+        // inserting costs about log2 of the resulting size per value, merging one step per node
+        long insertCost = (long) length * (32 - Integer.numberOfLeadingZeros(size + length));
+        if (insertCost <= (long) size + length) {
+            for (int i = from; i < to; i++) insertNode(run[i]);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Node<T>[] merged = (Node<T>[]) new Node[size + length];
+        int count = 0;
+        int i = from;
+        Node<T> next = firstNode();
+        while (next != null || i < to) {
+            int compare = next == null ? 1 : i == to ? -1 : -compare(run[i], keyOf(run[i]), next);
+            if (compare <= 0) {
+                merged[count++] = next;
+                next = successor(next);
+                if (compare == 0) i++; // keep the node already holding the value
+            } else {
+                merged[count++] = newNode(run[i++]);
+            }
+        }
+        linkSorted(Arrays.asList(merged).subList(0, count).iterator(), count);
+    }
+
+    /**
+     * Replaces the contents of this tree by linking the provided nodes, in
+     * the order given, into a balanced tree. Only the nodes at the deepest
+     * level are red, and only when that level is not complete.
+     * @param nodes yields count nodes whose data is strictly ascending; their
+     *      links and colours are overwritten
+     * @param count the number of nodes
+     */
+    private void linkSorted(Iterator<Node<T>> nodes, int count) {
+        int redLevel = 31 - Integer.numberOfLeadingZeros(count + 1);
+        Node<T> newRoot = count == 0 ? null : linkSorted(nodes, 0, 0, count - 1, redLevel);
+        if (newRoot != null) newRoot.parent = null;
+        root = newRoot;
+        size = count;
+        modCount++;
+    }
+
+    /**
+     * Recursive helper method that links the nodes with positions lo to hi
+     * into a subtree whose root sits at the provided level.
+     * @return the root of the subtree
+     */
+    private Node<T> linkSorted(Iterator<Node<T>> nodes, int level, int lo, int hi, int redLevel) {
+        int mid = (lo + hi) >>> 1;
+        Node<T> left = lo < mid ? linkSorted(nodes, level + 1, lo, mid - 1, redLevel) : null;
+        Node<T> node = nodes.next();
+        node.leftChild = left;
+        if (left != null) left.parent = node;
+        node.rightChild = mid < hi ? linkSorted(nodes, level + 1, mid + 1, hi, redLevel) : null;
+        if (node.rightChild != null) node.rightChild.parent = node;
+        node.blackHeight = level == redLevel ? 0 : 1;
+        afterBuild(node);
+        return node;
+    }
+
+    /**
+     * Adds all values of other to this tree and leaves other empty. Where
+     * both trees hold equal values, the value and node of this tree are
+     * kept. The trees are combined by splitting and joining subtrees, in
+     * O(m log(n/m + 1)) time for trees of m and n >= m values, instead of
+     * the O(m log n) of inserting the values of one tree into the other
+     * with its fix-ups and allocations.
+     * @param other a tree of the same class and ordering as this one
+     * @throws IllegalArgumentException when other is ordered differently
+     */
+    public void union(RedBlackTree<T> other) {
+        union(other, 0);
+    }
+
+    /**
+     * Does what union does, with the recursive unions of the left and right
+     * subtrees running as parallel tasks of the common fork/join pool, down
+     * to about 4 tasks per worker. Neither tree may be used by other threads
+     * until this method returns.
+     * @param other a tree of the same class and ordering as this one
+     * @throws IllegalArgumentException when other is ordered differently
+     */
+    public void parallelUnion(RedBlackTree<T> other) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        union(other, 32 - Integer.numberOfLeadingZeros(4 * parallelism - 1));
+    }
+
+    private void union(RedBlackTree<T> other, int splitDepth) {
+        checkSameOrdering(other);
+        if (other == this) return;
+        Part<T> result = new Part<>();
+        int matches = splitDepth == 0
+                ? union(root, blackHeightOf(root), other.root, blackHeightOf(other.root), result, 0)
+                : ForkJoinPool.commonPool().invoke(new UnionTask(root, blackHeightOf(root),
+                        other.root, blackHeightOf(other.root), result, splitDepth));
+        replaceBy(result, size + other.size - matches);
+        other.replaceBy(new Part<>(), 0);
+    }
+
+    /**
+     * Removes the values of this tree that are not in other, and leaves
+     * other empty. The nodes of this tree are kept. This takes
+     * O(m log(n/m + 1)) time, as union does.
+     * @param other a tree of the same class and ordering as this one
+     * @throws IllegalArgumentException when other is ordered differently
+     */
+    public void intersection(RedBlackTree<T> other) {
+        checkSameOrdering(other);
+        if (other == this) return;
+        Part<T> result = new Part<>();
+        int matches = intersection(root, blackHeightOf(root), other.root, blackHeightOf(other.root), result);
+        replaceBy(result, matches);
+        other.replaceBy(new Part<>(), 0);
+    }
+
+    /**
+     * Removes the values of other from this tree, and leaves other empty.
+     * This takes O(m log(n/m + 1)) time, as union does.
+     * @param other a tree of the same class and ordering as this one
+     * @throws IllegalArgumentException when other is ordered differently
+     */
+    public void difference(RedBlackTree<T> other) {
+        checkSameOrdering(other);
+        if (other == this) {
+            replaceBy(new Part<>(), 0);
+            return;
+        }
+        Part<T> result = new Part<>();
+        int removed = difference(root, blackHeightOf(root), other.root, blackHeightOf(other.root), result);
+        replaceBy(result, size - removed);
+        other.replaceBy(new Part<>(), 0);
+    }
+
+    /**
+     * Moves the values greater than or equal to *data* out of this tree,
+     * which keeps the values less than *data*. Splitting the nodes takes
+     * O(log n) time; counting the values of the two parts, which this tree
+     * does not store per subtree, takes as many steps as the smaller part
+     * has values.
+     * @param data the value to split at
+     * @return a new tree, of the same class and ordering as this one,
+     *      holding the values greater than or equal to *data*
+     * @throws NullPointerException when the provided data argument is null
+     */
+    public RedBlackTree<T> split(T data) throws NullPointerException {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        Part<T> left = new Part<>();
+        Part<T> right = new Part<>();
+        Node<T> found = split(root, blackHeightOf(root), data, keyOf(data), left, right);
+        if (found != null) join(null, 0, found, right.root, right.height, right);
+        // count both parts in step until the smaller one runs out
+        Node<T> l = leftmost(left.root);
+        Node<T> r = leftmost(right.root);
+        int count = 0;
+        while (l != null && r != null) {
+            l = successor(l);
+            r = successor(r);
+            count++;
+        }
+        int leftSize = l == null ? count : size - count;
+        RedBlackTree<T> tail = newEmptyTree();
+        tail.replaceBy(right, size - leftSize);
+        replaceBy(left, leftSize);
+        return tail;
+    }
+
+    /**
+     * Appends *data* and all values of right to this tree, and leaves right
+     * empty, in O(log n) time. Every value of this tree must be less than
+     * *data*, and every value of right greater.
+     * @param data the value to put between the two trees
+     * @param right a tree of the same class and ordering as this one
+     * @throws NullPointerException when the provided data argument is null
+     * @throws IllegalArgumentException when right is ordered differently, or
+     *      the values are not in that order
+     */
+    public void join(T data, RedBlackTree<T> right) throws NullPointerException, IllegalArgumentException {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        checkSameOrdering(right);
+        if ((root != null && compare(data, keyOf(data), lastNode()) <= 0)
+                || (right.root != null && compare(data, keyOf(data), right.firstNode()) >= 0)
+                || right == this)
+            throw new IllegalArgumentException("The values of this tree must be less than " + data
+                    + ", and those of the right tree greater.");
+        Part<T> result = new Part<>();
+        join(root, blackHeightOf(root), newNode(data), right.root, blackHeightOf(right.root), result);
+        replaceBy(result, size + 1 + right.size);
+        right.replaceBy(new Part<>(), 0);
+    }
+
+    /**
+     * Creates the empty tree that split moves values into. Subclasses whose
+     * nodes are of another class override this to return an instance of
+     * their own class.
+     * @return a new, empty tree with the ordering of this one
+     */
+    protected RedBlackTree<T> newEmptyTree() {
+        RedBlackTree<T> tree = new RedBlackTree<>();
+        tree.comparator = comparator;
+        tree.keyExtractor = keyExtractor;
+        return tree;
+    }
+
+    /**
+     * @throws IllegalArgumentException unless other is of the same class as
+     *      this tree and ordered the same way, as far as can be told: trees
+     *      ordered by a long key are assumed to use the same key
+     */
+    private void checkSameOrdering(RedBlackTree<T> other) throws IllegalArgumentException {
+        if (other.getClass() != getClass() || (other.keyExtractor == null) != (keyExtractor == null)
+                || (keyExtractor == null && !Objects.equals(other.comparator, comparator)))
+            throw new IllegalArgumentException("The trees must be of the same class and ordering.");
+    }
+
+    /**
+     * Makes the provided subtree the contents of this tree.
+     */
+    private void replaceBy(Part<T> part, int count) {
+        root = part.root;
+        size = count;
+        modCount++;
+    }
+
+    /**
+     * A subtree that is not linked to a parent, with its black height: the
+     * number of black nodes on every path from its root to a null child. The
+     * colour field of the nodes only tells red from black, so the set
+     * operations pass black heights down along with the subtrees.
+     */
+    private static final class Part<T> {
+        Node<T> root;
+        int height;
+
+        Part() { }
+
+        Part(Node<T> root, int height) {
+            this.root = root;
+            this.height = height;
+        }
+    }
+
+    /**
+     * @return the black height of the subtree rooted at node, see Part
+     */
+    private static <T> int blackHeightOf(Node<T> node) {
+        int height = 0;
+        for (; node != null; node = node.leftChild) height += node.blackHeight;
+        return height;
+    }
+
+    /**
+     * @return the first node of the subtree rooted at node, or null
+     */
+    private static <T> Node<T> leftmost(Node<T> node) {
+        if (node != null) while (node.leftChild != null) node = node.leftChild;
+        return node;
+    }
+
+    /**
+     * Unlinks node from its parent.
+     * @return node
+     */
+    private static <T> Node<T> detach(Node<T> node) {
+        if (node != null) node.parent = null;
+        return node;
+    }
+
+    /**
+     * Links left, node and right into one subtree, stored in out. Every value
+     * in left must be less than the value of node, and every value in right
+     * greater. The roots of left and right are first coloured black. When
+     * their black heights differ, node is linked, red, into the spine of the
+     * higher one, at the black node whose black height is that of the lower
+     * one, which then becomes a child of node. The red-red violation this
+     * may cause is then resolved upwards as after an insert. This takes
+     * O(|hl - hr| + 1) time.
+     * @param hl the black height of left
+     * @param hr the black height of right
+     */
+    private void join(Node<T> left, int hl, Node<T> node, Node<T> right, int hr, Part<T> out) {
+        if (left != null && left.blackHeight == 0) { left.blackHeight = 1; hl++; }
+        if (right != null && right.blackHeight == 0) { right.blackHeight = 1; hr++; }
+        node.parent = null;
+        if (hl == hr) {
+            link(node, left, right);
+            node.blackHeight = 1;
+            afterBuild(node);
+            out.root = node;
+            out.height = hl + 1;
+            return;
+        }
+        boolean tallLeft = hl > hr;
+        Node<T> spine = tallLeft ? left : right;
+        int low = tallLeft ? hr : hl;
+        int height = tallLeft ? hl : hr;
+        // descend along the inner spine of the taller tree to a black node of black height low
+        Node<T> above = null;
+        Node<T> below = spine;
+        while (below != null && (height != low || below.blackHeight == 0)) {
+            height -= below.blackHeight;
+            above = below;
+            below = tallLeft ? below.rightChild : below.leftChild;
+        }
+        if (tallLeft) {
+            link(node, below, right);
+            above.rightChild = node;
+        } else {
+            link(node, left, below);
+            above.leftChild = node;
+        }
+        node.parent = above;
+        node.blackHeight = 0;
+        afterBuild(node);
+        for (Node<T> ancestor = above; ancestor != null; ancestor = ancestor.parent) afterBuild(ancestor);
+        Node<T> top = fixAfterJoin(node);
+        out.root = top;
+        out.height = tallLeft ? hl : hr;
+        if (top.blackHeight == 0) {
+            top.blackHeight = 1;
+            out.height++;
+        }
+    }
+
+    /**
+     * Makes left and right the children of node.
+     */
+    private static <T> void link(Node<T> node, Node<T> left, Node<T> right) {
+        node.leftChild = left;
+        node.rightChild = right;
+        if (left != null) left.parent = node;
+        if (right != null) right.parent = node;
+    }
+
+    /**
+     * Resolves a red node with a red parent, as enforceRBTreePropertiesAfterInsert
+     * does, within a subtree that is not linked to this tree's root.
+     * @param node a red node whose children are black
+     * @return the root of the subtree, which may be red
+     */
+    private Node<T> fixAfterJoin(Node<T> node) {
+        while (node.parent != null && node.parent.blackHeight == 0) {
+            Node<T> parent = node.parent;
+            Node<T> grandParent = parent.parent; // not null, the root of the subtree is black
+            Node<T> uncle = parent == grandParent.leftChild ? grandParent.rightChild : grandParent.leftChild;
+            if (uncle != null && uncle.blackHeight == 0) {
+                parent.blackHeight = 1;
+                uncle.blackHeight = 1;
+                grandParent.blackHeight = 0;
+                node = grandParent;
+                continue;
+            }
+            if ((parent == grandParent.leftChild) != (node == parent.leftChild)) {
+                rotateUp(node);
+                parent = node;
+            }
+            rotateUp(parent);
+            parent.blackHeight = 1;
+            grandParent.blackHeight = 0;
+            node = parent;
+            break;
+        }
+        while (node.parent != null) node = node.parent;
+        return node;
+    }
+
+    /**
+     * Rotates node into the position of its parent, which may be the root
+     * of a detached subtree, as rotate does within this tree.
+     */
+    private void rotateUp(Node<T> node) {
+        Node<T> parent = node.parent;
+        Node<T> grandParent = parent.parent;
+        if (node == parent.leftChild) {
+            parent.leftChild = node.rightChild;
+            if (node.rightChild != null) node.rightChild.parent = parent;
+            node.rightChild = parent;
+        } else {
+            parent.rightChild = node.leftChild;
+            if (node.leftChild != null) node.leftChild.parent = parent;
+            node.leftChild = parent;
+        }
+        parent.parent = node;
+        node.parent = grandParent;
+        if (grandParent != null) {
+            if (grandParent.leftChild == parent) grandParent.leftChild = node;
+            else grandParent.rightChild = node;
+        }
+        afterRotate(node, parent);
+    }
+
+    /**
+     * Splits the subtree rooted at node into the values less than *data*,
+     * stored in left, and those greater, stored in right.
+     * @param height the black height of the subtree
+     * @param key keyOf(data)
+     * @return the node holding a value equal to *data*, unlinked, or null
+     */
+    private Node<T> split(Node<T> node, int height, T data, long key, Part<T> left, Part<T> right) {
+        if (node == null) {
+            left.root = right.root = null;
+            left.height = right.height = 0;
+            return null;
+        }
+        int childHeight = height - node.blackHeight;
+        Node<T> smaller = detach(node.leftChild);
+        Node<T> larger = detach(node.rightChild);
+        int compare = compare(data, key, node);
+        if (compare == 0) {
+            left.root = smaller;
+            left.height = childHeight;
+            right.root = larger;
+            right.height = childHeight;
+            node.leftChild = node.rightChild = null;
+            return node;
+        }
+        Node<T> found;
+        if (compare < 0) {
+            found = split(smaller, childHeight, data, key, left, right);
+            join(right.root, right.height, node, larger, childHeight, right);
+        } else {
+            found = split(larger, childHeight, data, key, left, right);
+            join(smaller, childHeight, node, left.root, left.height, left);
+        }
+        return found;
+    }
+
+    /**
+     * Joins left and right, where every value of left is less than every
+     * value of right, by moving the last node of left between them.
+     */
+    private void join(Part<T> left, Part<T> right, Part<T> out) {
+        if (left.root == null) {
+            out.root = right.root;
+            out.height = right.height;
+            return;
+        }
+        Part<T> rest = new Part<>();
+        Node<T> last = splitLast(left.root, left.height, rest);
+        join(rest.root, rest.height, last, right.root, right.height, out);
+    }
+
+    /**
+     * Unlinks the last node of the subtree rooted at node, and stores the
+     * remaining nodes in rest.
+     * @return the last node
+     */
+    private Node<T> splitLast(Node<T> node, int height, Part<T> rest) {
+        int childHeight = height - node.blackHeight;
+        Node<T> smaller = detach(node.leftChild);
+        Node<T> larger = detach(node.rightChild);
+        if (larger == null) {
+            rest.root = smaller;
+            rest.height = childHeight;
+            node.leftChild = null;
+            return node;
+        }
+        Node<T> last = splitLast(larger, childHeight, rest);
+        join(smaller, childHeight, node, rest.root, rest.height, rest);
+        return last;
+    }
+
+    /**
+     * Stores the union of the subtrees rooted at a and b in out: the root of
+     * a splits b, and the unions of the parts on either side are joined by
+     * it. The recursive unions are forked until splitDepth levels are split.
+     * The result is the number of values that were in both subtrees.
+     */
+    private class UnionTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node<T> a;
+        private final int ha;
+        private final Node<T> b;
+        private final int hb;
+        private final Part<T> out;
+        private final int splitDepth;
+
+        UnionTask(Node<T> a, int ha, Node<T> b, int hb, Part<T> out, int splitDepth) {
+            this.a = a;
+            this.ha = ha;
+            this.b = b;
+            this.hb = hb;
+            this.out = out;
+            this.splitDepth = splitDepth;
+        }
+
+        @Override
+        protected Integer compute() {
+            return union(a, ha, b, hb, out, splitDepth);
+        }
+    }
+
+    private int union(Node<T> a, int ha, Node<T> b, int hb, Part<T> out, int splitDepth) {
+        if (a == null || b == null) {
+            out.root = a == null ? b : a;
+            out.height = a == null ? hb : ha;
+            return 0;
+        }
+        int childHeight = ha - a.blackHeight;
+        Node<T> smaller = detach(a.leftChild);
+        Node<T> larger = detach(a.rightChild);
+        Part<T> bLeft = new Part<>();
+        Part<T> bRight = new Part<>();
+        int matches = split(b, hb, a.data, keyOf(a.data), bLeft, bRight) == null ? 0 : 1;
+        // each part of b is read before the union on its side overwrites it
+        if (splitDepth > 0) {
+            UnionTask task = new UnionTask(larger, childHeight, bRight.root, bRight.height, bRight, splitDepth - 1);
+            task.fork();
+            matches += union(smaller, childHeight, bLeft.root, bLeft.height, bLeft, splitDepth - 1);
+            matches += task.join();
+        } else {
+            matches += union(smaller, childHeight, bLeft.root, bLeft.height, bLeft, 0);
+            matches += union(larger, childHeight, bRight.root, bRight.height, bRight, 0);
+        }
+        join(bLeft.root, bLeft.height, a, bRight.root, bRight.height, out);
+        return matches;
+    }
+
+    /**
+     * Stores the values of the subtree rooted at a that are also in the one
+     * rooted at b in out, keeping the nodes of a.
+     * @return the number of values stored
+     */
+    private int intersection(Node<T> a, int ha, Node<T> b, int hb, Part<T> out) {
+        if (a == null || b == null) {
+            out.root = null;
+            out.height = 0;
+            return 0;
+        }
+        int childHeight = ha - a.blackHeight;
+        Node<T> smaller = detach(a.leftChild);
+        Node<T> larger = detach(a.rightChild);
+        Part<T> bLeft = new Part<>();
+        Part<T> bRight = new Part<>();
+        boolean found = split(b, hb, a.data, keyOf(a.data), bLeft, bRight) != null;
+        int count = intersection(smaller, childHeight, bLeft.root, bLeft.height, bLeft)
+                + intersection(larger, childHeight, bRight.root, bRight.height, bRight);
+        if (!found) {
+            join(bLeft, bRight, out);
+            return count;
+        }
+        join(bLeft.root, bLeft.height, a, bRight.root, bRight.height, out);
+        return count + 1;
+    }
+
+    /**
+     * Stores the values of the subtree rooted at a that are not in the one
+     * rooted at b in out, keeping the nodes of a.
+     * @return the number of values of a left out
+     */
+    private int difference(Node<T> a, int ha, Node<T> b, int hb, Part<T> out) {
+        if (a == null || b == null) {
+            out.root = a;
+            out.height = ha;
+            return 0;
+        }
+        int childHeight = hb - b.blackHeight;
+        Node<T> smaller = detach(b.leftChild);
+        Node<T> larger = detach(b.rightChild);
+        Part<T> aLeft = new Part<>();
+        Part<T> aRight = new Part<>();
+        int removed = split(a, ha, b.data, keyOf(b.data), aLeft, aRight) == null ? 0 : 1;
+        removed += difference(aLeft.root, aLeft.height, smaller, childHeight, aLeft)
+                + difference(aRight.root, aRight.height, larger, childHeight, aRight);
+        join(aLeft, aRight, out);
+        return removed;
+    }
+
+    private static final int FILE_MAGIC = 0x31544252; // "RBT1" in little-endian byte order
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_CHECKSUM = 1; // flag: a CRC32C of the key bytes follows them
+    private static final int FILE_COUNTS = 2; // flag: every value is followed by its number of occurrences
+    private static final int FILE_HEADER_BYTES = 24;
+    private static final int FILE_BUFFER_BYTES = 1 << 22;
+
+    /**
+     * Saves the values of this tree to a file, from which load can rebuild
+     * the tree in O(n) time. The file starts with a 24 byte little-endian
+     * header: a magic number, the format version, flags, the number of values
+     * and the number of key bytes. The values follow in ascending order, as
+     * written by codec, and when checksum is set they are followed by the
+     * CRC32C of the key bytes. A tree that stores counts, see storesCounts,
+     * sets a flag and writes the number of occurrences after every value, as
+     * 4 bytes that are part of the key bytes. The keys are encoded into a large direct buffer
+     * that is written out through a FileChannel whenever it is full.
+     * @param path the file to write, replaced when it exists
+     * @param codec converts the values to bytes
+     * @param checksum whether to append a checksum that load verifies
+     * @throws IOException when the file cannot be written, or a single value
+     *      does not fit in the buffer
+     */
+    public void save(Path path, KeyCodec<? super T> codec, boolean checksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(FILE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C crc = checksum ? new CRC32C() : null;
+            boolean counts = storesCounts();
+            long keyBytes = 0;
+            channel.position(FILE_HEADER_BYTES);
+            for (Node<T> node = firstNode(); node != null; node = successor(node)) {
+                while (true) {
+                    int start = buffer.position();
+                    try {
+                        codec.encode(node.data, buffer);
+                        if (counts) buffer.putInt(countOf(node));
+                        break;
+                    } catch (BufferOverflowException full) {
+                        buffer.position(start);
+                        if (start == 0) throw new IOException(
+                                "The value " + node.data + " does not fit in " + FILE_BUFFER_BYTES + " bytes.");
+                        keyBytes += drain(channel, buffer, crc);
+                    }
+                }
+            }
+            keyBytes += drain(channel, buffer, crc);
+            if (crc != null) {
+                buffer.putInt((int) crc.getValue());
+                drain(channel, buffer, null);
+            }
+            buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION)
+                    .putInt((checksum ? FILE_CHECKSUM : 0) | (counts ? FILE_COUNTS : 0))
+                    .putInt(size).putLong(keyBytes);
+            buffer.flip();
+            for (long position = 0; buffer.hasRemaining(); ) position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Writes the content of buffer to the channel and clears the buffer.
+     * @return the number of bytes written
+     */
+    private static int drain(FileChannel channel, ByteBuffer buffer, CRC32C crc) throws IOException {
+        buffer.flip();
+        if (crc != null) crc.update(buffer.duplicate());
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+        return written;
+    }
+
+    /**
+     * Replaces the contents of this tree with the values in a file written by
+     * save. The keys are streamed through a large direct buffer into the
+     * sorted bulk build, so the tree is linked in O(n) time without a single
+     * insert fix-up. This tree is left unchanged when loading fails.
+     * @param path the file to read
+     * @param codec converts bytes to values, the inverse of the codec used to save
+     * @throws IOException when the file cannot be read, is not a file written
+     *      by save, is truncated or corrupt, fails its checksum, or holds
+     *      counts of occurrences that this tree cannot store
+     */
+    public void load(Path path, KeyCodec<? extends T> codec) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(FILE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(FILE_HEADER_BYTES);
+            readFully(channel, buffer);
+            buffer.flip();
+            if (buffer.getInt() != FILE_MAGIC) throw new IOException(path + " is not a RedBlackTree file.");
+            int version = buffer.getInt();
+            if (version != FILE_VERSION) throw new IOException("Unsupported RedBlackTree file version " + version);
+            int flags = buffer.getInt();
+            int count = buffer.getInt();
+            long keyBytes = buffer.getLong();
+            if ((flags & ~(FILE_CHECKSUM | FILE_COUNTS)) != 0 || count < 0 || keyBytes < 0)
+                throw new IOException("Corrupt RedBlackTree file header in " + path);
+            boolean counts = (flags & FILE_COUNTS) != 0;
+            if (counts && !storesCounts()) throw new IOException(
+                    path + " holds counts of occurrences, which this " + getClass().getName() + " cannot store.");
+            KeyReader<T> keys = new KeyReader<>(channel, buffer, codec, count, keyBytes,
+                    (flags & FILE_CHECKSUM) != 0 ? new CRC32C() : null, counts);
+            if (count == 0) keys.finish();
+            try {
+                buildFromSorted(keys, count);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt RedBlackTree file " + path, e);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException("The RedBlackTree file is truncated.");
+        }
+    }
+
+    /**
+     * Decodes the keys of a file written by save, refilling the buffer from
+     * the channel whenever a key is cut off at its end.
+     */
+    private static class KeyReader<T> implements Iterator<T> {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final KeyCodec<? extends T> codec;
+        private final CRC32C crc; // null when the file has no checksum
+        private final boolean counts; // whether every key is followed by its number of occurrences
+        private int remaining; // the number of keys still to decode
+        private long unread; // the number of key bytes still in the file
+        private long occurrences; // the sum of the counts decoded so far
+        int count = 1; // the number of occurrences of the key decoded last
+
+        KeyReader(FileChannel channel, ByteBuffer buffer, KeyCodec<? extends T> codec,
+                  int count, long keyBytes, CRC32C crc, boolean counts) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.codec = codec;
+            this.crc = crc;
+            this.counts = counts;
+            this.remaining = count;
+            this.unread = keyBytes;
+            buffer.clear().limit(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public T next() {
+            if (remaining == 0) throw new NoSuchElementException();
+            try {
+                while (true) {
+                    int start = buffer.position();
+                    try {
+                        T value = codec.decode(buffer);
+                        if (counts) {
+                            count = buffer.getInt();
+                            occurrences += count;
+                            if (count < 1 || occurrences > Integer.MAX_VALUE) throw new IOException(
+                                    "The RedBlackTree file holds an invalid count " + count + " of " + value);
+                        }
+                        if (--remaining == 0) finish();
+                        return value;
+                    } catch (BufferUnderflowException partial) {
+                        buffer.position(start);
+                        fill();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Moves the undecoded bytes to the front of the buffer and reads as
+         * many key bytes after them as fit.
+         */
+        private void fill() throws IOException {
+            if (unread == 0) throw new EOFException("The RedBlackTree file is truncated.");
+            buffer.compact();
+            if (!buffer.hasRemaining()) throw new IOException(
+                    "A value does not fit in " + FILE_BUFFER_BYTES + " bytes.");
+            int start = buffer.position();
+            buffer.limit((int) Math.min(buffer.capacity(), start + unread));
+            int read = channel.read(buffer);
+            if (read < 0) throw new EOFException("The RedBlackTree file is truncated.");
+            unread -= read;
+            buffer.flip();
+            if (crc != null) {
+                ByteBuffer fresh = buffer.duplicate();
+                fresh.position(start);
+                crc.update(fresh);
+            }
+        }
+
+        /**
+         * Checks that all key bytes were used and verifies the checksum.
+         */
+        void finish() throws IOException {
+            if (buffer.hasRemaining() || unread != 0) throw new IOException(
+                    "The RedBlackTree file holds more key bytes than keys.");
+            if (crc == null) return;
+            buffer.clear().limit(Integer.BYTES);
+            readFully(channel, buffer);
+            buffer.flip();
+            if (buffer.getInt() != (int) crc.getValue()) throw new IOException(
+                    "The RedBlackTree file fails its checksum.");
+        }
+    }
+
+    /**
+     * Get the size of the tree (its number of nodes).
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to check if the tree is empty (does not contain any node).
+     * @return true of this.size() return 0, false if this.size() > 0
+     */
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * Removes all values from this tree.
+     */
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Starts counting the inserts, rotations, recolourings and removes of
+     * this tree, and recording how far inserts descend. Until this is called
+     * the tree keeps no counts, and pays only a null check per operation.
+     * Values added by the bulk builders are not counted.
+     * @return the metrics of this tree, the existing ones when they are
+     *      already enabled
+     */
+    public TreeMetrics enableMetrics() {
+        if (metrics == null) metrics = new TreeMetrics(this::size);
+        return metrics;
+    }
+
+    /**
+     * Stops counting. Metrics obtained earlier keep the values they had.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * @return the metrics of this tree, or null when they are not enabled
+     */
+    public TreeMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Checks whether the tree contains the value *data*.
+     * @param data the data value to test for
+     * @return true if *data* is in the tree, false if it is not in the tree
+     */
+    public boolean contains(T data) {
+        return findNode(data) != null;
+    }
+
+    /**
+     * Looks up the value stored within this tree that is equal to *data*.
+     * This is useful when equal values are not interchangeable, for example
+     * to canonicalize instances against the ones already held by the tree.
+     * @param data the data value to look for
+     * @return the stored value that is equal to *data*, or null if there is none
+     */
+    public T find(T data) {
+        Node<T> node = findNode(data);
+        return node == null ? null : node.data;
+    }
+
+    /**
+     * Iterative helper method that descends from the root and looks for the
+     * node holding the value *data*.
+     * @param data the data value to look for
+     * @return the node holding *data*, or null if it is not in the tree
+     */
+    protected Node<T> findNode(T data) {
+        // null references will not be stored within this tree
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        Node<T> node = root;
+        long key = keyOf(data);
+        while (node != null) {
+            int compare = compare(data, key, node);
+            if (compare < 0) {
+                // go left in the tree
+                node = node.leftChild;
+            } else if (compare > 0) {
+                // go right in the tree
+                node = node.rightChild;
+            } else {
+                // we found it :)
+                return node;
+            }
+        }
+        // we are at a null child, value is not in tree
+        return null;
+    }
+
+    /**
+     * Checks for each of the probes whether it is in this tree, as
+     * contains(probes[i]) would, but faster for large batches: see findNodes.
+     * @param probes the values to look for, in any order, none of them null
+     * @param out receives at out[i] whether probes[i] is in the tree
+     * @throws NullPointerException when one of the probes is null
+     * @throws IllegalArgumentException when out is shorter than probes
+     */
+    public void containsAll(T[] probes, boolean[] out) {
+        if (out.length < probes.length) throw new IllegalArgumentException(
+                "out holds " + out.length + " results for " + probes.length + " probes");
+        Node<T>[] found = findNodes(probes);
+        for (int i = 0; i < probes.length; i++) out[i] = found[i] != null;
+    }
+
+    /**
+     * Looks up, for each of the probes, the stored value equal to it, as
+     * find(probes[i]) would, but faster for large batches: see findNodes.
+     * @param probes the values to look for, in any order, none of them null
+     * @param out receives at out[i] the stored value equal to probes[i], or
+     *      null if there is none
+     * @throws NullPointerException when one of the probes is null
+     * @throws IllegalArgumentException when out is shorter than probes
+     */
+    public void getAll(T[] probes, T[] out) {
+        if (out.length < probes.length) throw new IllegalArgumentException(
+                "out holds " + out.length + " results for " + probes.length + " probes");
+        Node<T>[] found = findNodes(probes);
+        for (int i = 0; i < probes.length; i++) out[i] = found[i] == null ? null : found[i].data;
+    }
+
+    /**
+     * Looks up a batch of values. Batches much smaller than the tree share
+     * little of their paths, sorted or not, and are looked up by descents
+     * from the root that are interleaved, several at a time, so that their
+     * cache misses overlap. Larger batches are visited in ascending order,
+     * which costs a sort unless they already are ascending, by a single walk
+     * that keeps the path to the previous probe and climbs only as far as
+     * the next probe requires.
+     * @param probes the values to look for, none of them null
+     * @return the node holding each probe, or null for those not in the tree
+     * @throws NullPointerException when one of the probes is null
+     */
+    @SuppressWarnings("unchecked")
+    protected Node<T>[] findNodes(T[] probes) {
+        Node<T>[] found = (Node<T>[]) new Node[probes.length];
+        boolean ascending = true;
+        for (int i = 0; i < probes.length; i++) {
+            if(probes[i] == null) throw new NullPointerException(
+                    "This RedBlackTree cannot store null references.");
+            if (ascending && i > 0 && compare(probes[i - 1], probes[i]) > 0) ascending = false;
+        }
+        if (root == null) return found;
+        if ((long) probes.length * SPARSE_BATCH_RATIO < size) {
+            findNodesInterleaved(probes, found);
+        } else {
+            findNodesInOrder(probes, ascending ? null : sortedIndexes(probes), found);
+        }
+        return found;
+    }
+
+    // batches this many times smaller than the tree are looked up by interleaved descents
+    private static final int SPARSE_BATCH_RATIO = 16;
+    // number of descents findNodesInterleaved advances together
+    private static final int LANES = 8;
+
+    /**
+     * Walks the tree once for all probes, in the order given by order, or in
+     * the order of probes when order is null, which must be ascending. The
+     * path from the root to the last node visited is kept, together with,
+     * for each of its nodes, the nearest ancestor at which the path goes
+     * left: every value in the subtree of a path node is below that
+     * ancestor. Since the probes ascend, the next probe lies in the subtree
+     * of the deepest path node whose bound is above it, and the descent for
+     * it starts there.
+     */
+    @SuppressWarnings("unchecked")
+    private void findNodesInOrder(T[] probes, int[] order, Node<T>[] found) {
+        // the height of a red-black tree of 2^31 nodes is at most 62
+        Node<T>[] path = (Node<T>[]) new Node[64];
+        Node<T>[] bound = (Node<T>[]) new Node[64];
+        int depth = 0; // number of nodes on the path
+        for (int n = 0; n < probes.length; n++) {
+            int i = order == null ? n : order[n];
+            T data = probes[i];
+            long key = keyOf(data);
+            while (depth > 1 && bound[depth - 1] != null && compare(data, key, bound[depth - 1]) >= 0)
+                depth--;
+            Node<T> node;
+            Node<T> upper;
+            if (depth == 0) {
+                node = root;
+                upper = null;
+            } else {
+                node = path[--depth];
+                upper = bound[depth];
+            }
+            while (node != null) {
+                path[depth] = node;
+                bound[depth++] = upper;
+                int compare = compare(data, key, node);
+                if (compare < 0) {
+                    upper = node;
+                    node = node.leftChild;
+                } else if (compare > 0) {
+                    node = node.rightChild;
+                } else {
+                    found[i] = node;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up the probes by separate descents from the root, LANES of them
+     * at a time, taking one step in each descent in turn. The descents do
+     * not depend on each other, so the processor can wait for the nodes of
+     * several of them at once.
+     */
+    @SuppressWarnings("unchecked")
+    private void findNodesInterleaved(T[] probes, Node<T>[] found) {
+        Node<T>[] cursor = (Node<T>[]) new Node[LANES];
+        long[] keys = new long[LANES];
+        for (int start = 0; start < probes.length; start += LANES) {
+            int lanes = Math.min(LANES, probes.length - start);
+            for (int lane = 0; lane < lanes; lane++) {
+                cursor[lane] = root;
+                keys[lane] = keyOf(probes[start + lane]);
+            }
+            int active = lanes;
+            while (active > 0) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    Node<T> node = cursor[lane];
+                    if (node == null) continue;
+                    int compare = compare(probes[start + lane], keys[lane], node);
+                    if (compare == 0) found[start + lane] = node;
+                    node = compare < 0 ? node.leftChild : compare > 0 ? node.rightChild : null;
+                    cursor[lane] = node;
+                    if (node == null) active--;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the positions 0 to probes.length - 1, ordered so that the
+     *      probes at those positions ascend
+     */
+    private int[] sortedIndexes(T[] probes) {
+        int[] order = new int[probes.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        sortIndexes(probes, order, new int[order.length], 0, order.length);
+        return order;
+    }
+
+    /**
+     * Merge sorts order[from] to order[to - 1] by the probes they point to.
+     */
+    private void sortIndexes(T[] probes, int[] order, int[] buffer, int from, int to) {
+        if (to - from < 2) return;
+        int middle = (from + to) >>> 1;
+        sortIndexes(probes, order, buffer, from, middle);
+        sortIndexes(probes, order, buffer, middle, to);
+        if (compare(probes[order[middle - 1]], probes[order[middle]]) <= 0) return; // already in order
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || (left < middle && compare(probes[buffer[left]], probes[buffer[right]]) <= 0))
+                order[i] = buffer[left++];
+            else
+                order[i] = buffer[right++];
+        }
+    }
+
+
+    /**
+     * @return the smallest value in this tree
+     * @throws NoSuchElementException when the tree is empty
+     */
+    public T first() throws NoSuchElementException {
+        if (root == null) throw new NoSuchElementException("This RedBlackTree is empty.");
+        return firstNode().data;
+    }
+
+    /**
+     * @return the largest value in this tree
+     * @throws NoSuchElementException when the tree is empty
+     */
+    public T last() throws NoSuchElementException {
+        if (root == null) throw new NoSuchElementException("This RedBlackTree is empty.");
+        return lastNode().data;
+    }
+
+    /**
+     * @param data the data value to compare against
+     * @return the greatest value in this tree less than or equal to *data*,
+     *      or null if there is none
+     */
+    public T floor(T data) {
+        return dataOf(floorNode(data, true));
+    }
+
+    /**
+     * @param data the data value to compare against
+     * @return the smallest value in this tree greater than or equal to *data*,
+     *      or null if there is none
+     */
+    public T ceiling(T data) {
+        return dataOf(ceilingNode(data, true));
+    }
+
+    /**
+     * @param data the data value to compare against
+     * @return the greatest value in this tree strictly less than *data*, or
+     *      null if there is none
+     */
+    public T lower(T data) {
+        return dataOf(floorNode(data, false));
+    }
+
+    /**
+     * @param data the data value to compare against
+     * @return the smallest value in this tree strictly greater than *data*, or
+     *      null if there is none
+     */
+    public T higher(T data) {
+        return dataOf(ceilingNode(data, false));
+    }
+
+    private static <T> T dataOf(Node<T> node) {
+        return node == null ? null : node.data;
+    }
+
+    /**
+     * @return the node holding the smallest value, or null when empty
+     */
+    protected Node<T> firstNode() {
+        Node<T> node = root;
+        if (node != null) while (node.leftChild != null) node = node.leftChild;
+        return node;
+    }
+
+    /**
+     * @return the node holding the largest value, or null when empty
+     */
+    protected Node<T> lastNode() {
+        Node<T> node = root;
+        if (node != null) while (node.rightChild != null) node = node.rightChild;
+        return node;
+    }
+
+    /**
+     * Iterative helper method that descends from the root and keeps track of
+     * the last node passed on the way down whose value is below *data*.
+     * @param data the data value to compare against
+     * @param inclusive whether a node holding *data* itself is accepted
+     * @return the node with the greatest value below (or equal to) *data*, or
+     *      null if there is none
+     */
+    protected Node<T> floorNode(T data, boolean inclusive) {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        Node<T> node = root;
+        Node<T> best = null;
+        long key = keyOf(data);
+        while (node != null) {
+            int compare = compare(data, key, node);
+            if (compare == 0 && inclusive) return node;
+            if (compare > 0) {
+                best = node;
+                node = node.rightChild;
+            } else {
+                node = node.leftChild;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Iterative helper method that descends from the root and keeps track of
+     * the last node passed on the way down whose value is above *data*.
+     * @param data the data value to compare against
+     * @param inclusive whether a node holding *data* itself is accepted
+     * @return the node with the smallest value above (or equal to) *data*, or
+     *      null if there is none
+     */
+    protected Node<T> ceilingNode(T data, boolean inclusive) {
+        if(data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        Node<T> node = root;
+        Node<T> best = null;
+        long key = keyOf(data);
+        while (node != null) {
+            int compare = compare(data, key, node);
+            if (compare == 0 && inclusive) return node;
+            if (compare < 0) {
+                best = node;
+                node = node.leftChild;
+            } else {
+                node = node.rightChild;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param node a node of this tree
+     * @return the node that follows node in-order, or null for the last node
+     */
+    protected static <T> Node<T> successor(Node<T> node) {
+        if (node.rightChild != null) {
+            node = node.rightChild;
+            while (node.leftChild != null) node = node.leftChild;
+            return node;
+        }
+        while (node.parent != null && !node.isLeftChild()) node = node.parent;
+        return node.parent;
+    }
+
+    /**
+     * @param node a node of this tree
+     * @return the node that precedes node in-order, or null for the first node
+     */
+    protected static <T> Node<T> predecessor(Node<T> node) {
+        if (node.leftChild != null) {
+            node = node.leftChild;
+            while (node.rightChild != null) node = node.rightChild;
+            return node;
+        }
+        while (node.parent != null && node.isLeftChild()) node = node.parent;
+        return node.parent;
+    }
+
+
+    /**
+     * Verifies the binary search tree ordering, the parent references, the
+     * size and the red-black tree properties of this tree: the root is black,
+     * no red node has a red child and every path from a node down to a null
+     * child passes the same number of black nodes. This walks the whole tree
+     * and is intended for tests and debugging.
+     * @throws IllegalStateException describing the first violation found
+     */
+    protected void checkRedBlackProperties() throws IllegalStateException {
+        if (root == null) {
+            if (size != 0) throw new IllegalStateException("empty tree with size " + size);
+            return;
+        }
+        if (root.parent != null) throw new IllegalStateException("root has a parent");
+        if (root.blackHeight != 1) throw new IllegalStateException("root is red");
+        int[] count = new int[1];
+        checkSubtree(root, null, null, count);
+        if (count[0] != size)
+            throw new IllegalStateException("size is " + size + " but tree holds " + count[0] + " nodes");
+    }
+
+    /**
+     * Recursive helper method for checkRedBlackProperties.
+     * @param node the root of the subtree to check
+     * @param low exclusive lower bound for the data in this subtree, or null
+     * @param high exclusive upper bound for the data in this subtree, or null
+     * @param count accumulates the number of nodes visited
+     * @return the number of black nodes on every path from node to a null child
+     */
+    private int checkSubtree(Node<T> node, T low, T high, int[] count) {
+        if (node == null) return 1;
+        count[0]++;
+        if (node.blackHeight != 0 && node.blackHeight != 1)
+            throw new IllegalStateException("invalid colour " + node.blackHeight + " at " + node.data);
+        if ((low != null && compare(node.data, low) <= 0) || (high != null && compare(node.data, high) >= 0))
+            throw new IllegalStateException("ordering violated at " + node.data);
+        if (node.leftChild != null && node.leftChild.parent != node)
+            throw new IllegalStateException("bad parent reference at " + node.leftChild.data);
+        if (node.rightChild != null && node.rightChild.parent != node)
+            throw new IllegalStateException("bad parent reference at " + node.rightChild.data);
+        if (node.blackHeight == 0 && (!isBlack(node.leftChild) || !isBlack(node.rightChild)))
+            throw new IllegalStateException("red node " + node.data + " has a red child");
+        int left = checkSubtree(node.leftChild, low, node.data, count);
+        int right = checkSubtree(node.rightChild, node.data, high, count);
+        if (left != right)
+            throw new IllegalStateException("black heights differ below " + node.data);
+        return left + node.blackHeight;
+    }
+
+    /**
+     * Returns an iterator over the values of this tree in ascending order. The
+     * iterator is fail-fast: once the tree is structurally modified other than
+     * through the iterator's own remove method, its next method throws a
+     * ConcurrentModificationException.
+     * @return an iterator over the values of this tree in in-order sequence
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new InOrderIterator();
+    }
+
+    /**
+     * Iterator that follows the successor links from the smallest node.
+     */
+    private class InOrderIterator implements Iterator<T> {
+        private Node<T> next = firstNode();
+        private Node<T> lastReturned;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next == null) throw new NoSuchElementException();
+            lastReturned = next;
+            next = successor(next);
+            return lastReturned.data;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            // removeNode relinks nodes rather than moving values, so next stays valid
+            removeNode(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Returns a spliterator over the values of this tree in ascending order.
+     * Splitting hands off the left subtree of the subtree that is still to be
+     * traversed, so the parts of a balanced tree stay close to equal in size
+     * and each of them is a contiguous range of whole subtrees. The
+     * spliterator reports SORTED, DISTINCT, ORDERED and NONNULL, and SIZED
+     * and SUBSIZED until it is first split: the tree does not record subtree
+     * sizes, so the parts only carry an estimate. Like the iterator, it is
+     * fail-fast.
+     * @return a spliterator over the values of this tree
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new SubtreeSpliterator(null, root, size, true);
+    }
+
+    /**
+     * @return a sequential stream over the values of this tree in ascending order
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return a parallel stream over the values of this tree
+     */
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Spliterator covering an optional single node followed by a whole
+     * subtree: the value of head, then every value in subtree in order.
+     * Splitting returns head with the left subtree of subtree, and keeps
+     * subtree's own node with its right subtree, which has the same shape.
+     */
+    private class SubtreeSpliterator implements Spliterator<T> {
+        private Node<T> head; // visited before the subtree, may be null
+        private Node<T> subtree; // root of the subtree to visit, may be null
+        private Node<T> next; // traversal cursor once traversal has started
+        private Node<T> last; // the final node to visit once traversal has started
+        private boolean started;
+        private long estimate;
+        private boolean exact;
+        private final int expectedModCount = modCount;
+
+        SubtreeSpliterator(Node<T> head, Node<T> subtree, long estimate, boolean exact) {
+            this.head = head;
+            this.subtree = subtree;
+            this.estimate = estimate;
+            this.exact = exact;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (started || subtree == null || subtree.leftChild == null) return null;
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            long half = estimate >>> 1;
+            SubtreeSpliterator prefix = new SubtreeSpliterator(head, subtree.leftChild, half, false);
+            head = subtree;
+            subtree = subtree.rightChild;
+            estimate -= half;
+            exact = false;
+            return prefix;
+        }
+
+        /**
+         * Fixes the range to traverse. Splitting always leaves head as the
+         * predecessor of the first node of subtree, so the range can be
+         * followed through the successor links.
+         */
+        private void start() {
+            started = true;
+            if (subtree == null) {
+                next = last = head;
+                return;
+            }
+            last = subtree;
+            while (last.rightChild != null) last = last.rightChild;
+            next = subtree;
+            while (next.leftChild != null) next = next.leftChild;
+            if (head != null) next = head;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            if (!started) start();
+            if (next == null) return false;
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            Node<T> node = next;
+            next = node == last ? null : successor(node);
+            estimate = Math.max(0, estimate - 1);
+            action.accept(node.data);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            while (tryAdvance(action)) { }
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return SORTED | DISTINCT | ORDERED | NONNULL | (exact ? SIZED | SUBSIZED : 0);
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return comparator; // null for natural ordering
+        }
+    }
+
+    /**
+     * Performs action for every value of this tree, in parallel on the common
+     * fork/join pool. The tree is cut into about four subtrees per worker
+     * thread, each of which is traversed by a single task, so no task walks
+     * more than a few levels above its own subtree. The action may be called
+     * concurrently and in any order. The tree must not be modified until this
+     * method returns.
+     * @param action the action to perform on each value
+     * @throws ConcurrentModificationException when the tree was modified
+     *      during the traversal
+     */
+    public void parallelForEach(Consumer<? super T> action) {
+        parallelReduce(null, (ignored, value) -> {
+            action.accept(value);
+            return null;
+        }, (left, right) -> null);
+    }
+
+    /**
+     * Reduces the values of this tree in parallel on the common fork/join
+     * pool, with the semantics of Stream.reduce(identity, accumulator,
+     * combiner): each subtree task folds its values in ascending order into
+     * the identity with accumulator, and the results of neighbouring ranges
+     * are joined with combiner, left before right. As for parallelForEach,
+     * every task owns one subtree and the tree must not be modified until
+     * this method returns.
+     * @param identity the identity value of combiner
+     * @param accumulator folds one more value into a partial result
+     * @param combiner joins the partial results of two adjacent ranges
+     * @return the result of the reduction, identity for an empty tree
+     * @throws ConcurrentModificationException when the tree was modified
+     *      during the traversal
+     */
+    public <R> R parallelReduce(R identity, BiFunction<R, ? super T, R> accumulator,
+                                BinaryOperator<R> combiner) {
+        int expectedModCount = modCount;
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        // number of levels to split at so that there are about 4 subtrees per worker
+        int splitDepth = 32 - Integer.numberOfLeadingZeros(4 * parallelism - 1);
+        R result = ForkJoinPool.commonPool().invoke(
+                new SubtreeTask<>(root, splitDepth, identity, accumulator, combiner));
+        if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        return result;
+    }
+
+    /**
+     * Reduces the subtree rooted at node, forking its left and right subtrees
+     * until splitDepth levels have been split off.
+     */
+    private static class SubtreeTask<T, R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node<T> node;
+        private final int splitDepth;
+        private final R identity;
+        private final BiFunction<R, ? super T, R> accumulator;
+        private final BinaryOperator<R> combiner;
+
+        SubtreeTask(Node<T> node, int splitDepth, R identity,
+                    BiFunction<R, ? super T, R> accumulator, BinaryOperator<R> combiner) {
+            this.node = node;
+            this.splitDepth = splitDepth;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            if (node == null) return identity;
+            if (splitDepth == 0) return reduceSubtree(node, identity);
+            SubtreeTask<T, R> left = new SubtreeTask<>(node.leftChild, splitDepth - 1,
+                    identity, accumulator, combiner);
+            SubtreeTask<T, R> right = new SubtreeTask<>(node.rightChild, splitDepth - 1,
+                    identity, accumulator, combiner);
+            right.fork();
+            R result = accumulator.apply(left.compute(), node.data);
+            return combiner.apply(result, right.join());
+        }
+
+        /**
+         * Folds the values of the subtree rooted at top, in order, into result
+         * by following the successor links from its first node.
+         */
+        private R reduceSubtree(Node<T> top, R result) {
+            Node<T> last = top;
+            while (last.rightChild != null) last = last.rightChild;
+            Node<T> current = top;
+            while (current.leftChild != null) current = current.leftChild;
+            while (true) {
+                result = accumulator.apply(result, current.data);
+                if (current == last) return result;
+                current = successor(current);
+            }
+        }
+    }
+
+    /**
+     * Performs action for every value of this tree in ascending order. The
+     * traversal follows the parent references from node to successor, so it
+     * needs no stack and only constant extra memory, however large the tree.
+     * @param action the action to perform on each value
+     * @throws ConcurrentModificationException when action modified the tree
+     */
+    public void forEachInOrder(Consumer<? super T> action) {
+        int expectedModCount = modCount;
+        for (Node<T> node = firstNode(); node != null; node = successor(node)) {
+            action.accept(node.data);
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Performs action, in ascending order, for every value v of this tree
+     * with from <= v < to. The scan starts at the ceiling of from and follows
+     * the successor links.
+     * @param from the low end of the range, inclusive
+     * @param to the high end of the range, exclusive
+     * @param action the action to perform on each value in the range
+     * @throws ConcurrentModificationException when action modified the tree
+     */
+    public void forEachInRange(T from, T to, Consumer<? super T> action) {
+        int expectedModCount = modCount;
+        long toKey = keyOf(to);
+        for (Node<T> node = ceilingNode(from, true); node != null && compare(to, toKey, node) > 0;
+             node = successor(node)) {
+            action.accept(node.data);
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Performs action for every value of this tree in level order: the root,
+     * then all nodes one level below it from left to right, and so on. The
+     * pending nodes are held in an array-based queue, so each node is visited
+     * once and the extra memory grows with the widest level of the tree.
+     * @param action the action to perform on each value
+     * @throws ConcurrentModificationException when action modified the tree
+     */
+    public void forEachLevelOrder(Consumer<? super T> action) {
+        if (root == null) return;
+        int expectedModCount = modCount;
+        Deque<Node<T>> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node<T> node = queue.poll();
+            if (node.leftChild != null) queue.add(node.leftChild);
+            if (node.rightChild != null) queue.add(node.rightChild);
+            action.accept(node.data);
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Writes the values of this tree in ascending order to out, in the format
+     * of toInOrderString, without building the whole string first.
+     * @param out the destination, for example a Writer or a StringBuilder
+     * @throws IOException when out throws one
+     */
+    public void writeInOrder(Appendable out) throws IOException {
+        out.append("[ ");
+        Node<T> node = firstNode();
+        while (node != null) {
+            out.append(String.valueOf(node.data));
+            node = successor(node);
+            if (node != null) out.append(", ");
+        }
+        out.append(" ]");
+    }
+
+    /**
+     * Writes the values of this tree in level order to out, in the format of
+     * toLevelOrderString, see forEachLevelOrder.
+     * @param out the destination, for example a Writer or a StringBuilder
+     * @throws IOException when out throws one
+     */
+    public void writeLevelOrder(Appendable out) throws IOException {
+        out.append("[ ");
+        boolean[] first = {true};
+        try {
+            forEachLevelOrder(value -> {
+                try {
+                    if (!first[0]) out.append(", ");
+                    out.append(String.valueOf(value));
+                    first[0] = false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.append(" ]");
+    }
+
+    /**
+     * This method performs an inorder traversal of the tree. The string
+     * representations of each data value within this tree are assembled into a
+     * comma separated string within brackets (similar to many implementations
+     * of java.util.Collection, like java.util.ArrayList, LinkedList, etc).
+     * Note that this RedBlackTree class implementation of toString generates an
+     * inorder traversal. The toString of the Node class class above
+     * produces a level order traversal of the nodes / values of the tree.
+     * For large trees, prefer writeInOrder to a Writer.
+     * @return string containing the ordered values of this tree (in-order traversal)
+     */
+    public String toInOrderString() {
+        // generate a string of all values of the tree in (ordered) in-order
+        // traversal sequence
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeInOrder(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This method performs a level order traversal of the tree rooted
+     * at the current node. The string representations of each data value
+     * within this tree are assembled into a comma separated string within
+     * brackets (similar to many implementations of java.util.Collection).
+     * Note that the Node's implementation of toString generates a level
+     * order traversal. The toString of the RedBlackTree class below
+     * produces an inorder traversal of the nodes / values of the tree.
+     * This method will be helpful as a helper for the debugging and testing
+     * of your rotation implementation.
+     * For large trees, prefer writeLevelOrder to a Writer.
+     * @return string containing the values of this tree in level order
+     */
+    public String toLevelOrderString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeLevelOrder(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    public String toString() {
+        return "level order: " + this.toLevelOrderString() +
+                "\nin order: " + this.toInOrderString();
+    }
+
+
+    // Implement at least 3 boolean test methods by using the method signatures below,
+    // removing the comments around them and addind your testing code to them. You can
+    // use your notes from lecture for ideas on concrete examples of rotation to test for.
+    // Make sure to include rotations within and at the root of a tree in your test cases.
+    // If you are adding additional tests, then name the method similar to the ones given below.
+    // Eg: public static boolean test4() {}
+    // Do not change the method name or return type of the existing tests.
+    // You can run your tests by commenting in the calls to the test methods
+
+//
+//    public static boolean test1() {
+//        try {
+//            RedBlackTree<String> testTree = new RedBlackTree<String>();
+//            Node<String> node4 = new Node<String>("4");//4
+//            Node<String> node5 = new Node<String>("5");//5
+//            Node<String> node6 = new Node<String>("6");//6
+//            Node<String> node3 = new Node<String>("3");//3
+//            Node<String> node2 = new Node<String>("2");//2
+//            Node<String> node1 = new Node<String>("1");//1
+//            Node<String> node7 = new Node<String>("7");//7
+//            testTree.size = 7;
+//            testTree.root = node4;
+//            node4.leftChild = node5;
+//            node4.rightChild = node6;
+//            node5.parent = node4;
+//            node5.leftChild = node3;
+//            node5.rightChild = node2;
+//            node6.parent = node4;
+//            node6.leftChild = node1;
+//            node6.rightChild = node7;
+//            node3.parent = node5;
+//            node2.parent = node5;
+//            node1.parent = node6;
+//            node7.parent = node6;
+//            //System.out.println(testTree.toLevelOrderString());
+//            testTree.rotate(node2, node5);
+//            if (!testTree.toLevelOrderString().equals("[ 4, 2, 6, 5, 1, 7, 3 ]")) {
+//                return false;
+//            }
+//            if (!testTree.toInOrderString().equals("[ 3, 5, 2, 4, 1, 6, 7 ]")) {
+//                return false;
+//            }
+//        } catch (Exception e) {
+//            e.printStackTrace();
+//            return false;
+//        }
+//        return true;
+//
+//    }
+//
+//
+//
+//    public static boolean test2() {
+//        try {
+//            RedBlackTree<String> testTree = new RedBlackTree<String>();
+//            testTree.insert("3");
+//            testTree.insert("2");
+//            testTree.insert("1");
+////            System.out.println(testTree.toString());
+//            if (!testTree.toInOrderString().equals("[ 1, 2, 3 ]")) {
+//                return false;
+//            }
+//        } catch (Exception e) {
+//            e.printStackTrace();
+//            return false;
+//        }
+//        return true;
+//    }
+//
+//
+//
+//    public static boolean test3() {
+//        try {
+//            RedBlackTree<String> tree = new RedBlackTree<String>();
+//            tree.insert("29");
+//            tree.insert("19");
+//            tree.insert("99");
+//            tree.insert("69");
+//            tree.insert("39");
+////            System.out.println(tree.toString());
+//
+//            if (!tree.toInOrderString().equals("[ 19, 29, 39, 69, 99 ]")) {
+//                return false;
+//            }
+//        } catch (Exception e) {
+//            e.printStackTrace();
+//            return false;
+//        }
+//        return true;
+//    }
+    protected RedBlackTree<String> tree = null;
+    @BeforeEach
+    public void createInstane() {
+        tree = new RedBlackTree<String>();
+    }
+
+
+    @Test
+    public void test4() {
+
+            Node<String> node7 = new Node<String>("7");
+            Node<String> node14 = new Node<String>("14");
+            Node<String> node18 = new Node<String>("18");
             Node<String> node23 = new Node<String>("23");
             tree.insert(node7.data);
             tree.insert(node14.data);
@@ -546,7 +2594,7 @@ public class RedBlackTree<T extends Comparable<T>> {
         tree.insert("-2");
         tree.insert("20");
         tree.insert("13");
-        assertEquals(3, tree.root);
+        assertEquals("3", tree.root.data);
         assertEquals("[ -2, -3, 0, 1, 13, 2, 20, 3, 5, 8 ]", tree.toInOrderString());
 
 
@@ -561,11 +2609,481 @@ public class RedBlackTree<T extends Comparable<T>> {
         tree.insert("11");
         tree.insert("20");
         tree.insert("13");
-        assertEquals(8, tree.root);
+        assertEquals("8", tree.root.data);
         assertEquals("[ 11, 13, 20, 5, 8, 9 ]", tree.toInOrderString());
 
     }
 
+    @Test
+    public void test7() {
+        // duplicates are reported by the return value and leave the tree untouched
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        assertTrue(tree.insert(10));
+        assertTrue(tree.insert(5));
+        assertTrue(tree.insert(15));
+        assertFalse(tree.insert(5));
+        assertFalse(tree.insert(10));
+        assertEquals(3, tree.size());
+        assertEquals("[ 5, 10, 15 ]", tree.toInOrderString());
+        assertEquals("[ 10, 5, 15 ]", tree.toLevelOrderString());
+    }
+
+    @Test
+    public void test8() {
+        // find returns the stored instance, contains and find agree on misses
+        RedBlackTree<String> tree = new RedBlackTree<>();
+        String stored = new String("42");
+        tree.insert(stored);
+        for (int i = 0; i < 100; i++) tree.insert(Integer.toString(i * 7));
+        assertSame(stored, tree.find(new String("42")));
+        assertTrue(tree.contains("693"));
+        assertFalse(tree.contains("5"));
+        assertNull(tree.find("5"));
+    }
+
+    @Test
+    public void test9() {
+        // randomized inserts and removes, checked against TreeSet after every operation
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            int value = random.nextInt(500);
+            switch (random.nextInt(4)) {
+                case 0: assertEquals(expected.remove(value), tree.remove(value)); break;
+                case 1: assertEquals(expected.pollFirst(), tree.pollFirst()); break;
+                case 2: assertEquals(expected.pollLast(), tree.pollLast()); break;
+                default: assertEquals(expected.add(value), tree.insert(value));
+            }
+            tree.checkRedBlackProperties();
+            assertEquals(expected.size(), tree.size());
+        }
+        assertEquals(expected.toString().replace("[", "[ ").replace("]", " ]"), tree.toInOrderString());
+    }
+
+    @Test
+    public void test10() {
+        // removing nodes with two children, from ascending input
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        for (int i = 1; i <= 15; i++) tree.insert(i);
+        tree.checkRedBlackProperties();
+        assertTrue(tree.remove(tree.root.data));
+        assertFalse(tree.remove(100));
+        assertTrue(tree.remove(2));
+        tree.checkRedBlackProperties();
+        assertEquals(Integer.valueOf(1), tree.pollFirst());
+        assertEquals(Integer.valueOf(15), tree.pollLast());
+        assertEquals(11, tree.size());
+        tree.checkRedBlackProperties();
+        while (!tree.isEmpty()) tree.pollFirst();
+        assertNull(tree.root);
+        assertNull(tree.pollLast());
+    }
+
+    @Test
+    public void test11() {
+        // bulk-built trees are valid red-black trees for every size
+        for (int n = 0; n <= 130; n++) {
+            Integer[] values = new Integer[n];
+            for (int i = 0; i < n; i++) values[i] = i * 3;
+            RedBlackTree<Integer> tree = RedBlackTree.fromSorted(values);
+            tree.checkRedBlackProperties();
+            assertEquals(n, tree.size());
+            assertEquals(Arrays.toString(values).replace("[", "[ ").replace("]", " ]"), tree.toInOrderString());
+            assertTrue(tree.insert(-1));
+            tree.checkRedBlackProperties();
+        }
+        assertThrows(IllegalArgumentException.class, () -> RedBlackTree.fromSorted(new Integer[] {1, 3, 3}));
+        assertThrows(IllegalArgumentException.class,
+                () -> RedBlackTree.fromSorted(Arrays.asList(1, 5, 4).iterator(), 3));
+    }
+
+    @Test
+    public void test12() {
+        // addAll of ascending runs, merged or inserted, agrees with TreeSet
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(9);
+        for (int round = 0; round < 40; round++) {
+            List<Integer> values = new ArrayList<>();
+            int runs = 1 + random.nextInt(4);
+            for (int r = 0; r < runs; r++) {
+                int value = random.nextInt(1000);
+                int length = random.nextInt(round * 10 + 1);
+                for (int i = 0; i < length; i++) values.add(value += 1 + random.nextInt(5));
+            }
+            assertEquals(expected.addAll(values), tree.addAll(values));
+            tree.checkRedBlackProperties();
+            assertEquals(expected.size(), tree.size());
+        }
+        assertEquals(expected.toString().replace("[", "[ ").replace("]", " ]"), tree.toInOrderString());
+    }
+
+    @Test
+    public void test13() {
+        // in-order iteration, removal through the iterator and fail-fast behaviour
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(13);
+        for (int i = 0; i < 500; i++) {
+            int value = random.nextInt(2000);
+            tree.insert(value);
+            expected.add(value);
+        }
+        List<Integer> visited = new ArrayList<>();
+        for (Integer value : tree) visited.add(value);
+        assertEquals(new ArrayList<>(expected), visited);
+        for (Iterator<Integer> it = tree.iterator(); it.hasNext(); ) {
+            if (it.next() % 3 == 0) it.remove();
+        }
+        expected.removeIf(value -> value % 3 == 0);
+        tree.checkRedBlackProperties();
+        assertEquals(expected.size(), tree.size());
+        assertEquals(new ArrayList<>(expected), tree.stream().collect(Collectors.toList()));
+        Iterator<Integer> it = tree.iterator();
+        it.next();
+        tree.insert(-1);
+        assertThrows(ConcurrentModificationException.class, it::next);
+        assertFalse(new RedBlackTree<Integer>().iterator().hasNext());
+    }
+
+    @Test
+    public void test14() {
+        // spliterator parts cover the tree in order, parallel aggregation agrees
+        for (int n : new int[] {0, 1, 2, 7, 100, 1000}) {
+            RedBlackTree<Integer> tree = new RedBlackTree<>();
+            for (int i = 0; i < n; i++) tree.insert(i);
+            Spliterator<Integer> spliterator = tree.spliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.SIZED));
+            assertEquals(n, spliterator.getExactSizeIfKnown());
+            List<Spliterator<Integer>> parts = new ArrayList<>();
+            parts.add(spliterator);
+            for (int round = 0; round < 4; round++) {
+                List<Spliterator<Integer>> split = new ArrayList<>();
+                for (Spliterator<Integer> part : parts) {
+                    Spliterator<Integer> prefix = part.trySplit();
+                    if (prefix != null) split.add(prefix);
+                    split.add(part);
+                }
+                parts = split;
+            }
+            List<Integer> visited = new ArrayList<>();
+            for (Spliterator<Integer> part : parts) part.forEachRemaining(visited::add);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < n; i++) expected.add(i);
+            assertEquals(expected, visited);
+
+            long sum = (long) n * (n - 1) / 2;
+            assertEquals(sum, tree.parallelStream().mapToLong(Integer::longValue).sum());
+            assertEquals(sum, (long) tree.parallelReduce(0L, (partial, value) -> partial + value, Long::sum));
+            // the combiner is not commutative, so this also checks that ranges stay in order
+            String joined = tree.parallelReduce("", (partial, value) -> partial + value + " ", String::concat);
+            assertEquals(expected.stream().map(i -> i + " ").collect(Collectors.joining()), joined);
+            LongAdder count = new LongAdder();
+            tree.parallelForEach(value -> count.increment());
+            assertEquals(n, count.sum());
+        }
+    }
+
+    @Test
+    public void test15() throws IOException {
+        // streaming traversals agree with TreeSet order and a queue-based level order
+        for (int n : new int[] {0, 1, 2, 3, 10, 1000}) {
+            RedBlackTree<Integer> tree = new RedBlackTree<>();
+            Random random = new Random(n);
+            TreeSet<Integer> expected = new TreeSet<>();
+            while (expected.size() < n) {
+                int value = random.nextInt(10 * n);
+                expected.add(value);
+                tree.insert(value);
+            }
+            List<Integer> inOrder = new ArrayList<>();
+            tree.forEachInOrder(inOrder::add);
+            assertEquals(new ArrayList<>(expected), inOrder);
+
+            List<Integer> levelOrder = new ArrayList<>();
+            Deque<Node<Integer>> queue = new ArrayDeque<>();
+            if (tree.root != null) queue.add(tree.root);
+            while (!queue.isEmpty()) {
+                Node<Integer> node = queue.removeFirst();
+                levelOrder.add(node.data);
+                if (node.leftChild != null) queue.add(node.leftChild);
+                if (node.rightChild != null) queue.add(node.rightChild);
+            }
+            List<Integer> visited = new ArrayList<>();
+            tree.forEachLevelOrder(visited::add);
+            assertEquals(levelOrder, visited);
+
+            String inOrderString = inOrder.toString().replace("[", "[ ").replace("]", " ]");
+            assertEquals(inOrderString, tree.toInOrderString());
+            assertEquals(levelOrder.toString().replace("[", "[ ").replace("]", " ]"), tree.toLevelOrderString());
+            StringWriter writer = new StringWriter();
+            tree.writeInOrder(writer);
+            assertEquals(inOrderString, writer.toString());
+        }
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        for (int i = 0; i < 10; i++) tree.insert(i);
+        assertThrows(ConcurrentModificationException.class, () -> tree.forEachInOrder(value -> tree.remove(value)));
+    }
+
+    @Test
+    public void test16() throws IOException {
+        // save and load round trip, with and without checksum, and reject damaged files
+        Path file = Files.createTempFile("tree", ".rbt");
+        try {
+            for (int n : new int[] {0, 1, 1000, 300_000}) {
+                RedBlackTree<Integer> tree = new RedBlackTree<>();
+                Random random = new Random(n);
+                for (int i = 0; i < n; i++) tree.insert(random.nextInt());
+                for (boolean checksum : new boolean[] {false, true}) {
+                    tree.save(file, KeyCodec.INTEGER, checksum);
+                    OrderStatisticTree<Integer> loaded = new OrderStatisticTree<>();
+                    loaded.load(file, KeyCodec.INTEGER);
+                    loaded.checkRedBlackProperties();
+                    assertEquals(tree.toInOrderString(), loaded.toInOrderString());
+                }
+            }
+
+            // strings longer than the gaps left at the end of the buffer
+            RedBlackTree<String> words = new RedBlackTree<>();
+            for (int i = 0; i < 20_000; i++) words.insert("word " + i + " ".repeat(i % 500) + "\u00e9");
+            words.save(file, KeyCodec.STRING, true);
+            RedBlackTree<String> loaded = new RedBlackTree<>();
+            loaded.load(file, KeyCodec.STRING);
+            loaded.checkRedBlackProperties();
+            assertEquals(words.toInOrderString(), loaded.toInOrderString());
+
+            // a flipped bit fails the checksum and leaves the tree unchanged
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length / 2] ^= 1;
+            Files.write(file, bytes);
+            assertThrows(IOException.class, () -> loaded.load(file, KeyCodec.STRING));
+            assertEquals(words.toInOrderString(), loaded.toInOrderString());
+            Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+            assertThrows(IOException.class, () -> loaded.load(file, KeyCodec.STRING));
+            Files.write(file, new byte[] {1, 2, 3});
+            assertThrows(IOException.class, () -> loaded.load(file, KeyCodec.STRING));
+            assertEquals(20_000, loaded.size());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Tests that the metrics count inserts, duplicates, rotations and
+     * removes, keep descents within the height bound, and are published
+     * over JMX.
+     */
+    @Test
+    public void test17() throws Exception {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        assertNull(tree.metrics());
+        TreeMetrics metrics = tree.enableMetrics();
+        assertSame(metrics, tree.enableMetrics());
+
+        // ascending values are always inserted as right children
+        for (int i = 0; i < 1000; i++) tree.insert(i);
+        for (int i = 0; i < 100; i++) tree.insert(i);
+        TreeStats stats = metrics.snapshot();
+        assertEquals(1000, stats.getSize());
+        assertEquals(1000, stats.getInserts());
+        assertEquals(100, stats.getDuplicates());
+        assertTrue(stats.getLeftRotations() > 0);
+        assertEquals(0, stats.getRightRotations());
+        assertTrue(stats.getRecolourings() > 0);
+        assertEquals(18, stats.getHeightBound());
+        assertFalse(stats.isHeightBoundExceeded());
+        assertTrue(stats.getDescentLengthP50() <= stats.getDescentLengthP99());
+        assertTrue(stats.getDescentLengthP99() <= stats.getDescentLengthMax());
+        assertTrue(stats.getFixupIterationsMax() > 0);
+
+        for (int i = 0; i < 500; i++) tree.remove(i);
+        assertEquals(500, metrics.getRemoves());
+        assertEquals(500, metrics.getSize());
+        metrics.reset();
+        assertEquals(0, metrics.getInserts());
+        assertEquals(0, metrics.getDescentLengthMax());
+
+        // descending values are always inserted as left children
+        for (int i = -1; i >= -1000; i--) tree.insert(i);
+        assertTrue(metrics.getRightRotations() > 0);
+        tree.checkRedBlackProperties();
+
+        javax.management.ObjectName name = metrics.registerMBean("test17");
+        try {
+            javax.management.MBeanServer server =
+                    java.lang.management.ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1500, server.getAttribute(name, "Size"));
+            assertEquals(1000L, server.getAttribute(name, "Inserts"));
+            assertEquals(false, server.getAttribute(name, "HeightBoundExceeded"));
+            assertThrows(IllegalStateException.class, () -> metrics.registerMBean("test17"));
+        } finally {
+            java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+
+        tree.disableMetrics();
+        tree.insert(5000);
+        assertNull(tree.metrics());
+        assertEquals(1000, metrics.getInserts());
+    }
+
+    /**
+     * Tests trees ordered by a comparator and by a long key, whose values
+     * need not be Comparable.
+     */
+    @Test
+    public void test18() {
+        RedBlackTree<String> reversed = RedBlackTree.withComparator(Comparator.reverseOrder());
+        for (String value : new String[] {"b", "d", "a", "c", "e"}) assertTrue(reversed.insert(value));
+        assertFalse(reversed.insert("c"));
+        assertEquals("[ e, d, c, b, a ]", reversed.toInOrderString());
+        assertEquals("e", reversed.first());
+        assertEquals("c", reversed.ceiling("c"));
+        assertEquals("b", reversed.higher("c"));
+        assertEquals("d", reversed.lower("c"));
+        assertEquals("d", reversed.floor("cc"));
+        assertEquals(Comparator.reverseOrder(), reversed.spliterator().getComparator());
+        reversed.checkRedBlackProperties();
+
+        // values that are not Comparable, ordered and deduplicated by a long key
+        RedBlackTree<long[]> keyed = RedBlackTree.withLongKey(pair -> pair[0]);
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(18);
+        for (int i = 0; i < 2000; i++) {
+            long key = random.nextInt(1000);
+            assertEquals(expected.add(key), keyed.insert(new long[] {key, i}));
+        }
+        for (int i = 0; i < 500; i++) {
+            long key = random.nextInt(1000);
+            assertEquals(expected.remove(key), keyed.remove(new long[] {key, -1}));
+        }
+        keyed.addAll(Arrays.asList(new long[] {2000, 0}, new long[] {2001, 0}, new long[] {2002, 0}));
+        expected.addAll(Arrays.asList(2000L, 2001L, 2002L));
+        keyed.checkRedBlackProperties();
+        assertEquals(expected.size(), keyed.size());
+        assertEquals(expected.toString(),
+                keyed.stream().map(pair -> pair[0]).collect(Collectors.toList()).toString());
+        assertTrue(keyed.contains(new long[] {expected.first(), 12345}));
+        List<Long> range = new ArrayList<>();
+        keyed.forEachInRange(new long[] {100}, new long[] {200}, pair -> range.add(pair[0]));
+        assertEquals(new ArrayList<>(expected.subSet(100L, 200L)), range);
+    }
+
+    /**
+     * Tests that containsAll and getAll agree with contains and find, for
+     * batches that are sparse and dense relative to the tree, in random and
+     * ascending order.
+     */
+    @Test
+    public void test19() {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        assertThrows(IllegalArgumentException.class, () -> tree.containsAll(new Integer[2], new boolean[1]));
+        boolean[] none = new boolean[1];
+        tree.containsAll(new Integer[] {1}, none);
+        assertFalse(none[0]);
+        Random random = new Random(19);
+        for (int i = 0; i < 10_000; i++) tree.insert(random.nextInt(20_000));
+        for (int batch : new int[] {1, 7, 100, 5_000, 30_000}) {
+            Integer[] probes = new Integer[batch];
+            for (int i = 0; i < batch; i++) probes[i] = random.nextInt(21_000) - 500;
+            for (int pass = 0; pass < 2; pass++) {
+                boolean[] contained = new boolean[batch];
+                Integer[] stored = new Integer[batch];
+                tree.containsAll(probes, contained);
+                tree.getAll(probes, stored);
+                for (int i = 0; i < batch; i++) {
+                    assertEquals(tree.contains(probes[i]), contained[i]);
+                    assertSame(tree.find(probes[i]), stored[i]);
+                }
+                Arrays.sort(probes);
+            }
+        }
+        assertThrows(NullPointerException.class,
+                () -> tree.containsAll(new Integer[] {1, null}, new boolean[2]));
+
+        RedBlackTree<long[]> keyed = RedBlackTree.withLongKey(pair -> pair[0]);
+        for (long i = 0; i < 1000; i += 3) keyed.insert(new long[] {i});
+        long[][] probes = new long[1000][];
+        for (int i = 0; i < probes.length; i++) probes[i] = new long[] {999 - i};
+        long[][] stored = new long[1000][];
+        keyed.getAll(probes, stored);
+        for (int i = 0; i < probes.length; i++) assertSame(keyed.find(probes[i]), stored[i]);
+    }
+
+    /**
+     * Tests union, parallelUnion, intersection, difference, split and join
+     * against TreeSet, for trees of very different and of similar sizes.
+     */
+    @Test
+    public void test20() {
+        Random random = new Random(20);
+        int[][] sizes = {{0, 0}, {0, 50}, {1, 5000}, {5000, 1}, {300, 20_000}, {4000, 4000}};
+        for (int[] pair : sizes) {
+            for (int operation = 0; operation < 4; operation++) {
+                RedBlackTree<Integer> a = new RedBlackTree<>();
+                RedBlackTree<Integer> b = new RedBlackTree<>();
+                TreeSet<Integer> expected = new TreeSet<>();
+                TreeSet<Integer> other = new TreeSet<>();
+                for (int i = 0; i < pair[0]; i++) {
+                    int value = random.nextInt(3 * (pair[0] + pair[1]));
+                    a.insert(value);
+                    expected.add(value);
+                }
+                for (int i = 0; i < pair[1]; i++) {
+                    int value = random.nextInt(3 * (pair[0] + pair[1]));
+                    b.insert(value);
+                    other.add(value);
+                }
+                if (operation == 0) { a.union(b); expected.addAll(other); }
+                if (operation == 1) { a.parallelUnion(b); expected.addAll(other); }
+                if (operation == 2) { a.intersection(b); expected.retainAll(other); }
+                if (operation == 3) { a.difference(b); expected.removeAll(other); }
+                a.checkRedBlackProperties();
+                assertEquals(expected.size(), a.size());
+                assertEquals(new ArrayList<>(expected), a.stream().collect(Collectors.toList()));
+                assertTrue(b.isEmpty());
+            }
+        }
+
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 3000; i++) {
+            int value = random.nextInt(10_000);
+            tree.insert(value);
+            expected.add(value);
+        }
+        for (int at : new int[] {-1, 0, 5000, expected.first(), expected.last(), 20_000}) {
+            RedBlackTree<Integer> tail = tree.split(at);
+            tree.checkRedBlackProperties();
+            tail.checkRedBlackProperties();
+            assertEquals(new ArrayList<>(expected.headSet(at)), tree.stream().collect(Collectors.toList()));
+            assertEquals(new ArrayList<>(expected.tailSet(at)), tail.stream().collect(Collectors.toList()));
+            assertEquals(expected.headSet(at).size(), tree.size());
+            assertEquals(expected.tailSet(at).size(), tail.size());
+            tree.union(tail);
+        }
+
+        // join trees of very different heights on either side
+        RedBlackTree<Integer> left = new RedBlackTree<>();
+        for (int i = 0; i < 10; i++) left.insert(i);
+        RedBlackTree<Integer> right = new RedBlackTree<>();
+        for (int i = 11; i < 10_000; i++) right.insert(i);
+        left.join(10, right);
+        left.checkRedBlackProperties();
+        assertEquals(10_000, left.size());
+        assertTrue(right.isEmpty());
+        RedBlackTree<Integer> high = new RedBlackTree<>();
+        high.insert(20_000);
+        left.join(15_000, high);
+        left.checkRedBlackProperties();
+        assertEquals(Integer.valueOf(20_000), left.last());
+        RedBlackTree<Integer> overlapping = new RedBlackTree<>();
+        overlapping.insert(5);
+        assertThrows(IllegalArgumentException.class, () -> left.join(30_000, overlapping));
+        assertThrows(IllegalArgumentException.class,
+                () -> left.union(RedBlackTree.withComparator(Comparator.<Integer>reverseOrder())));
+    }
+
 
 
 
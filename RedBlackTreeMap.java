@@ -0,0 +1,469 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Red-black tree that maps each of its keys to a value. The value is held by
+ * the node of its key, and every node doubles as the Map.Entry handed out for
+ * it, so lookups, navigation and range iteration never copy anything: the
+ * entries returned write through to the tree with setValue.
+ *
+ * Range views returned by subMap, headMap and tailMap are java.util.SortedMap
+ * instances that read the live tree. Iterating k entries of a view costs one
+ * descent to the first entry plus k successor steps, O(log n + k).
+ */
+public class RedBlackTreeMap<K extends Comparable<K>, V> extends RedBlackTree<K> {
+
+    /**
+     * Node of a RedBlackTreeMap, holding the value mapped to its key.
+     */
+    protected static class MapNode<K, V> extends Node<K> implements Map.Entry<K, V> {
+        public V value;
+        public MapNode(K key) { super(key); }
+
+        @Override
+        public K getKey() { return data; }
+
+        @Override
+        public V getValue() { return value; }
+
+        @Override
+        public V setValue(V value) {
+            V old = this.value;
+            this.value = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return data.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return data.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return data + "=" + value;
+        }
+    }
+
+    @Override
+    protected Node<K> newNode(K key) {
+        return new MapNode<K, V>(key);
+    }
+
+    @Override
+    protected RedBlackTree<K> newEmptyTree() {
+        RedBlackTreeMap<K, V> tree = new RedBlackTreeMap<>();
+        tree.comparator = comparator;
+        return tree;
+    }
+
+    /**
+     * Associates the value with the key, replacing the value previously
+     * mapped to an equal key. Both cases take a single descent.
+     * @param key the key, which must not be null
+     * @param value the value, which may be null
+     * @return the value previously mapped to the key, or null if there was none
+     */
+    public V put(K key, V value) {
+        return entryOf(insertNode(key)).setValue(value);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value mapped to the key, or null if there is none
+     */
+    public V get(K key) {
+        MapNode<K, V> node = entryOf(findNode(key));
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return true when a value is mapped to the key
+     */
+    public boolean containsKey(K key) {
+        return contains(key);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the live entry of the key, or null if there is none
+     */
+    public Map.Entry<K, V> getEntry(K key) {
+        return entryOf(findNode(key));
+    }
+
+    /**
+     * @return the entry with the smallest key, or null when empty
+     */
+    public Map.Entry<K, V> firstEntry() {
+        return entryOf(firstNode());
+    }
+
+    /**
+     * @return the entry with the largest key, or null when empty
+     */
+    public Map.Entry<K, V> lastEntry() {
+        return entryOf(lastNode());
+    }
+
+    /**
+     * @return the entry with the greatest key less than or equal to key, or null
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+        return entryOf(floorNode(key, true));
+    }
+
+    /**
+     * @return the entry with the smallest key greater than or equal to key, or null
+     */
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return entryOf(ceilingNode(key, true));
+    }
+
+    /**
+     * @return the entry with the greatest key strictly less than key, or null
+     */
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return entryOf(floorNode(key, false));
+    }
+
+    /**
+     * @return the entry with the smallest key strictly greater than key, or null
+     */
+    public Map.Entry<K, V> higherEntry(K key) {
+        return entryOf(ceilingNode(key, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private MapNode<K, V> entryOf(Node<K> node) {
+        return (MapNode<K, V>) node;
+    }
+
+    /**
+     * @return a view of the whole map, reading and writing the live tree
+     */
+    public SortedMap<K, V> asSortedMap() {
+        return new RangeView(null, false, null, false);
+    }
+
+    /**
+     * Returns a view of the entries whose keys lie between the provided
+     * bounds. The view reads and writes the live tree.
+     * @param fromKey low end of the range
+     * @param fromInclusive whether fromKey itself is part of the range
+     * @param toKey high end of the range
+     * @param toInclusive whether toKey itself is part of the range
+     * @return the range view
+     * @throws IllegalArgumentException when fromKey is greater than toKey
+     */
+    public SortedMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (fromKey == null || toKey == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        if (compare(fromKey, toKey) > 0) throw new IllegalArgumentException("fromKey > toKey");
+        return new RangeView(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    /**
+     * @return a live view of the entries whose keys are less than (or equal
+     *      to, when inclusive) toKey
+     */
+    public SortedMap<K, V> headMap(K toKey, boolean inclusive) {
+        if (toKey == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        return new RangeView(null, false, toKey, inclusive);
+    }
+
+    /**
+     * @return a live view of the entries whose keys are greater than (or equal
+     *      to, when inclusive) fromKey
+     */
+    public SortedMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        if (fromKey == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        return new RangeView(fromKey, inclusive, null, false);
+    }
+
+    /**
+     * A SortedMap view of the entries of this tree within a key range. A null
+     * bound means the range is open on that side. Lookups and updates cost a
+     * single descent of the tree, iteration O(log n + k) and size() is a walk
+     * over the k entries of the range.
+     */
+    private class RangeView extends AbstractMap<K, V> implements SortedMap<K, V> {
+        private final K low;
+        private final boolean lowInclusive;
+        private final K high;
+        private final boolean highInclusive;
+
+        RangeView(K low, boolean lowInclusive, K high, boolean highInclusive) {
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.high = high;
+            this.highInclusive = highInclusive;
+        }
+
+        private boolean tooLow(K key) {
+            if (low == null) return false;
+            int compare = compare(key, low);
+            return compare < 0 || (compare == 0 && !lowInclusive);
+        }
+
+        private boolean tooHigh(K key) {
+            if (high == null) return false;
+            int compare = compare(key, high);
+            return compare > 0 || (compare == 0 && !highInclusive);
+        }
+
+        private boolean inRange(K key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        private MapNode<K, V> lowestNode() {
+            MapNode<K, V> node = entryOf(low == null ? firstNode() : ceilingNode(low, lowInclusive));
+            return node == null || tooHigh(node.data) ? null : node;
+        }
+
+        private MapNode<K, V> highestNode() {
+            MapNode<K, V> node = entryOf(high == null ? lastNode() : floorNode(high, highInclusive));
+            return node == null || tooLow(node.data) ? null : node;
+        }
+
+        @SuppressWarnings("unchecked")
+        private MapNode<K, V> nodeInRange(Object key) {
+            K k = (K) key;
+            return inRange(k) ? entryOf(findNode(k)) : null;
+        }
+
+        @Override
+        public V get(Object key) {
+            MapNode<K, V> node = nodeInRange(key);
+            return node == null ? null : node.value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return nodeInRange(key) != null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key)) throw new IllegalArgumentException("key out of range");
+            return RedBlackTreeMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            MapNode<K, V> node = nodeInRange(key);
+            if (node == null) return null;
+            removeNode(node);
+            return node.value;
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return RedBlackTreeMap.this.comparator();
+        }
+
+        @Override
+        public K firstKey() {
+            MapNode<K, V> node = lowestNode();
+            if (node == null) throw new NoSuchElementException();
+            return node.data;
+        }
+
+        @Override
+        public K lastKey() {
+            MapNode<K, V> node = highestNode();
+            if (node == null) throw new NoSuchElementException();
+            return node.data;
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            if (compare(fromKey, toKey) > 0) throw new IllegalArgumentException("fromKey > toKey");
+            if (tooLow(fromKey) || beyondHigh(toKey)) throw new IllegalArgumentException("key out of range");
+            return new RangeView(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            if (tooLow(toKey) || beyondHigh(toKey)) throw new IllegalArgumentException("toKey out of range");
+            return new RangeView(low, lowInclusive, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            if (!inRange(fromKey)) throw new IllegalArgumentException("fromKey out of range");
+            return new RangeView(fromKey, true, high, highInclusive);
+        }
+
+        /**
+         * @return true when key lies above the high bound, treating an
+         *      exclusive high bound as a valid end point of a sub range
+         */
+        private boolean beyondHigh(K key) {
+            return high != null && compare(key, high) > 0;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new RangeIterator(lowestNode());
+                }
+
+                @Override
+                public int size() {
+                    int count = 0;
+                    for (MapNode<K, V> node = lowestNode(); node != null && !tooHigh(node.data);
+                            node = entryOf(successor(node))) {
+                        count++;
+                    }
+                    return count;
+                }
+            };
+        }
+
+        /**
+         * Iterates the entries of the range by following successor links,
+         * starting at the lowest entry in range.
+         */
+        private class RangeIterator implements Iterator<Map.Entry<K, V>> {
+            private MapNode<K, V> next;
+            private MapNode<K, V> lastReturned;
+
+            RangeIterator(MapNode<K, V> first) {
+                next = first;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (next == null) throw new NoSuchElementException();
+                lastReturned = next;
+                next = entryOf(successor(next));
+                if (next != null && tooHigh(next.data)) next = null;
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) throw new IllegalStateException();
+                removeNode(lastReturned);
+                lastReturned = null;
+            }
+        }
+    }
+
+    @Test
+    public void test1() {
+        // put, get and navigation agree with TreeMap
+        RedBlackTreeMap<Integer, String> map = new RedBlackTreeMap<>();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 200; i += 3) {
+            assertEquals(expected.put(i, "v" + i), map.put(i, "v" + i));
+        }
+        assertEquals("v3", map.put(3, "three"));
+        expected.put(3, "three");
+        assertEquals(expected.size(), map.size());
+        assertEquals("three", map.get(3));
+        assertNull(map.get(4));
+        for (int i = -2; i < 205; i++) {
+            assertEquals(expected.floorKey(i), map.floor(i));
+            assertEquals(expected.ceilingKey(i), map.ceiling(i));
+            assertEquals(expected.lowerKey(i), map.lower(i));
+            assertEquals(expected.higherKey(i), map.higher(i));
+            assertEquals(expected.floorEntry(i), map.floorEntry(i));
+        }
+        assertEquals(expected.firstEntry(), map.firstEntry());
+        assertEquals(expected.lastEntry(), map.lastEntry());
+    }
+
+    @Test
+    public void test2() {
+        // range views read and write the live tree
+        RedBlackTreeMap<Integer, String> map = new RedBlackTreeMap<>();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i * 2, "v" + i);
+            expected.put(i * 2, "v" + i);
+        }
+        SortedMap<Integer, String> sub = map.subMap(10, true, 31, false);
+        assertEquals(expected.subMap(10, true, 31, false), sub);
+        assertEquals(Integer.valueOf(10), sub.firstKey());
+        assertEquals(Integer.valueOf(30), sub.lastKey());
+        assertEquals(expected.headMap(7, true), map.headMap(7, true));
+        assertEquals(expected.tailMap(190, false), map.tailMap(190, false));
+        assertEquals(expected.subMap(12, 20), sub.subMap(12, 20));
+
+        map.put(11, "new");
+        assertEquals(12, sub.size());
+        assertSame(map.getEntry(11), map.higherEntry(10));
+        sub.entrySet().iterator().next().setValue("changed");
+        assertEquals("changed", map.get(10));
+        assertEquals("v10", sub.remove(20));
+        assertFalse(map.containsKey(20));
+        assertNull(sub.remove(60));
+        assertTrue(map.containsKey(60));
+        assertThrows(IllegalArgumentException.class, () -> sub.put(50, "out"));
+
+        Iterator<Map.Entry<Integer, String>> it = sub.entrySet().iterator();
+        while (it.hasNext()) if (it.next().getKey() % 4 == 0) it.remove();
+        assertEquals("{10=changed, 11=new, 14=v7, 18=v9, 22=v11, 26=v13, 30=v15}", sub.toString());
+        map.checkRedBlackProperties();
+    }
+
+    @Test
+    public void test3() {
+        // merging keys into the map keeps the values of existing entries
+        RedBlackTreeMap<Integer, String> map = new RedBlackTreeMap<>();
+        for (int i = 0; i < 10; i++) map.put(i * 10, "v" + i);
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) keys.add(i);
+        assertTrue(map.addAll(keys));
+        map.checkRedBlackProperties();
+        assertEquals(100, map.size());
+        assertEquals("v3", map.get(30));
+        assertNull(map.get(31));
+
+        // range views follow a comparator
+        RedBlackTreeMap<Integer, String> reversed = new RedBlackTreeMap<>();
+        reversed.comparator = Comparator.reverseOrder();
+        for (int i = 0; i < 10; i++) reversed.put(i, "v" + i);
+        SortedMap<Integer, String> view = reversed.subMap(7, true, 2, false);
+        assertEquals(List.of(7, 6, 5, 4, 3), new ArrayList<>(view.keySet()));
+        assertSame(reversed.comparator(), view.comparator());
+        assertEquals(List.of(5, 4, 3), new ArrayList<>(view.tailMap(5).keySet()));
+        assertThrows(IllegalArgumentException.class, () -> reversed.subMap(2, true, 7, true));
+        assertThrows(IllegalArgumentException.class, () -> view.put(8, "v8"));
+    }
+}
@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Front end that lets many threads share a red-black tree without any of them
+ * holding a lock or monitor. insert and remove put the operation on a
+ * lock-free queue and return a CompletableFuture. A single writer thread
+ * takes the operations off the queue in batches, applies each batch to a
+ * PersistentRedBlackTree, publishes the resulting version with one volatile
+ * write, and then completes the futures of the batch. Under load, many
+ * updates thereby share one hand-off to the writer and one publication.
+ * Reads are answered from the published version, without queueing.
+ *
+ * A future completes only once its update is visible to reads. Callers
+ * block on the future or continue asynchronously; they never park while
+ * holding a monitor, which would pin a virtual thread to its carrier.
+ * Dependent actions attached without an executor run on the writer thread
+ * and delay the following batches, so they should be short. The writer
+ * thread is started by the first update, and stopped by close.
+ */
+public class RedBlackTreeService<T extends Comparable<T>> implements AutoCloseable {
+
+    private static final int MAX_BATCH = 1 << 10;
+    private static final int NEW = 0, RUNNING = 1, CLOSED = 2;
+
+    /**
+     * An insert or remove waiting in the queue.
+     */
+    private static final class Update<T> {
+        final boolean insert;
+        final T data;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Update(boolean insert, T data) { this.insert = insert; this.data = data; }
+    }
+
+    private final Queue<Update<T>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger state = new AtomicInteger(NEW);
+    private volatile PersistentRedBlackTree<T> current = PersistentRedBlackTree.empty();
+    private volatile Thread writer;
+    private volatile boolean waiting; // set by the writer before it parks on an empty queue
+    private volatile long batches = 0;
+
+    /**
+     * Queues the insert of *data*.
+     * @param data the value to add
+     * @return a future that completes with true if the value was inserted,
+     *      false if it was already stored, or with an IllegalStateException
+     *      when this service is closed
+     * @throws NullPointerException when data is null
+     */
+    public CompletableFuture<Boolean> insert(T data) throws NullPointerException {
+        return submit(new Update<>(true, data));
+    }
+
+    /**
+     * Queues the removal of *data*.
+     * @param data the value to remove
+     * @return a future that completes with true if the value was removed,
+     *      false if it was not stored, or with an IllegalStateException when
+     *      this service is closed
+     * @throws NullPointerException when data is null
+     */
+    public CompletableFuture<Boolean> remove(T data) throws NullPointerException {
+        return submit(new Update<>(false, data));
+    }
+
+    private CompletableFuture<Boolean> submit(Update<T> update) {
+        if(update.data == null) throw new NullPointerException(
+                "This RedBlackTree cannot store null references.");
+        if (state.get() == NEW && state.compareAndSet(NEW, RUNNING)) start();
+        if (state.get() == CLOSED) return rejected(update);
+        queue.offer(update);
+        // an update queued after the writer drained the queue for the last time is taken back
+        if (state.get() == CLOSED && queue.remove(update)) return rejected(update);
+        if (waiting) LockSupport.unpark(writer);
+        return update.result;
+    }
+
+    private static CompletableFuture<Boolean> rejected(Update<?> update) {
+        update.result.completeExceptionally(new IllegalStateException("This RedBlackTreeService is closed."));
+        return update.result;
+    }
+
+    private void start() {
+        Thread thread = new Thread(this::run, "RedBlackTreeService");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    /**
+     * Loop of the writer thread: applies the queued updates in batches
+     * until the service is closed and the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    private void run() {
+        Update<T>[] batch = (Update<T>[]) new Update[MAX_BATCH];
+        boolean[] results = new boolean[MAX_BATCH];
+        RuntimeException[] failures = new RuntimeException[MAX_BATCH];
+        while (true) {
+            int count = 0;
+            Update<T> update;
+            while (count < MAX_BATCH && (update = queue.poll()) != null) batch[count++] = update;
+            if (count == 0) {
+                if (state.get() == CLOSED && queue.isEmpty()) return;
+                waiting = true;
+                // a producer either sees waiting and unparks, or is seen here by isEmpty
+                if (queue.isEmpty() && state.get() != CLOSED) LockSupport.park(this);
+                waiting = false;
+                continue;
+            }
+            PersistentRedBlackTree<T> version = current;
+            for (int i = 0; i < count; i++) {
+                try {
+                    PersistentRedBlackTree<T> next = batch[i].insert
+                            ? version.insert(batch[i].data) : version.remove(batch[i].data);
+                    results[i] = next != version;
+                    version = next;
+                } catch (RuntimeException e) { // such as a ClassCastException from compareTo
+                    failures[i] = e;
+                }
+            }
+            current = version;
+            batches++;
+            for (int i = 0; i < count; i++) {
+                if (failures[i] != null) batch[i].result.completeExceptionally(failures[i]);
+                else batch[i].result.complete(results[i]);
+                batch[i] = null;
+                failures[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting updates. Updates queued before are still applied, and
+     * the writer thread ends once they are.
+     */
+    @Override
+    public void close() {
+        if (state.getAndSet(CLOSED) == CLOSED) return;
+        Thread thread = writer;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return the latest published version of the tree, which holds every
+     *      update whose future has completed
+     */
+    public PersistentRedBlackTree<T> snapshot() {
+        return current;
+    }
+
+    /**
+     * Checks whether the latest published version contains the value *data*.
+     * @param data the data value to test for
+     * @return true if *data* is in the tree, false if it is not in the tree
+     */
+    public boolean contains(T data) {
+        return current.contains(data);
+    }
+
+    /**
+     * Looks up the stored value that is equal to *data*, see PersistentRedBlackTree.find.
+     * @return the stored value equal to *data*, or null if there is none
+     */
+    public T find(T data) {
+        return current.find(data);
+    }
+
+    /**
+     * Get the size of the tree (its number of nodes).
+     * @return the number of nodes in the latest published version
+     */
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * @return the number of batches the writer has applied, each of which
+     *      published one version
+     */
+    public long batches() {
+        return batches;
+    }
+
+    @Test
+    public void test1() throws InterruptedException {
+        // concurrent inserts, then concurrent removes, from 8 threads report each change exactly once
+        RedBlackTreeService<Integer> service = new RedBlackTreeService<>();
+        AtomicInteger inserted = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        runThreads(8, t -> {
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int i = t % 4; i < 1000; i += 4) futures.add(service.insert(i)); // each value from 2 threads
+            for (CompletableFuture<Boolean> future : futures) if (future.join()) inserted.incrementAndGet();
+        });
+        assertEquals(1000, inserted.get());
+        assertEquals(1000, service.size());
+        runThreads(8, t -> {
+            for (int i = t % 4; i < 1000; i += 4) {
+                if (i % 3 == 0 && service.remove(i).join()) removed.incrementAndGet();
+            }
+        });
+        service.close();
+        assertEquals(334, removed.get()); // the multiples of 3 below 1000
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) if (i % 3 != 0) expected.add(i);
+        List<Integer> values = new ArrayList<>();
+        for (Integer value : service.snapshot()) values.add(value);
+        assertEquals(new ArrayList<>(expected), values);
+        assertTrue(service.batches() <= 2000 + 2 * 334);
+    }
+
+    private static void runThreads(int count, java.util.function.IntConsumer body) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            int index = t;
+            threads.add(new Thread(() -> body.accept(index)));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+    }
+
+    @Test
+    public void test2() {
+        // a completed future is visible to reads; duplicate and failing updates; closing
+        RedBlackTreeService<String> service = new RedBlackTreeService<>();
+        assertTrue(service.insert("b").join());
+        assertTrue(service.contains("b"));
+        assertFalse(service.insert("b").join());
+        CompletableFuture<Boolean> a = service.insert("a");
+        CompletableFuture<Boolean> c = service.insert("c");
+        CompletableFuture<Boolean> removed = service.remove("b");
+        assertTrue(a.join() && c.join() && removed.join());
+        assertEquals(2, service.size());
+        assertEquals("a", service.snapshot().first());
+        assertThrows(NullPointerException.class, () -> service.insert(null));
+        service.close();
+        CompletableFuture<Boolean> late = service.insert("d");
+        CompletionException e = assertThrows(CompletionException.class, late::join);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertFalse(service.contains("d"));
+    }
+}
@@ -0,0 +1,174 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Operation counts of a single RedBlackTree, collected while they are
+ * enabled by RedBlackTree.enableMetrics. A tree without metrics only tests
+ * its metrics field for null on each insert, rotation and remove. The
+ * counters are LongAdders and the distributions are Histograms of atomic
+ * buckets, so a TreeMetrics can be read, or published over JMX with
+ * registerMBean, while the tree is being updated.
+ */
+public class TreeMetrics implements TreeStatsMXBean {
+
+    final LongAdder inserts = new LongAdder();
+    final LongAdder duplicates = new LongAdder();
+    final LongAdder removes = new LongAdder();
+    final LongAdder leftRotations = new LongAdder();
+    final LongAdder rightRotations = new LongAdder();
+    final LongAdder recolourings = new LongAdder();
+    final Histogram descentLengths = new Histogram();
+    final Histogram fixupIterations = new Histogram();
+    private final IntSupplier size;
+
+    /**
+     * @param size supplies the current number of values of the tree
+     */
+    TreeMetrics(IntSupplier size) {
+        this.size = size;
+    }
+
+    /**
+     * Records an insert that added a value.
+     * @param descentLength the number of nodes visited to find its position
+     * @param iterations the number of passes of the fix-up loop
+     */
+    void recordInsert(int descentLength, int iterations) {
+        inserts.increment();
+        descentLengths.record(descentLength);
+        fixupIterations.record(iterations);
+    }
+
+    /**
+     * Records an insert that found an equal value already stored.
+     * @param descentLength the number of nodes visited, including the one
+     *      holding the equal value
+     */
+    void recordDuplicate(int descentLength) {
+        duplicates.increment();
+        descentLengths.record(descentLength);
+    }
+
+    /**
+     * @return a snapshot of the current values
+     */
+    public TreeStats snapshot() {
+        return new TreeStats(this);
+    }
+
+    /**
+     * Sets all counts and distributions back to zero.
+     */
+    public void reset() {
+        inserts.reset();
+        duplicates.reset();
+        removes.reset();
+        leftRotations.reset();
+        rightRotations.reset();
+        recolourings.reset();
+        descentLengths.reset();
+        fixupIterations.reset();
+    }
+
+    /**
+     * Registers this object with the platform MBeanServer, so that its
+     * values can be watched, and alerted on, from any JMX client.
+     * @param name the name under which to register, unique among the trees
+     *      of this JVM
+     * @return the ObjectName this object was registered under
+     * @throws IllegalStateException when the name is invalid or taken
+     */
+    public ObjectName registerMBean(String name) throws IllegalStateException {
+        try {
+            ObjectName objectName = new ObjectName("myFirstProject:type=RedBlackTree,name="
+                    + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register metrics as " + name, e);
+        }
+    }
+
+    /**
+     * @param size the number of values of a red-black tree
+     * @return 2*log2(size + 1), rounded down, the height that no red-black
+     *      tree of that size can exceed
+     */
+    static int heightBound(int size) {
+        return 2 * (31 - Integer.numberOfLeadingZeros(size + 1));
+    }
+
+    public int getSize() { return size.getAsInt(); }
+    public long getInserts() { return inserts.sum(); }
+    public long getDuplicates() { return duplicates.sum(); }
+    public long getRemoves() { return removes.sum(); }
+    public long getLeftRotations() { return leftRotations.sum(); }
+    public long getRightRotations() { return rightRotations.sum(); }
+    public long getRecolourings() { return recolourings.sum(); }
+    public int getDescentLengthP50() { return descentLengths.percentile(50); }
+    public int getDescentLengthP99() { return descentLengths.percentile(99); }
+    public int getDescentLengthMax() { return descentLengths.max(); }
+    public int getFixupIterationsP99() { return fixupIterations.percentile(99); }
+    public int getFixupIterationsMax() { return fixupIterations.max(); }
+    public int getHeightBound() { return heightBound(getSize()); }
+    public boolean isHeightBoundExceeded() { return getDescentLengthMax() > getHeightBound(); }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Distribution of small non-negative ints, such as path lengths, with one
+     * exact bucket per value. Unlike a general HdrHistogram it needs no
+     * logarithmic buckets: a red-black tree of 2^31 values is at most 62
+     * levels high, so values above the last bucket are counted in it.
+     */
+    static final class Histogram {
+        static final int BUCKETS = 64;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void record(int value) {
+            counts.incrementAndGet(Math.min(value, BUCKETS - 1));
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) count += counts.get(i);
+            return count;
+        }
+
+        /**
+         * @return the largest recorded value, or 0 if none was recorded
+         */
+        int max() {
+            for (int i = BUCKETS - 1; i > 0; i--) if (counts.get(i) != 0) return i;
+            return 0;
+        }
+
+        /**
+         * @param percent between 0 and 100
+         * @return the smallest recorded value that at least percent of the
+         *      recorded values do not exceed, or 0 if none was recorded
+         */
+        int percentile(double percent) {
+            long rank = (long) Math.ceil(count() * percent / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank && seen > 0) return i;
+            }
+            return 0;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        }
+    }
+}
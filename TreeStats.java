@@ -0,0 +1,69 @@
+/**
+ * Immutable snapshot of the operation counts of a RedBlackTree, as returned
+ * by TreeMetrics.snapshot. All values are read at the time the snapshot is
+ * taken; under concurrent updates they need not be consistent with each
+ * other.
+ */
+public final class TreeStats implements TreeStatsMXBean {
+
+    private final int size;
+    private final long inserts;
+    private final long duplicates;
+    private final long removes;
+    private final long leftRotations;
+    private final long rightRotations;
+    private final long recolourings;
+    private final int descentLengthP50;
+    private final int descentLengthP99;
+    private final int descentLengthMax;
+    private final int fixupIterationsP99;
+    private final int fixupIterationsMax;
+    private final int heightBound;
+
+    /**
+     * Copies the current values of stats.
+     * @param stats the statistics to copy
+     */
+    public TreeStats(TreeStatsMXBean stats) {
+        size = stats.getSize();
+        inserts = stats.getInserts();
+        duplicates = stats.getDuplicates();
+        removes = stats.getRemoves();
+        leftRotations = stats.getLeftRotations();
+        rightRotations = stats.getRightRotations();
+        recolourings = stats.getRecolourings();
+        descentLengthP50 = stats.getDescentLengthP50();
+        descentLengthP99 = stats.getDescentLengthP99();
+        descentLengthMax = stats.getDescentLengthMax();
+        fixupIterationsP99 = stats.getFixupIterationsP99();
+        fixupIterationsMax = stats.getFixupIterationsMax();
+        heightBound = TreeMetrics.heightBound(size);
+    }
+
+    public int getSize() { return size; }
+    public long getInserts() { return inserts; }
+    public long getDuplicates() { return duplicates; }
+    public long getRemoves() { return removes; }
+    public long getLeftRotations() { return leftRotations; }
+    public long getRightRotations() { return rightRotations; }
+    public long getRecolourings() { return recolourings; }
+    public int getDescentLengthP50() { return descentLengthP50; }
+    public int getDescentLengthP99() { return descentLengthP99; }
+    public int getDescentLengthMax() { return descentLengthMax; }
+    public int getFixupIterationsP99() { return fixupIterationsP99; }
+    public int getFixupIterationsMax() { return fixupIterationsMax; }
+    public int getHeightBound() { return heightBound; }
+    public boolean isHeightBoundExceeded() { return descentLengthMax > heightBound; }
+
+    /**
+     * @return the values of this snapshot on a single line
+     */
+    @Override
+    public String toString() {
+        return "TreeStats[size=" + size + ", inserts=" + inserts + ", duplicates=" + duplicates
+                + ", removes=" + removes + ", rotations=" + leftRotations + "L/" + rightRotations
+                + "R, recolourings=" + recolourings + ", descent p50/p99/max=" + descentLengthP50
+                + "/" + descentLengthP99 + "/" + descentLengthMax + ", fixup p99/max="
+                + fixupIterationsP99 + "/" + fixupIterationsMax + ", heightBound=" + heightBound + "]";
+    }
+}
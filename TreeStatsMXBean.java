@@ -0,0 +1,84 @@
+/**
+ * Management interface through which TreeMetrics exposes the operation
+ * counts of a RedBlackTree over JMX, and which TreeStats implements as an
+ * immutable snapshot of them. Descent lengths count the nodes visited from
+ * the root down to the position of a value, fix-up iterations count the
+ * passes of the recolouring loop of enforceRBTreePropertiesAfterInsert.
+ */
+public interface TreeStatsMXBean {
+
+    /**
+     * @return the number of values in the tree
+     */
+    int getSize();
+
+    /**
+     * @return the number of values added to the tree
+     */
+    long getInserts();
+
+    /**
+     * @return the number of inserts rejected because an equal value was
+     *      already stored
+     */
+    long getDuplicates();
+
+    /**
+     * @return the number of values removed from the tree
+     */
+    long getRemoves();
+
+    /**
+     * @return the number of left rotations, where a right child moved up
+     */
+    long getLeftRotations();
+
+    /**
+     * @return the number of right rotations, where a left child moved up
+     */
+    long getRightRotations();
+
+    /**
+     * @return the number of fix-up iterations that only recoloured nodes
+     */
+    long getRecolourings();
+
+    /**
+     * @return the median descent length of inserts and duplicates
+     */
+    int getDescentLengthP50();
+
+    /**
+     * @return the 99th percentile descent length of inserts and duplicates
+     */
+    int getDescentLengthP99();
+
+    /**
+     * @return the longest descent seen, which is the height of the tree at
+     *      the time it was recorded
+     */
+    int getDescentLengthMax();
+
+    /**
+     * @return the 99th percentile of fix-up iterations per insert
+     */
+    int getFixupIterationsP99();
+
+    /**
+     * @return the most fix-up iterations seen for a single insert
+     */
+    int getFixupIterationsMax();
+
+    /**
+     * @return 2*log2(size + 1), the height no red-black tree of this size
+     *      can exceed
+     */
+    int getHeightBound();
+
+    /**
+     * @return true when the longest descent seen is longer than the height
+     *      bound of the current size, which means the tree has lost its
+     *      balance or values were removed since that descent was recorded
+     */
+    boolean isHeightBoundExceeded();
+}
@@ -0,0 +1,75 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares RedBlackTree, which allocates a node per insert, with
+ * ArenaRedBlackTree, which reuses the nodes of removed values, under churn:
+ * a tree of n values has its oldest value removed and a new one inserted,
+ * again and again, and is then cleared and refilled. Besides the throughput,
+ * each line reports the bytes allocated per operation by the benchmark thread
+ * and the collections and collection time during the measured rounds. The
+ * values are boxed in advance, so that only the trees allocate.
+ *
+ * Run with: java -cp .:bench ArenaChurnBenchmark [sizes...]
+ */
+public class ArenaChurnBenchmark {
+
+    private static final int OPERATIONS = 2_000_000;
+
+    public static void main(String[] args) {
+        for (int n : Bench.sizes(args, 100_000, 1_000_000)) {
+            Integer[] keys = Bench.shuffledKeys(2 * n, 7);
+            System.out.println("n = " + n);
+            churn("RedBlackTree", new RedBlackTree<>(), keys, n);
+            churn("ArenaRedBlackTree", ArenaRedBlackTree.withCapacity(n), keys, n);
+        }
+    }
+
+    private static void churn(String label, RedBlackTree<Integer> tree, Integer[] keys, int n) {
+        for (int i = 0; i < n; i++) tree.insert(keys[i]);
+        int[] next = {n};
+        measure(label + ": remove oldest, insert", 2L * OPERATIONS, () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                int at = next[0]++;
+                tree.remove(keys[(at - n) % keys.length]);
+                tree.insert(keys[at % keys.length]);
+            }
+            return tree.size();
+        });
+        measure(label + ": clear, refill", n, () -> {
+            tree.clear();
+            for (int i = 0; i < n; i++) tree.insert(keys[i]);
+            next[0] = n;
+            return tree.size();
+        });
+    }
+
+    /**
+     * Runs Bench.measure, then prints the allocation and collection figures
+     * of its rounds.
+     */
+    private static void measure(String label, long opsPerRound, Bench.Round round) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long bytes = threads.getThreadAllocatedBytes(thread);
+        long[] gc = collections();
+        Bench.measure(label, opsPerRound, round);
+        long[] gcAfter = collections();
+        long rounds = Bench.warmupRounds + Bench.measureRounds;
+        double bytesPerOp = (threads.getThreadAllocatedBytes(thread) - bytes) / (double) (rounds * opsPerRound);
+        System.out.printf("%-52s %8.1f bytes/op, %d collections, %d ms in GC%n",
+                "", bytesPerOp, gcAfter[0] - gc[0], gcAfter[1] - gc[1]);
+    }
+
+    /**
+     * @return the number of collections and the milliseconds spent in them so far
+     */
+    private static long[] collections() {
+        long[] total = new long[2];
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total[0] += Math.max(0, bean.getCollectionCount());
+            total[1] += Math.max(0, bean.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares batched lookups by RedBlackTree.containsAll against calling
+ * contains for every probe, for batches of 1K to 100K random probes of
+ * which about half are in the tree. Batches are measured both unordered,
+ * as they arrive from a join, and already sorted.
+ *
+ * Run with: java -Xmx4g -cp .:bench BatchLookupBenchmark [sizes...]
+ */
+public class BatchLookupBenchmark {
+
+    private static final int[] BATCHES = {1_000, 10_000, 100_000};
+
+    public static void main(String[] args) {
+        for (int n : Bench.sizes(args, 100_000, 1_000_000, 10_000_000)) {
+            RedBlackTree<Integer> tree = RedBlackTree.fromSorted(sortedKeys(n));
+            System.out.println("n = " + n);
+            for (int batch : BATCHES) {
+                Random random = new Random(batch);
+                Integer[] probes = new Integer[batch];
+                for (int i = 0; i < batch; i++) probes[i] = random.nextInt(2 * n);
+                Integer[] sorted = probes.clone();
+                Arrays.sort(sorted);
+                boolean[] out = new boolean[batch];
+                int rounds = Math.max(1, 1_000_000 / batch);
+
+                Bench.measure("batch " + batch + ": contains loop", (long) rounds * batch, () -> {
+                    long found = 0;
+                    for (int r = 0; r < rounds; r++)
+                        for (Integer probe : probes) if (tree.contains(probe)) found++;
+                    return found;
+                });
+                Bench.measure("batch " + batch + ": containsAll, unordered", (long) rounds * batch, () -> {
+                    long found = 0;
+                    for (int r = 0; r < rounds; r++) {
+                        tree.containsAll(probes, out);
+                        found += out[r % batch] ? 1 : 0;
+                    }
+                    return found;
+                });
+                Bench.measure("batch " + batch + ": containsAll, sorted", (long) rounds * batch, () -> {
+                    long found = 0;
+                    for (int r = 0; r < rounds; r++) {
+                        tree.containsAll(sorted, out);
+                        found += out[r % batch] ? 1 : 0;
+                    }
+                    return found;
+                });
+            }
+        }
+    }
+
+    private static Integer[] sortedKeys(int n) {
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) keys[i] = 2 * i;
+        return keys;
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.Random;
+
+/**
+ * Small timing harness shared by the quick benchmarks in this directory, each
+ * a plain main method that measures its workloads through this class: a
+ * number of warm-up rounds to let the JIT settle, followed by measured rounds
+ * whose best and mean throughput are printed. It runs in one JVM, without
+ * forks or blackholes, so its numbers are a rough guide only. The JMH suite in
+ * jmh/, which reaches the tree classes through method handles, is the one to
+ * use for results that are compared between releases, and holds the insert,
+ * lookup, concurrency and OrderedSet comparisons.
+ */
+public final class Bench {
+
+    /**
+     * One round of a workload.
+     */
+    public interface Round {
+        /**
+         * Runs the workload once.
+         * @return a value derived from the work, consumed so the JIT cannot
+         *      eliminate the work as dead code
+         */
+        long run();
+    }
+
+    public static int warmupRounds = Integer.getInteger("bench.warmup", 5);
+    public static int measureRounds = Integer.getInteger("bench.rounds", 10);
+
+    private static volatile long sink;
+
+    private Bench() { }
+
+    /**
+     * Measures the provided round and prints one result line.
+     * @param label is the name printed in front of the result
+     * @param opsPerRound is the number of operations a single round performs
+     * @param round is the workload to time
+     * @return the mean throughput over the measured rounds, in ops/ms
+     */
+    public static double measure(String label, long opsPerRound, Round round) {
+        for (int i = 0; i < warmupRounds; i++) sink += round.run();
+        double best = 0;
+        long total = 0;
+        for (int i = 0; i < measureRounds; i++) {
+            long start = System.nanoTime();
+            sink += round.run();
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            total += elapsed;
+            best = Math.max(best, opsPerRound * 1e6 / elapsed);
+        }
+        double mean = opsPerRound * measureRounds * 1e6 / total;
+        System.out.printf("%-52s %14.1f ops/ms (best %14.1f)%n", label, mean, best);
+        return mean;
+    }
+
+    /**
+     * @param n the number of keys to generate
+     * @param seed seed for the shuffle
+     * @return the integers 0, 2, 4, ... 2(n-1) in a random order; odd numbers
+     *      can be used as guaranteed misses
+     */
+    public static Integer[] shuffledKeys(int n, long seed) {
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) keys[i] = 2 * i;
+        Random random = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+        return keys;
+    }
+
+    /**
+     * Parses benchmark sizes from the command line.
+     * @param args command line arguments, each one a size such as 1000 or 1m
+     * @param defaults the sizes to use when no arguments are given
+     * @return the parsed sizes
+     */
+    public static int[] sizes(String[] args, int... defaults) {
+        if (args.length == 0) return defaults;
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i].toLowerCase();
+            int scale = 1;
+            if (arg.endsWith("k")) scale = 1_000;
+            else if (arg.endsWith("m")) scale = 1_000_000;
+            if (scale != 1) arg = arg.substring(0, arg.length() - 1);
+            sizes[i] = Integer.parseInt(arg) * scale;
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Ingests a stream of timestamped events, keeping the most recent 1M of them,
+ * first with a BoundedRedBlackTree that evicts as it inserts, then the way a
+ * sweeper does it: inserting into a plain RedBlackTree and, every 100K
+ * events, rebuilding it from its newest values. Besides the throughput, the
+ * longest time taken by any 10K consecutive events shows the pauses of the
+ * rebuilds, and the largest size the memory the tree holds.
+ *
+ * Run with: java -Xmx4g -cp .:bench BoundedIngestBenchmark [events...]
+ */
+public class BoundedIngestBenchmark {
+
+    private static final int KEEP = 1_000_000;
+    private static final int SWEEP_EVERY = 100_000;
+    private static final int CHUNK = 10_000;
+
+    public static void main(String[] args) {
+        for (int n : Bench.sizes(args, 10_000_000)) {
+            for (int round = 0; round < 3; round++) {
+                System.out.println("events = " + n + ", round " + round);
+                bounded(n);
+                sweeper(n);
+            }
+        }
+    }
+
+    private static void bounded(int n) {
+        BoundedRedBlackTree<Long> tree = BoundedRedBlackTree.withMaxSize(KEEP);
+        long start = System.nanoTime();
+        long chunkStart = start;
+        long worst = 0;
+        int largest = 0;
+        for (int i = 0; i < n; i++) {
+            tree.insert(timestamp(i));
+            if (i % CHUNK == CHUNK - 1) {
+                long now = System.nanoTime();
+                worst = Math.max(worst, now - chunkStart);
+                chunkStart = now;
+                largest = Math.max(largest, tree.size());
+            }
+        }
+        report("BoundedRedBlackTree", n, System.nanoTime() - start, worst, largest);
+    }
+
+    private static void sweeper(int n) {
+        RedBlackTree<Long> tree = new RedBlackTree<>();
+        long start = System.nanoTime();
+        long chunkStart = start;
+        long worst = 0;
+        int largest = 0;
+        for (int i = 0; i < n; i++) {
+            tree.insert(timestamp(i));
+            if (i % SWEEP_EVERY == SWEEP_EVERY - 1 && tree.size() > KEEP) {
+                largest = Math.max(largest, tree.size());
+                Long[] values = tree.stream().toArray(Long[]::new);
+                tree = RedBlackTree.fromSorted(java.util.Arrays.copyOfRange(values, values.length - KEEP, values.length));
+            }
+            if (i % CHUNK == CHUNK - 1) {
+                long now = System.nanoTime();
+                worst = Math.max(worst, now - chunkStart);
+                chunkStart = now;
+                largest = Math.max(largest, tree.size());
+            }
+        }
+        report("RedBlackTree with sweeper rebuilds", n, System.nanoTime() - start, worst, largest);
+    }
+
+    /**
+     * @return the timestamp of event i: ascending, with a little jitter
+     */
+    private static Long timestamp(int i) {
+        return 1000L * i + (i * 7919L) % 1500;
+    }
+
+    private static void report(String label, int n, long elapsed, long worst, int largest) {
+        System.out.printf("%-36s %10.1f events/ms, slowest %d events %6.1f ms, largest size %d%n",
+                label, n * 1e6 / elapsed, CHUNK, worst / 1e6, largest);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Ingests bursts of 100K random values into a tree that already holds n
+ * values, built from sorted values at the start of each round, with a
+ * lookup of every value of the burst after it. The plain RedBlackTree
+ * inserts value by value. BufferedRedBlackTree absorbs the burst in its
+ * buffer, and merges it every 8K values with bulk inserts, or, with a buffer
+ * as large as the burst, once with a linear merge.
+ *
+ * Run with: java -Xmx4g -cp .:bench BufferedIngestBenchmark [n...]
+ */
+public class BufferedIngestBenchmark {
+
+    private static final int BURST = 100_000;
+    private static final int BURSTS = 10;
+
+    public static void main(String[] args) {
+        for (int n : Bench.sizes(args, 100_000, 1_000_000)) {
+            Integer[] keys = Bench.shuffledKeys(n + BURST * BURSTS, 1);
+            Integer[] preloaded = java.util.Arrays.copyOf(keys, n);
+            java.util.Arrays.sort(preloaded);
+            System.out.println("n = " + n + ", " + BURSTS + " bursts of " + BURST);
+            Bench.measure("RedBlackTree.insert", BURST * BURSTS, () -> {
+                RedBlackTree<Integer> tree = RedBlackTree.fromSorted(preloaded);
+                long found = 0;
+                for (int b = 0; b < BURSTS; b++) {
+                    int from = n + b * BURST;
+                    for (int i = from; i < from + BURST; i++) tree.insert(keys[i]);
+                    for (int i = from; i < from + BURST; i++) if (tree.contains(keys[i])) found++;
+                }
+                return found;
+            });
+            buffered("BufferedRedBlackTree, buffer of 8K", keys, preloaded, 1 << 13);
+            buffered("BufferedRedBlackTree, buffer of a burst", keys, preloaded, BURST);
+        }
+    }
+
+    private static void buffered(String label, Integer[] keys, Integer[] preloaded, int bufferSize) {
+        int n = preloaded.length;
+        Bench.measure(label, BURST * BURSTS, () -> {
+            BufferedRedBlackTree<Integer> set =
+                    BufferedRedBlackTree.withBufferSize(RedBlackTree.fromSorted(preloaded), bufferSize);
+            long found = 0;
+            for (int b = 0; b < BURSTS; b++) {
+                int from = n + b * BURST;
+                for (int i = from; i < from + BURST; i++) set.add(keys[i]);
+                for (int i = from; i < from + BURST; i++) if (set.contains(keys[i])) found++;
+            }
+            return found;
+        });
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the ways of loading sorted data into a RedBlackTree: one insert per
+ * value in ascending order, fromSorted, which links a balanced tree in a single
+ * pass, and addAll, which detects the sorted run. The last case merges a second
+ * sorted batch into a tree that already holds the first one.
+ *
+ * Run with: java -cp .:bench BulkLoadBenchmark [sizes...]
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) {
+        for (int n : Bench.sizes(args, 100_000, 1_000_000)) {
+            Integer[] sorted = Bench.shuffledKeys(n, 42);
+            Arrays.sort(sorted);
+            List<Integer> sortedList = Arrays.asList(sorted);
+            System.out.println("n = " + n);
+
+            Bench.measure("ascending insert", n, () -> {
+                RedBlackTree<Integer> tree = new RedBlackTree<>();
+                for (Integer key : sorted) tree.insert(key);
+                return tree.size();
+            });
+            Bench.measure("fromSorted", n, () -> RedBlackTree.fromSorted(sorted).size());
+            Bench.measure("addAll, sorted run", n, () -> {
+                RedBlackTree<Integer> tree = new RedBlackTree<>();
+                tree.addAll(sortedList);
+                return tree.size();
+            });
+
+            // the odd keys, merged into a tree holding the even ones
+            List<Integer> odd = new ArrayList<>(n);
+            for (Integer key : sorted) odd.add(key + 1);
+            Bench.measure("merge second batch, insert", n, () -> {
+                RedBlackTree<Integer> tree = RedBlackTree.fromSorted(sorted);
+                for (Integer key : odd) tree.insert(key);
+                return tree.size();
+            });
+            Bench.measure("merge second batch, addAll", n, () -> {
+                RedBlackTree<Integer> tree = RedBlackTree.fromSorted(sorted);
+                tree.addAll(odd);
+                return tree.size();
+            });
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.Comparator;
+
+/**
+ * Compares three ways of keeping records sorted by a long field in a
+ * RedBlackTree: wrapping each record in an adapter whose compareTo compares
+ * the field, which is what RedBlackTree's natural ordering used to require,
+ * a tree created withComparator(Comparator.comparingLong(...)), and a tree
+ * created withLongKey, which keeps the key in each node and compares longs
+ * on the way down. Adapters are allocated per insert and per lookup, as
+ * callers of the natural ordering must. Before measuring, trees of Integer
+ * and String values run through the same code, so that the compareTo call
+ * in the tree sees several receiver types, as in a real application.
+ *
+ * Run with: java -cp .:bench KeyedOrderBenchmark [sizes...]
+ */
+public class KeyedOrderBenchmark {
+
+    static final class Order {
+        final long id;
+        final String customer;
+
+        Order(long id, String customer) {
+            this.id = id;
+            this.customer = customer;
+        }
+    }
+
+    static final class OrderById implements Comparable<OrderById> {
+        final Order order;
+
+        OrderById(Order order) {
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(OrderById other) {
+            return Long.compare(order.id, other.order.id);
+        }
+    }
+
+    public static void main(String[] args) {
+        pollute();
+        for (int n : Bench.sizes(args, 1_000, 100_000, 1_000_000)) {
+            Integer[] ids = Bench.shuffledKeys(n, 42);
+            Order[] orders = new Order[n];
+            for (int i = 0; i < n; i++) orders[i] = new Order(ids[i], "customer " + (ids[i] % 100));
+            System.out.println("n = " + n);
+
+            Bench.measure("insert, Comparable adapter", n, () -> {
+                RedBlackTree<OrderById> tree = new RedBlackTree<>();
+                for (Order order : orders) tree.insert(new OrderById(order));
+                return tree.size();
+            });
+            Bench.measure("insert, withComparator", n, () -> {
+                RedBlackTree<Order> tree = RedBlackTree.withComparator(Comparator.comparingLong(o -> o.id));
+                for (Order order : orders) tree.insert(order);
+                return tree.size();
+            });
+            Bench.measure("insert, withLongKey", n, () -> {
+                RedBlackTree<Order> tree = RedBlackTree.withLongKey(o -> o.id);
+                for (Order order : orders) tree.insert(order);
+                return tree.size();
+            });
+
+            RedBlackTree<OrderById> adapted = new RedBlackTree<>();
+            RedBlackTree<Order> compared = RedBlackTree.withComparator(Comparator.comparingLong(o -> o.id));
+            RedBlackTree<Order> keyed = RedBlackTree.withLongKey(o -> o.id);
+            for (Order order : orders) {
+                adapted.insert(new OrderById(order));
+                compared.insert(order);
+                keyed.insert(order);
+            }
+            Bench.measure("contains, Comparable adapter", n, () -> {
+                long found = 0;
+                for (Order order : orders) if (adapted.contains(new OrderById(order))) found++;
+                return found;
+            });
+            Bench.measure("contains, withComparator", n, () -> {
+                long found = 0;
+                for (Order order : orders) if (compared.contains(order)) found++;
+                return found;
+            });
+            Bench.measure("contains, withLongKey", n, () -> {
+                long found = 0;
+                for (Order order : orders) if (keyed.contains(order)) found++;
+                return found;
+            });
+        }
+    }
+
+    /**
+     * Runs inserts and lookups of other value types through the tree.
+     */
+    private static void pollute() {
+        for (int round = 0; round < 20; round++) {
+            RedBlackTree<Integer> integers = new RedBlackTree<>();
+            RedBlackTree<String> strings = new RedBlackTree<>();
+            for (Integer key : Bench.shuffledKeys(10_000, round)) {
+                integers.insert(key);
+                strings.insert(key.toString());
+            }
+            for (int i = 0; i < 10_000; i++) {
+                integers.contains(i);
+                strings.contains(Integer.toString(i));
+            }
+        }
+    }
+}
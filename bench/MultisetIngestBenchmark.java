@@ -0,0 +1,59 @@
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Counts a stream of values with many repeats, drawn from a skewed
+ * distribution over a fixed number of distinct values, first with a
+ * MultisetRedBlackTree that counts in its nodes, then the way it is done
+ * without one: a RedBlackTree for the order and a HashMap of Integer counts
+ * beside it. After ingesting, both answer the median.
+ *
+ * Run with: java -cp .:bench MultisetIngestBenchmark [distinct values...]
+ */
+public class MultisetIngestBenchmark {
+
+    private static final int STREAM = 4_000_000;
+
+    public static void main(String[] args) {
+        for (int distinct : Bench.sizes(args, 1_000, 100_000)) {
+            Integer[] stream = stream(distinct);
+            System.out.println("distinct = " + distinct + ", stream = " + STREAM);
+            Bench.measure("MultisetRedBlackTree.insert", STREAM, () -> {
+                MultisetRedBlackTree<Integer> tree = new MultisetRedBlackTree<>();
+                for (Integer value : stream) tree.insert(value);
+                return tree.percentile(50) + tree.totalCount();
+            });
+            Bench.measure("RedBlackTree.insert + HashMap.merge", STREAM, () -> {
+                RedBlackTree<Integer> tree = new RedBlackTree<>();
+                HashMap<Integer, Integer> counts = new HashMap<>();
+                for (Integer value : stream) {
+                    tree.insert(value);
+                    counts.merge(value, 1, Integer::sum);
+                }
+                int half = (STREAM + 1) / 2;
+                int seen = 0;
+                for (Integer value : tree) {
+                    seen += counts.get(value);
+                    if (seen >= half) return value + counts.size();
+                }
+                return 0;
+            });
+        }
+    }
+
+    /**
+     * @return STREAM values out of distinct ones, small values far more
+     *      often than large ones
+     */
+    private static Integer[] stream(int distinct) {
+        Integer[] values = new Integer[distinct];
+        for (int i = 0; i < distinct; i++) values[i] = i;
+        Integer[] stream = new Integer[STREAM];
+        Random random = new Random(7);
+        for (int i = 0; i < STREAM; i++) {
+            double u = random.nextDouble();
+            stream[i] = values[(int) (u * u * u * distinct)];
+        }
+        return stream;
+    }
+}
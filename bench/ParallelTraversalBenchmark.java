@@ -0,0 +1,39 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures aggregation over every value of a RedBlackTree: the string
+ * traversal that was the only way to visit all values before, the fail-fast
+ * iterator, sequential and parallel streams over the subtree spliterator,
+ * and parallelReduce, which hands one subtree to each fork/join task.
+ *
+ * Run with: java -cp .:bench ParallelTraversalBenchmark [sizes...]
+ */
+public class ParallelTraversalBenchmark {
+
+    public static void main(String[] args) {
+        for (int n : Bench.sizes(args, 100_000, 10_000_000)) {
+            RedBlackTree<Integer> tree = new RedBlackTree<>();
+            for (Integer key : Bench.shuffledKeys(n, 42)) tree.insert(key);
+            System.out.println("n = " + n + ", common pool parallelism = "
+                    + ForkJoinPool.getCommonPoolParallelism());
+
+            if (n <= 100_000) {
+                Bench.measure("toInOrderString and parse", n, () -> {
+                    String values = tree.toInOrderString();
+                    long sum = 0;
+                    for (String value : values.substring(2, values.length() - 2).split(", "))
+                        sum += Integer.parseInt(value);
+                    return sum;
+                });
+            }
+            Bench.measure("iterator", n, () -> {
+                long sum = 0;
+                for (Integer value : tree) sum += value;
+                return sum;
+            });
+            Bench.measure("stream", n, () -> tree.stream().mapToLong(Integer::longValue).sum());
+            Bench.measure("parallelStream", n, () -> tree.parallelStream().mapToLong(Integer::longValue).sum());
+            Bench.measure("parallelReduce", n, () -> tree.parallelReduce(0L, (sum, value) -> sum + value, Long::sum));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Measures checkpointing a RedBlackTree of Integers to a local file and
+ * restoring it: the text round trip through toInOrderString, parsing and one
+ * insert per value, against save and load with and without a checksum. The
+ * binary results are values per millisecond; at 4 bytes per key, 250 of them
+ * make 1 MB/s.
+ *
+ * Run with: java -Xmx4g -cp .:bench SerializationBenchmark [sizes...] [directory]
+ */
+public class SerializationBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(System.getProperty("java.io.tmpdir"));
+        if (args.length > 0 && !Character.isDigit(args[args.length - 1].charAt(0))) {
+            directory = Path.of(args[args.length - 1]);
+            args = Arrays.copyOf(args, args.length - 1);
+        }
+        Path file = Files.createTempFile(directory, "tree", ".rbt");
+        try {
+            for (int n : Bench.sizes(args, 1_000_000, 10_000_000)) {
+                RedBlackTree<Integer> tree = new RedBlackTree<>();
+                for (Integer key : Bench.shuffledKeys(n, 42)) tree.insert(key);
+                System.out.println("n = " + n);
+
+                if (n <= 1_000_000) {
+                    Bench.measure("text, toInOrderString and insert", n, () -> {
+                        String text = tree.toInOrderString();
+                        RedBlackTree<Integer> loaded = new RedBlackTree<>();
+                        for (String value : text.substring(2, text.length() - 2).split(", "))
+                            loaded.insert(Integer.parseInt(value));
+                        return loaded.size();
+                    });
+                }
+                for (boolean checksum : new boolean[] {false, true}) {
+                    String suffix = checksum ? ", checksum" : "";
+                    Bench.measure("save" + suffix, n, () -> {
+                        try {
+                            tree.save(file, KeyCodec.INTEGER, checksum);
+                            return Files.size(file);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    Bench.measure("load" + suffix, n, () -> {
+                        try {
+                            RedBlackTree<Integer> loaded = new RedBlackTree<>();
+                            loaded.load(file, KeyCodec.INTEGER);
+                            return loaded.size();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * Compares combining two RedBlackTrees with union and parallelUnion against
+ * inserting every value of one tree into the other, for two trees of equal
+ * size and for a tree 1000 times smaller merged into a large one. The set
+ * operations consume their argument, so every round builds fresh trees,
+ * and only the combining step is timed; for that reason this benchmark
+ * does its own timing instead of using Bench.measure.
+ *
+ * Run with: java -Xms3g -Xmx3g -cp .:bench SetAlgebraBenchmark [sizes...]
+ */
+public class SetAlgebraBenchmark {
+
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        for (int n : Bench.sizes(args, 100_000, 1_000_000)) {
+            System.out.println("n = " + n);
+            for (int m : new int[] {n, n / 1000}) {
+                Integer[] large = values(n, 1);
+                Integer[] small = values(m, 2);
+                String label = n + " and " + m + ": ";
+                measure(label + "insert each", large, small, (a, b) -> {
+                    for (Integer value : b) a.insert(value);
+                });
+                measure(label + "union", large, small, RedBlackTree::union);
+                measure(label + "parallelUnion", large, small, RedBlackTree::parallelUnion);
+            }
+        }
+    }
+
+    private static void measure(String label, Integer[] large, Integer[] small,
+                                BiConsumer<RedBlackTree<Integer>, RedBlackTree<Integer>> combine) {
+        double best = 0;
+        long total = 0;
+        for (int round = 0; round < Bench.warmupRounds + Bench.measureRounds; round++) {
+            RedBlackTree<Integer> a = RedBlackTree.fromSorted(large);
+            RedBlackTree<Integer> b = RedBlackTree.fromSorted(small);
+            long start = System.nanoTime();
+            combine.accept(a, b);
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            sink += a.size();
+            if (round < Bench.warmupRounds) continue;
+            total += elapsed;
+            best = Math.max(best, small.length * 1e6 / elapsed);
+        }
+        double mean = (double) small.length * Bench.measureRounds * 1e6 / total;
+        System.out.printf("%-52s %14.1f values/ms (best %14.1f)%n", label, mean, best);
+    }
+
+    /**
+     * @return n distinct values in ascending order
+     */
+    private static Integer[] values(int n, long seed) {
+        Random random = new Random(seed);
+        return random.ints(0, 4 * n).distinct().limit(n).sorted().boxed().toArray(Integer[]::new);
+    }
+}
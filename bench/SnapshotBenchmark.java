@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares taking a point-in-time view of the index by copying a RedBlackTree
+ * (what analytics readers had to do under a lock) with AtomicRedBlackTree's
+ * snapshot, and measures what path copying costs the writers compared to
+ * updating a mutable RedBlackTree in place.
+ *
+ * Run with: java -cp .:bench SnapshotBenchmark [sizes...]
+ */
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) {
+        for (int n : Bench.sizes(args, 100_000, 1_000_000)) {
+            Integer[] keys = Bench.shuffledKeys(n, 42);
+            System.out.println("n = " + n);
+
+            RedBlackTree<Integer> mutable = new RedBlackTree<>();
+            AtomicRedBlackTree<Integer> atomic = new AtomicRedBlackTree<>();
+            for (Integer key : keys) {
+                mutable.insert(key);
+                atomic.insert(key);
+            }
+            Bench.measure("view by copying a RedBlackTree", 1, () -> {
+                List<Integer> values = new ArrayList<>(mutable.size());
+                for (Integer value : mutable) values.add(value);
+                return RedBlackTree.fromSorted(values.iterator(), values.size()).size();
+            });
+            Bench.measure("view by AtomicRedBlackTree.snapshot", 1, () -> atomic.snapshot().size());
+
+            Bench.measure("insert, RedBlackTree", n, () -> {
+                RedBlackTree<Integer> tree = new RedBlackTree<>();
+                for (Integer key : keys) tree.insert(key);
+                return tree.size();
+            });
+            Bench.measure("insert, AtomicRedBlackTree", n, () -> {
+                AtomicRedBlackTree<Integer> tree = new AtomicRedBlackTree<>();
+                for (Integer key : keys) tree.insert(key);
+                return tree.size();
+            });
+            Bench.measure("remove and re-insert, RedBlackTree", 2L * n, () -> {
+                for (Integer key : keys) {
+                    mutable.remove(key);
+                    mutable.insert(key);
+                }
+                return mutable.size();
+            });
+            Bench.measure("remove and re-insert, AtomicRedBlackTree", 2L * n, () -> {
+                for (Integer key : keys) {
+                    atomic.remove(key);
+                    atomic.insert(key);
+                }
+                return atomic.size();
+            });
+        }
+    }
+}
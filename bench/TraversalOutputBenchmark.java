@@ -0,0 +1,102 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+
+/**
+ * Compares the string building toInOrderString and toLevelOrderString that
+ * RedBlackTree used to have, kept here verbatim apart from being made static,
+ * with the streaming writeInOrder and writeLevelOrder writing to a buffered
+ * Writer that discards its output. The old helpers are quadratic in the
+ * length of the output, so they are skipped above 100k values. The level
+ * order is also measured on a tree built from ascending keys, which is as
+ * tall as a red-black tree of its size gets.
+ *
+ * Run with: java -cp .:bench TraversalOutputBenchmark [sizes...]
+ */
+public class TraversalOutputBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        for (int n : Bench.sizes(args, 10_000, 100_000, 1_000_000)) {
+            RedBlackTree<Integer> tree = new RedBlackTree<>();
+            for (Integer key : Bench.shuffledKeys(n, 42)) tree.insert(key);
+            System.out.println("n = " + n);
+
+            if (n <= 100_000) {
+                Bench.measure("in order, string concatenation", n, () -> oldInOrderString(tree).length());
+                Bench.measure("level order, string concatenation", n, () -> oldLevelOrderString(tree).length());
+            }
+            Bench.measure("in order, writeInOrder", n, () -> {
+                try (Writer out = discardingWriter()) {
+                    tree.writeInOrder(out);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return n;
+            });
+            Bench.measure("level order, writeLevelOrder", n, () -> {
+                try (Writer out = discardingWriter()) {
+                    tree.writeLevelOrder(out);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return n;
+            });
+            RedBlackTree<Integer> ascending = new RedBlackTree<>();
+            for (int i = 0; i < n; i++) ascending.insert(i);
+            Bench.measure("level order, writeLevelOrder, ascending keys", n, () -> {
+                try (Writer out = discardingWriter()) {
+                    ascending.writeLevelOrder(out);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return n;
+            });
+        }
+    }
+
+    private static Writer discardingWriter() {
+        return new BufferedWriter(new OutputStreamWriter(OutputStream.nullOutputStream(),
+                StandardCharsets.UTF_8));
+    }
+
+    private static String oldInOrderString(RedBlackTree<Integer> tree) {
+        StringBuffer sb = new StringBuffer();
+        sb.append("[ ");
+        sb.append(toInOrderStringHelper("", tree.root));
+        if (tree.root != null) {
+            sb.setLength(sb.length() - 2);
+        }
+        sb.append(" ]");
+        return sb.toString();
+    }
+
+    private static String toInOrderStringHelper(String str, RedBlackTree.Node<Integer> node){
+        if (node == null) {
+            return str;
+        }
+        str = toInOrderStringHelper(str, node.leftChild);
+        str += (node.data.toString() + ", ");
+        str = toInOrderStringHelper(str, node.rightChild);
+        return str;
+    }
+
+    private static String oldLevelOrderString(RedBlackTree<Integer> tree) {
+        String output = "[ ";
+        if (tree.root != null) {
+            LinkedList<RedBlackTree.Node<Integer>> q = new LinkedList<>();
+            q.add(tree.root);
+            while(!q.isEmpty()) {
+                RedBlackTree.Node<Integer> next = q.removeFirst();
+                if(next.leftChild != null) q.add(next.leftChild);
+                if(next.rightChild != null) q.add(next.rightChild);
+                output += next.data.toString();
+                if(!q.isEmpty()) output += ", ";
+            }
+        }
+        return output + " ]";
+    }
+}
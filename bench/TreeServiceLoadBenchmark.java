@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Load generator that starts a number of concurrent clients, 10K by default,
+ * each sending 100 requests, 10% inserts and the rest contains, to a tree
+ * preloaded with 100K values. It compares RedBlackTreeService with callers
+ * sharing a RedBlackTree through its monitor, and prints the throughput and
+ * the p50, p99 and p99.9 latency of reads and writes.
+ *
+ * The clients are virtual threads when the runtime has them (Java 21 and
+ * later), and otherwise platform threads with small stacks.
+ *
+ * Run with: java -Xmx2g -cp .:bench TreeServiceLoadBenchmark [clients...]
+ */
+public class TreeServiceLoadBenchmark {
+
+    private static final int REQUESTS = 100;
+    private static final int WRITE_PERCENT = 10;
+    private static final int PRELOAD = 100_000;
+
+    /**
+     * One request of a client, sent to the tree under test.
+     */
+    private interface Target {
+        boolean contains(Integer value);
+        boolean insert(Integer value);
+    }
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService virtual = virtualThreads();
+        System.out.println("clients are " + (virtual == null ? "platform threads" : "virtual threads"));
+        Executor clients = virtual != null ? virtual : task -> new Thread(null, task, "client", 1 << 18).start();
+        for (int n : Bench.sizes(args, 10_000)) {
+            for (int round = 0; round < 3; round++) {
+                System.out.println("clients = " + n + ", round " + round);
+                try (RedBlackTreeService<Integer> service = new RedBlackTreeService<>()) {
+                    for (int i = 0; i < PRELOAD; i++) service.insert(2 * i);
+                    service.insert(-1).join();
+                    run("RedBlackTreeService", n, clients, new Target() {
+                        public boolean contains(Integer value) { return service.contains(value); }
+                        public boolean insert(Integer value) { return service.insert(value).join(); }
+                    });
+                }
+                RedBlackTree<Integer> tree = new RedBlackTree<>();
+                for (int i = 0; i < PRELOAD; i++) tree.insert(2 * i);
+                run("synchronized RedBlackTree", n, clients, new Target() {
+                    public boolean contains(Integer value) { synchronized (tree) { return tree.contains(value); } }
+                    public boolean insert(Integer value) { synchronized (tree) { return tree.insert(value); } }
+                });
+            }
+        }
+        if (virtual != null) virtual.shutdown();
+    }
+
+    /**
+     * @return an executor that runs each task in a new virtual thread, or
+     *      null when the runtime has no virtual threads
+     */
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static void run(String label, int n, Executor clients, Target target) throws InterruptedException {
+        long[] reads = new long[n * REQUESTS];
+        long[] writes = new long[n * REQUESTS];
+        int[] readCount = new int[n];
+        int[] writeCount = new int[n];
+        CountDownLatch ready = new CountDownLatch(n);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(n);
+        for (int c = 0; c < n; c++) {
+            int client = c;
+            clients.execute(() -> {
+                Random random = new Random(client);
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int base = client * REQUESTS;
+                for (int r = 0; r < REQUESTS; r++) {
+                    Integer value = random.nextInt(4 * PRELOAD);
+                    boolean write = random.nextInt(100) < WRITE_PERCENT;
+                    long start = System.nanoTime();
+                    if (write) target.insert(value);
+                    else target.contains(value);
+                    long elapsed = System.nanoTime() - start;
+                    if (write) writes[base + writeCount[client]++] = elapsed;
+                    else reads[base + readCount[client]++] = elapsed;
+                }
+                done.countDown();
+            });
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-28s %10.1f requests/ms   reads %s   writes %s%n", label,
+                (double) n * REQUESTS * 1e6 / elapsed,
+                percentiles(reads, readCount), percentiles(writes, writeCount));
+    }
+
+    /**
+     * @return the p50, p99 and p99.9 of the latencies each client recorded
+     *      in its slice of latencies, in microseconds
+     */
+    private static String percentiles(long[] latencies, int[] counts) {
+        int total = 0;
+        for (int count : counts) total += count;
+        long[] all = new long[total];
+        int next = 0;
+        for (int c = 0; c < counts.length; c++) {
+            System.arraycopy(latencies, c * REQUESTS, all, next, counts[c]);
+            next += counts[c];
+        }
+        Arrays.sort(all);
+        return String.format("p50 %8.1f us, p99 %8.1f us, p99.9 %8.1f us",
+                at(all, 50) / 1e3, at(all, 99) / 1e3, at(all, 99.9) / 1e3);
+    }
+
+    private static long at(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int k = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, k))];
+    }
+}
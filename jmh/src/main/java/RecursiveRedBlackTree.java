@@ -0,0 +1,80 @@
+/**
+ * The recursive insert and lookup paths that the iterative ones of
+ * RedBlackTree replaced, kept as the baseline of InsertLookupBenchmark. The
+ * code is verbatim apart from being made static: it allocates the node before
+ * descending, recurses through insertHelper and containsHelper, and rejects
+ * duplicates with an IllegalArgumentException. It sits in the default package
+ * to reach the protected members of RedBlackTree, and the benchmarks call it
+ * through method handles, as they call RedBlackTree.
+ */
+public final class RecursiveRedBlackTree {
+
+    private RecursiveRedBlackTree() { }
+
+    /**
+     * Inserts data into tree along the recursive path.
+     * @return true, as the value was inserted
+     * @throws IllegalArgumentException when tree already holds the value
+     */
+    public static <T extends Comparable<T>> boolean insert(RedBlackTree<T> tree, T data)
+            throws IllegalArgumentException {
+        RedBlackTree.Node<T> newNode = new RedBlackTree.Node<>(data);
+        if (tree.root == null) {
+            tree.root = newNode;
+            tree.size++;
+            tree.root.blackHeight = 1;
+            return true;
+        }
+        if (!insertHelper(tree, newNode, tree.root))
+            throw new IllegalArgumentException("This RedBlackTree already contains that value.");
+        tree.size++;
+        tree.root.blackHeight = 1;
+        return true;
+    }
+
+    /**
+     * Checks along the recursive path whether tree holds data.
+     */
+    public static <T extends Comparable<T>> boolean contains(RedBlackTree<T> tree, T data) {
+        return containsHelper(data, tree.root);
+    }
+
+    private static <T extends Comparable<T>> boolean insertHelper(RedBlackTree<T> tree,
+            RedBlackTree.Node<T> newNode, RedBlackTree.Node<T> subtree) {
+        int compare = newNode.data.compareTo(subtree.data);
+        if (compare == 0)
+            return false;
+        else if (compare < 0) {
+            if (subtree.leftChild == null) {
+                subtree.leftChild = newNode;
+                newNode.parent = subtree;
+                tree.enforceRBTreePropertiesAfterInsert(newNode);
+                return true;
+            } else
+                return insertHelper(tree, newNode, subtree.leftChild);
+        } else {
+            if (subtree.rightChild == null) {
+                subtree.rightChild = newNode;
+                newNode.parent = subtree;
+                tree.enforceRBTreePropertiesAfterInsert(newNode);
+                return true;
+            } else
+                return insertHelper(tree, newNode, subtree.rightChild);
+        }
+    }
+
+    private static <T extends Comparable<T>> boolean containsHelper(T data, RedBlackTree.Node<T> subtree) {
+        if (subtree == null) {
+            return false;
+        } else {
+            int compare = data.compareTo(subtree.data);
+            if (compare < 0) {
+                return containsHelper(data, subtree.leftChild);
+            } else if (compare > 0) {
+                return containsHelper(data, subtree.rightChild);
+            } else {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of a read-mostly mix, 50 lookups per remove and re-insert of a
+ * key, on one set of size keys shared by all benchmark threads. The score
+ * counts every lookup, remove and insert as one operation. Half of the
+ * lookups miss, and as each write re-inserts the key it removed, the size of
+ * the set stays close to size. ConcurrentRedBlackTree is compared against a
+ * RedBlackTree behind a single monitor (the current usage), a
+ * Collections.synchronizedSortedSet around a TreeSet and a
+ * ConcurrentSkipListSet.
+ *
+ * The thread count is set with -t, one run per count, for example:
+ * for t in 1 2 4 8 16 32 64; do java -jar target/benchmarks.jar ConcurrentReadBenchmark -t $t -rf json -rff concurrent-$t.json; done
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class ConcurrentReadBenchmark {
+
+    private static final int READS_PER_WRITE = 50;
+
+    @Param({"ConcurrentRedBlackTree", "SynchronizedRedBlackTree", "SynchronizedTreeSet", "ConcurrentSkipListSet"})
+    public String impl;
+
+    @Param({"1000000"})
+    public int size;
+
+    private OrderedIntSet set;
+    private Integer[] keys;
+
+    @Setup
+    public void setUp() {
+        keys = Keys.evenKeys(size, "random");
+        set = OrderedIntSet.create(impl);
+        for (Integer key : keys) set.add(key);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READS_PER_WRITE + 2)
+    public void readMostly(Blackhole blackhole) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < READS_PER_WRITE; i++) {
+            blackhole.consume(set.contains(keys[random.nextInt(keys.length)] + random.nextInt(2)));
+        }
+        Integer key = keys[random.nextInt(keys.length)];
+        blackhole.consume(set.remove(key));
+        blackhole.consume(set.add(key));
+    }
+}
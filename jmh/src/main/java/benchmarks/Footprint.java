@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Measures the memory footprint of each benchmarked collection with JOL, by
+ * walking the object graph of a set of random keys. It reports the total
+ * bytes per entry and the bytes per entry spent on the structure itself,
+ * that is without the Integer keys, as JSON.
+ *
+ * Run with: java -Djdk.attach.allowAttachSelf=true -cp target/benchmarks.jar benchmarks.Footprint [output.json] [sizes...]
+ * 10M keys need a heap of a few GB (-Xmx8g).
+ */
+public class Footprint {
+
+    private static final String[] IMPLEMENTATIONS = {"RedBlackTree", "TreeSet", "TreeMap", "ConcurrentSkipListSet"};
+
+    public static void main(String[] args) throws IOException {
+        PrintStream out = System.out;
+        int first = 0;
+        if (args.length > 0 && !Character.isDigit(args[0].charAt(0))) {
+            out = new PrintStream(Files.newOutputStream(Path.of(args[0])), true, "UTF-8");
+            first = 1;
+        }
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = first; i < args.length; i++) sizes.add(Integer.parseInt(args[i]));
+        if (sizes.isEmpty()) sizes = List.of(1_000, 100_000, 1_000_000);
+
+        long integerBytes = ClassLayout.parseClass(Integer.class).instanceSize();
+        List<String> results = new ArrayList<>();
+        for (int size : sizes) {
+            Integer[] keys = Keys.evenKeys(size, "random");
+            for (String impl : IMPLEMENTATIONS) {
+                OrderedIntSet set = OrderedIntSet.create(impl);
+                for (Integer key : keys) set.add(key);
+                long total = GraphLayout.parseInstance(set.collection()).totalSize();
+                results.add(String.format(
+                        "  {\"impl\": \"%s\", \"size\": %d, \"totalBytes\": %d, "
+                        + "\"bytesPerEntry\": %.2f, \"structureBytesPerEntry\": %.2f}",
+                        impl, size, total, total / (double) size, (total - size * integerBytes) / (double) size));
+            }
+        }
+        out.println("[\n" + String.join(",\n", results) + "\n]");
+        if (out != System.out) out.close();
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to build a set of size keys, inserted in random, ascending or
+ * descending order. Divide by size for the cost of one insert; with
+ * -prof gc, gc.alloc.rate.norm is the number of bytes allocated per build.
+ *
+ * Run with, for machine readable results:
+ * java -jar target/benchmarks.jar InsertBenchmark -prof gc -rf json -rff insert.json
+ * and restrict the matrix with, for example, -p size=1000,1000000 -p impl=RedBlackTree,TreeSet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({"RedBlackTree", "TreeSet", "TreeMap", "ConcurrentSkipListSet"})
+    public String impl;
+
+    @Param({"random", "ascending", "descending"})
+    public String order;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private Integer[] keys;
+
+    @Setup
+    public void setUp() {
+        keys = Keys.evenKeys(size, order);
+    }
+
+    @Benchmark
+    public Object insertAll() {
+        OrderedIntSet set = OrderedIntSet.create(impl);
+        for (Integer key : keys) set.add(key);
+        return set;
+    }
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the iterative insert and lookup paths of RedBlackTree against the
+ * recursive ones they replaced, kept as RecursiveRedBlackTree. Every
+ * benchmark makes one pass over size keys in random order: building a set,
+ * building it with every key offered twice so that half of the inserts are
+ * duplicates, and looking up every key of a built set, present or absent.
+ * Divide by size for the cost of one operation; with -prof gc,
+ * gc.alloc.rate.norm shows the node the recursive insert allocates for a
+ * duplicate.
+ *
+ * Run with: java -jar target/benchmarks.jar InsertLookupBenchmark -prof gc -rf json -rff insert-lookup.json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertLookupBenchmark {
+
+    @Param({"RedBlackTree", "RecursiveRedBlackTree"})
+    public String impl;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Integer[] keys;
+    private Integer[] misses;
+    private OrderedIntSet set;
+
+    @Setup
+    public void setUp() {
+        keys = Keys.evenKeys(size, "random");
+        misses = Keys.misses(keys);
+        set = OrderedIntSet.create(impl);
+        for (Integer key : keys) set.add(key);
+    }
+
+    @Benchmark
+    public Object insert() {
+        OrderedIntSet built = OrderedIntSet.create(impl);
+        for (Integer key : keys) built.add(key);
+        return built;
+    }
+
+    @Benchmark
+    public Object duplicateHeavyInsert() {
+        OrderedIntSet built = OrderedIntSet.create(impl);
+        for (Integer key : keys) {
+            built.add(key);
+            built.add(key);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public int containsHit() {
+        int found = 0;
+        for (Integer key : keys) if (set.contains(key)) found++;
+        return found;
+    }
+
+    @Benchmark
+    public int containsMiss() {
+        int found = 0;
+        for (Integer key : misses) if (set.contains(key)) found++;
+        return found;
+    }
+}
@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ * Key arrays shared by the benchmarks.
+ */
+final class Keys {
+
+    private Keys() { }
+
+    /**
+     * @param n the number of keys
+     * @param order random, ascending or descending
+     * @return the integers 0, 2, 4, ... 2(n-1) in the requested order; odd
+     *      numbers can be used as guaranteed misses
+     */
+    static Integer[] evenKeys(int n, String order) {
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) keys[i] = 2 * i;
+        switch (order) {
+            case "ascending":
+                break;
+            case "descending":
+                for (int i = 0; i < n; i++) keys[i] = 2 * (n - 1 - i);
+                break;
+            case "random":
+                Random random = new Random(42);
+                for (int i = n - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    Integer tmp = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = tmp;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown order " + order);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the keys plus one each, none of which is among the keys
+     */
+    static Integer[] misses(Integer[] keys) {
+        Integer[] misses = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) misses[i] = keys[i] + 1;
+        return misses;
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of single contains calls on a set of size keys, for keys that
+ * are present (hit) and absent (miss). The keys are probed in a random order
+ * that visits every key once per pass, so large sets are measured out of
+ * cache.
+ *
+ * Run with: java -jar target/benchmarks.jar LookupBenchmark -prof gc -rf json -rff lookup.json
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"RedBlackTree", "TreeSet", "TreeMap", "ConcurrentSkipListSet"})
+    public String impl;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private OrderedIntSet set;
+    private Integer[] hits;
+    private Integer[] misses;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        hits = Keys.evenKeys(size, "random");
+        misses = Keys.misses(hits);
+        set = OrderedIntSet.create(impl);
+        for (Integer key : hits) set.add(key);
+    }
+
+    private int next() {
+        int index = cursor;
+        cursor = index + 1 == size ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return set.contains(hits[next()]);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return set.contains(misses[next()]);
+    }
+}
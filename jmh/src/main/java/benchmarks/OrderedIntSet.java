@@ -0,0 +1,479 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * The operations the benchmarks perform, with one implementation per
+ * benchmarked collection. Each JMH fork runs a single implementation, so the
+ * calls through this interface stay monomorphic.
+ *
+ * RedBlackTree, BTreeSet, ConcurrentRedBlackTree and the RecursiveRedBlackTree
+ * baseline live in the default package, which classes in a named package cannot refer
+ * to, and JMH does not generate code for benchmarks in the default package.
+ * They are therefore reached through
+ * method handles held in static final fields, which the JIT treats as
+ * constants and inlines like direct calls.
+ */
+public interface OrderedIntSet {
+
+    boolean add(Integer key);
+
+    boolean contains(Integer key);
+
+    boolean remove(Integer key);
+
+    /**
+     * @return the sum of all keys, visited in ascending order
+     */
+    long sum();
+
+    /**
+     * @return the sum of the keys k with from <= k < to, visited in ascending
+     *      order through OrderedSet.forEachInRange
+     * @throws UnsupportedOperationException when the set is not an OrderedSet
+     *      of the tree library
+     */
+    default long sumRange(Integer from, Integer to) {
+        throw new UnsupportedOperationException("range scans are measured on OrderedSet engines only");
+    }
+
+    /**
+     * @return the underlying collection, for footprint measurements
+     */
+    Object collection();
+
+    /**
+     * @param name RedBlackTree, TreeSet, TreeMap, ConcurrentSkipListSet,
+     *      BTreeSet16 or BTreeSet32 (BTreeSet with a minimum degree of 16 or
+     *      32, so up to 31 or 63 keys per node), RecursiveRedBlackTree (a RedBlackTree used through the recursive
+     *      insert and lookup it had before), or for concurrent use ConcurrentRedBlackTree, SynchronizedRedBlackTree
+     *      (every call holds the monitor of the set) or SynchronizedTreeSet
+     *      (Collections.synchronizedSortedSet)
+     * @return a new, empty set of the named implementation
+     */
+    static OrderedIntSet create(String name) {
+        switch (name) {
+            case "RedBlackTree": return new RedBlackTreeSet();
+            case "BTreeSet16": return new BTreeOrderedSet(16);
+            case "BTreeSet32": return new BTreeOrderedSet(32);
+            case "RecursiveRedBlackTree": return new RecursiveRedBlackTreeSet();
+            case "TreeSet": return new CollectionSet(new TreeSet<>());
+            case "TreeMap": return new MapSet(new TreeMap<>());
+            case "ConcurrentSkipListSet": return new CollectionSet(new ConcurrentSkipListSet<>());
+            case "ConcurrentRedBlackTree": return new ConcurrentRedBlackTreeSet();
+            case "SynchronizedRedBlackTree": return new SynchronizedSet(new RedBlackTreeSet());
+            case "SynchronizedTreeSet": return new CollectionSet(Collections.synchronizedSortedSet(new TreeSet<>()));
+            default: throw new IllegalArgumentException("unknown implementation " + name);
+        }
+    }
+
+    final class RedBlackTreeSet implements OrderedIntSet {
+        private static final MethodHandle NEW;
+        private static final MethodHandle INSERT;
+        private static final MethodHandle CONTAINS;
+        private static final MethodHandle REMOVE;
+        private static final MethodHandle FOR_EACH_IN_RANGE;
+        static {
+            try {
+                Class<?> type = Class.forName("RedBlackTree");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                NEW = lookup.findConstructor(type, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+                INSERT = lookup.findVirtual(type, "insert", MethodType.methodType(boolean.class, Object.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                CONTAINS = lookup.findVirtual(type, "contains", MethodType.methodType(boolean.class, Object.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                REMOVE = lookup.findVirtual(type, "remove", MethodType.methodType(boolean.class, Object.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                FOR_EACH_IN_RANGE = lookup.findVirtual(type, "forEachInRange",
+                        MethodType.methodType(void.class, Object.class, Object.class, Consumer.class))
+                        .asType(MethodType.methodType(void.class, Object.class, Integer.class, Integer.class,
+                                Consumer.class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Object tree;
+        private final long[] rangeSum = new long[1];
+        private final Consumer<Integer> addToRangeSum = key -> rangeSum[0] += key;
+
+        RedBlackTreeSet() {
+            try {
+                tree = (Object) NEW.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean add(Integer key) {
+            try {
+                return (boolean) INSERT.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean contains(Integer key) {
+            try {
+                return (boolean) CONTAINS.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean remove(Integer key) {
+            try {
+                return (boolean) REMOVE.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public long sum() {
+            long sum = 0;
+            for (Integer key : (Iterable<Integer>) tree) sum += key;
+            return sum;
+        }
+
+        public long sumRange(Integer from, Integer to) {
+            rangeSum[0] = 0;
+            try {
+                FOR_EACH_IN_RANGE.invokeExact(tree, from, to, addToRangeSum);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            return rangeSum[0];
+        }
+
+        public Object collection() {
+            return tree;
+        }
+    }
+
+    final class BTreeOrderedSet implements OrderedIntSet {
+        private static final MethodHandle WITH_MIN_DEGREE;
+        private static final MethodHandle INSERT;
+        private static final MethodHandle CONTAINS;
+        private static final MethodHandle REMOVE;
+        private static final MethodHandle FOR_EACH_IN_RANGE;
+        static {
+            try {
+                Class<?> type = Class.forName("BTreeSet");
+                Class<?> orderedSet = Class.forName("OrderedSet");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                WITH_MIN_DEGREE = lookup.findStatic(type, "withMinDegree", MethodType.methodType(type, int.class))
+                        .asType(MethodType.methodType(Object.class, int.class));
+                INSERT = lookup.findVirtual(orderedSet, "insert", MethodType.methodType(boolean.class, Object.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                CONTAINS = lookup.findVirtual(orderedSet, "contains", MethodType.methodType(boolean.class, Object.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                REMOVE = lookup.findVirtual(orderedSet, "remove", MethodType.methodType(boolean.class, Object.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                FOR_EACH_IN_RANGE = lookup.findVirtual(orderedSet, "forEachInRange",
+                        MethodType.methodType(void.class, Object.class, Object.class, Consumer.class))
+                        .asType(MethodType.methodType(void.class, Object.class, Integer.class, Integer.class,
+                                Consumer.class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Object tree;
+        private final long[] rangeSum = new long[1];
+        private final Consumer<Integer> addToRangeSum = key -> rangeSum[0] += key;
+
+        BTreeOrderedSet(int minDegree) {
+            try {
+                tree = (Object) WITH_MIN_DEGREE.invokeExact(minDegree);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean add(Integer key) {
+            try {
+                return (boolean) INSERT.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean contains(Integer key) {
+            try {
+                return (boolean) CONTAINS.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean remove(Integer key) {
+            try {
+                return (boolean) REMOVE.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public long sum() {
+            long sum = 0;
+            for (Integer key : (Iterable<Integer>) tree) sum += key;
+            return sum;
+        }
+
+        public long sumRange(Integer from, Integer to) {
+            rangeSum[0] = 0;
+            try {
+                FOR_EACH_IN_RANGE.invokeExact(tree, from, to, addToRangeSum);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            return rangeSum[0];
+        }
+
+        public Object collection() {
+            return tree;
+        }
+    }
+
+    final class RecursiveRedBlackTreeSet implements OrderedIntSet {
+        private static final MethodHandle NEW;
+        private static final MethodHandle INSERT;
+        private static final MethodHandle CONTAINS;
+        static {
+            try {
+                Class<?> type = Class.forName("RedBlackTree");
+                Class<?> baseline = Class.forName("RecursiveRedBlackTree");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                NEW = lookup.findConstructor(type, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+                MethodType operation = MethodType.methodType(boolean.class, type, Comparable.class);
+                INSERT = lookup.findStatic(baseline, "insert", operation)
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                CONTAINS = lookup.findStatic(baseline, "contains", operation)
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Object tree;
+
+        RecursiveRedBlackTreeSet() {
+            try {
+                tree = (Object) NEW.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @return false for a duplicate, which the baseline rejects with an
+         *      exception, as callers of the recursive insert had to catch it
+         */
+        public boolean add(Integer key) {
+            try {
+                return (boolean) INSERT.invokeExact(tree, key);
+            } catch (IllegalArgumentException duplicate) {
+                return false;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean contains(Integer key) {
+            try {
+                return (boolean) CONTAINS.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @throws UnsupportedOperationException always, as the baseline has
+         *      no recursive remove
+         */
+        public boolean remove(Integer key) {
+            throw new UnsupportedOperationException("the recursive baseline has no remove");
+        }
+
+        @SuppressWarnings("unchecked")
+        public long sum() {
+            long sum = 0;
+            for (Integer key : (Iterable<Integer>) tree) sum += key;
+            return sum;
+        }
+
+        public Object collection() {
+            return tree;
+        }
+    }
+
+    final class ConcurrentRedBlackTreeSet implements OrderedIntSet {
+        private static final MethodHandle NEW;
+        private static final MethodHandle INSERT;
+        private static final MethodHandle CONTAINS;
+        private static final MethodHandle REMOVE;
+        static {
+            try {
+                Class<?> type = Class.forName("ConcurrentRedBlackTree");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                NEW = lookup.findConstructor(type, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+                INSERT = lookup.findVirtual(type, "insert", MethodType.methodType(boolean.class, Comparable.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                CONTAINS = lookup.findVirtual(type, "contains", MethodType.methodType(boolean.class, Comparable.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+                REMOVE = lookup.findVirtual(type, "remove", MethodType.methodType(boolean.class, Comparable.class))
+                        .asType(MethodType.methodType(boolean.class, Object.class, Integer.class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Object tree;
+
+        ConcurrentRedBlackTreeSet() {
+            try {
+                tree = (Object) NEW.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean add(Integer key) {
+            try {
+                return (boolean) INSERT.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean contains(Integer key) {
+            try {
+                return (boolean) CONTAINS.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public boolean remove(Integer key) {
+            try {
+                return (boolean) REMOVE.invokeExact(tree, key);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @throws UnsupportedOperationException always, as ConcurrentRedBlackTree
+         *      is not iterable
+         */
+        public long sum() {
+            throw new UnsupportedOperationException("ConcurrentRedBlackTree is not iterable");
+        }
+
+        public Object collection() {
+            return tree;
+        }
+    }
+
+    final class SynchronizedSet implements OrderedIntSet {
+        private final OrderedIntSet set;
+
+        SynchronizedSet(OrderedIntSet set) {
+            this.set = set;
+        }
+
+        public synchronized boolean add(Integer key) {
+            return set.add(key);
+        }
+
+        public synchronized boolean contains(Integer key) {
+            return set.contains(key);
+        }
+
+        public synchronized boolean remove(Integer key) {
+            return set.remove(key);
+        }
+
+        public synchronized long sum() {
+            return set.sum();
+        }
+
+        public Object collection() {
+            return set.collection();
+        }
+    }
+
+    final class CollectionSet implements OrderedIntSet {
+        private final Set<Integer> set;
+
+        CollectionSet(Set<Integer> set) {
+            this.set = set;
+        }
+
+        public boolean add(Integer key) {
+            return set.add(key);
+        }
+
+        public boolean contains(Integer key) {
+            return set.contains(key);
+        }
+
+        public boolean remove(Integer key) {
+            return set.remove(key);
+        }
+
+        public long sum() {
+            long sum = 0;
+            for (Integer key : set) sum += key;
+            return sum;
+        }
+
+        public Object collection() {
+            return set;
+        }
+    }
+
+    final class MapSet implements OrderedIntSet {
+        private final Map<Integer, Boolean> map;
+
+        MapSet(Map<Integer, Boolean> map) {
+            this.map = map;
+        }
+
+        public boolean add(Integer key) {
+            return map.put(key, Boolean.TRUE) == null;
+        }
+
+        public boolean contains(Integer key) {
+            return map.containsKey(key);
+        }
+
+        public boolean remove(Integer key) {
+            return map.remove(key) != null;
+        }
+
+        public long sum() {
+            long sum = 0;
+            for (Integer key : map.keySet()) sum += key;
+            return sum;
+        }
+
+        public Object collection() {
+            return map;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the OrderedSet engines: RedBlackTree, with one value per node,
+ * against BTreeSet with nodes of up to 31 and up to 63 values. insert builds
+ * a set of size keys in random order, containsHit and containsMiss look up
+ * every key of a built set, present or absent, and rangeScan visits the 100
+ * keys from a starting key that moves through the keys in random order.
+ *
+ * Run with: java -jar target/benchmarks.jar OrderedSetBenchmark -prof gc -rf json -rff ordered-set.json
+ * Larger sets need more heap, for example -p size=50000000 -jvmArgsAppend -Xmx8g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderedSetBenchmark {
+
+    private static final int SCAN_LENGTH = 100;
+
+    @Param({"RedBlackTree", "BTreeSet16", "BTreeSet32"})
+    public String impl;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private Integer[] keys;
+    private Integer[] misses;
+    private OrderedIntSet set;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        keys = Keys.evenKeys(size, "random");
+        misses = Keys.misses(keys);
+        set = OrderedIntSet.create(impl);
+        for (Integer key : keys) set.add(key);
+    }
+
+    @Benchmark
+    public Object insert() {
+        OrderedIntSet built = OrderedIntSet.create(impl);
+        for (Integer key : keys) built.add(key);
+        return built;
+    }
+
+    @Benchmark
+    public int containsHit() {
+        int found = 0;
+        for (Integer key : keys) if (set.contains(key)) found++;
+        return found;
+    }
+
+    @Benchmark
+    public int containsMiss() {
+        int found = 0;
+        for (Integer key : misses) if (set.contains(key)) found++;
+        return found;
+    }
+
+    @Benchmark
+    public long rangeScan() {
+        int from = keys[cursor];
+        cursor = cursor + 1 == size ? 0 : cursor + 1;
+        return set.sumRange(from, from + 2 * SCAN_LENGTH);
+    }
+}
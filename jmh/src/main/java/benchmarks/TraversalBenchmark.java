@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for one in-order iteration over all keys of a set built from random
+ * inserts, summing the keys.
+ *
+ * Run with: java -jar target/benchmarks.jar TraversalBenchmark -prof gc -rf json -rff traversal.json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"RedBlackTree", "TreeSet", "TreeMap", "ConcurrentSkipListSet"})
+    public String impl;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private OrderedIntSet set;
+
+    @Setup
+    public void setUp() {
+        set = OrderedIntSet.create(impl);
+        for (Integer key : Keys.evenKeys(size, "random")) set.add(key);
+    }
+
+    @Benchmark
+    public long traverse() {
+        return set.sum();
+    }
+}